@@ -27,6 +27,12 @@ public class CachingOnlineUpdateUASparser extends OnlineUpdateUASparser {
 	/** The cache dir. */
 	private String cacheDir;
 
+	/** Whether the cached data file has yet to be loaded. */
+	private volatile boolean cacheFilePending;
+
+	/** The lock held while loading the cached data file. */
+	private final Object cacheFileLock = new Object();
+
 	/**
 	 * The cache files are put into the java tmp directory.
 	 * 
@@ -38,7 +44,8 @@ public class CachingOnlineUpdateUASparser extends OnlineUpdateUASparser {
 	}
 
 	/**
-	 * The cache files are put into the cacheDir.
+	 * The cache files are put into the cacheDir. Only the small properties
+	 * file is read here; the data file is loaded on the first parse.
 	 * 
 	 * @param cacheDir
 	 *            the cache dir
@@ -65,6 +72,32 @@ public class CachingOnlineUpdateUASparser extends OnlineUpdateUASparser {
 				fis.close();
 			}
 
+			cacheFilePending = true;
+		}
+	}
+
+	/**
+	 * Loads the cached data file the first time it is called, then leaves
+	 * updates to the online parser.
+	 */
+	@Override
+	protected void checkDataMaps() {
+		if (cacheFilePending) {
+			loadCacheFile();
+		}
+
+		super.checkDataMaps();
+	}
+
+	/**
+	 * Loads the cached data file, unless another thread already has.
+	 */
+	private void loadCacheFile() {
+		synchronized (cacheFileLock) {
+			if (!cacheFilePending) {
+				return;
+			}
+
 			try {
 				loadDataFromFile(getCacheFile());
 			} catch (IOException e) {
@@ -73,6 +106,7 @@ public class CachingOnlineUpdateUASparser extends OnlineUpdateUASparser {
 				lastUpdateCheck = 0;
 				currentVersion = "";
 			}
+			cacheFilePending = false;
 		}
 	}
 
@@ -84,7 +118,7 @@ public class CachingOnlineUpdateUASparser extends OnlineUpdateUASparser {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	@Override
-	protected synchronized void checkDataMaps() throws IOException {
+	protected synchronized void updateDataMaps() throws IOException {
 		if (lastUpdateCheck == 0
 				|| lastUpdateCheck < System.currentTimeMillis()
 						- updateInterval) {
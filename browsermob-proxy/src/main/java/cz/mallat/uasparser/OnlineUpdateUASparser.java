@@ -8,6 +8,10 @@ import cz.mallat.uasparser.fileparser.PHPFileParser;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -23,11 +27,34 @@ public class OnlineUpdateUASparser extends UASparser {
 	/** The Constant VERSION_CHECK_URL. */
 	protected static final String VERSION_CHECK_URL = "http://user-agent-string.info/rpc/get_data.php?key=free&format=ini&ver=y";
 
+	/** The time to wait before retrying a failed update. */
+	private static final long RETRY_DELAY = 1000 * 60; // 1 minute
+
+	/** The thread updates run on, so that parsing never waits for them. */
+	private static final ExecutorService UPDATER = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "user-agent-updater");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
 	/** The update interval. */
-	protected long updateInterval = 1000 * 60 * 60 * 24; // 1 day
+	protected volatile long updateInterval = 1000 * 60 * 60 * 24; // 1 day
 
 	/** The last update check. */
-	protected long lastUpdateCheck;
+	protected volatile long lastUpdateCheck;
+
+	/** The time before which a failed update is not retried. */
+	private volatile long retryAfter;
+
+	/** Whether an update is queued or running. */
+	private final AtomicBoolean updating = new AtomicBoolean();
+
+	/** Whether the data file is never downloaded. */
+	private volatile boolean offline;
 
 	/** The current version. */
 	protected String currentVersion;
@@ -42,15 +69,52 @@ public class OnlineUpdateUASparser extends UASparser {
 		this.updateInterval = updateInterval;
 	}
 
+	/**
+	 * Sets whether the parser is offline. An offline parser never downloads
+	 * the data file and only uses the data it already has, if any.
+	 * 
+	 * @param offline
+	 *            the new offline
+	 */
+	public void setOffline(boolean offline) {
+		this.offline = offline;
+	}
+
 	/**
 	 * Since we've online access to the data file, we check every day for an
-	 * update.
+	 * update. The check runs on a background thread; parsing carries on with
+	 * the data already loaded, if any, until it is done.
+	 */
+	@Override
+	protected void checkDataMaps() {
+		long now = System.currentTimeMillis();
+		if (offline || lastUpdateCheck != 0 && lastUpdateCheck >= now - updateInterval
+				|| now < retryAfter || !updating.compareAndSet(false, true)) {
+			return;
+		}
+
+		UPDATER.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					updateDataMaps();
+				} catch (Exception e) {
+					e.printStackTrace();
+					retryAfter = System.currentTimeMillis() + RETRY_DELAY;
+				} finally {
+					updating.set(false);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Checks the server for a newer version of the data file and loads it.
 	 * 
 	 * @throws IOException
 	 *             Signals that an I/O exception has occurred.
 	 */
-	@Override
-	protected synchronized void checkDataMaps() throws IOException {
+	protected synchronized void updateDataMaps() throws IOException {
 		if (lastUpdateCheck == 0
 				|| lastUpdateCheck < System.currentTimeMillis()
 						- updateInterval) {
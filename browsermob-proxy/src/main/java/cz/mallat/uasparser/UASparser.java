@@ -11,7 +11,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,32 +23,17 @@ import java.util.regex.Pattern;
  */
 public class UASparser {
 
-	/** The lock. */
-	private ReentrantLock lock = new ReentrantLock();
-
 	/** The Constant INFO_URL. */
 	static final String INFO_URL = "http://user-agent-string.info";
 
-	/** The robots map. */
-	private Map<String, RobotEntry> robotsMap;
-
-	/** The os map. */
-	private Map<Long, OsEntry> osMap;
-
-	/** The browser map. */
-	private Map<Long, BrowserEntry> browserMap;
-
-	/** The browser type map. */
-	private Map<Long, String> browserTypeMap;
-
-	/** The browser reg map. */
-	private Map<String, Long> browserRegMap;
+	/** The most parse results kept in the cache. */
+	private static final int CACHE_SIZE = 1024;
 
-	/** The browser os map. */
-	private Map<Long, Long> browserOsMap;
-
-	/** The os reg map. */
-	private Map<Pattern, Long> osRegMap;
+	/**
+	 * The data maps, replaced as a whole whenever new data is loaded so that
+	 * parsing never needs a lock.
+	 */
+	private volatile DataMaps dataMaps = new DataMaps();
 
 	/**
 	 * Use the given filename to load the definition file from the local
@@ -98,7 +82,8 @@ public class UASparser {
 
 	/**
 	 * Parse the given user agent string and returns a UserAgentInfo object with
-	 * the related data.
+	 * the related data. Results are cached, so the same object may be
+	 * returned for the same user agent string and must not be modified.
 	 * 
 	 * @param useragent
 	 *            the useragent
@@ -107,55 +92,57 @@ public class UASparser {
 	 *             may happen when the retrieval of the data file fails
 	 */
 	public UserAgentInfo parse(String useragent) throws IOException {
-		UserAgentInfo retObj = new UserAgentInfo();
-
 		if (useragent == null) {
-			return retObj;
+			return new UserAgentInfo();
 		}
 		useragent = useragent.trim();
 
 		// check that the data maps are up-to-date
 		checkDataMaps();
 
+		DataMaps maps = dataMaps;
+		UserAgentInfo retObj = maps.cache.get(useragent);
+		if (retObj != null) {
+			return retObj;
+		}
+
+		retObj = new UserAgentInfo();
 		// first check if it's a robot
-		if (!processRobot(useragent, retObj)) {
+		if (!processRobot(maps, useragent, retObj)) {
 			// search for a browser on the browser regex patterns
-			boolean osFound = processBrowserRegex(useragent, retObj);
+			boolean osFound = processBrowserRegex(maps, useragent, retObj);
 
 			if (!osFound) {
 				// search the OS regex patterns for the used OS
-				processOsRegex(useragent, retObj);
+				processOsRegex(maps, useragent, retObj);
 			}
 		}
+		maps.cache.put(useragent, retObj);
 		return retObj;
 	}
 
 	/**
 	 * Searches in the os regex table. if found a match copies the os data
 	 * 
+	 * @param maps
+	 *            the data maps
 	 * @param useragent
 	 *            the useragent
 	 * @param retObj
 	 *            the ret obj
 	 */
-	private void processOsRegex(String useragent, UserAgentInfo retObj) {
-		try {
-			lock.lock();
-
-			for (Map.Entry<Pattern, Long> entry : osRegMap.entrySet()) {
-				Matcher matcher = entry.getKey().matcher(useragent);
-				if (matcher.find()) {
-					// simply copy the OS data into the result object
-					Long idOs = entry.getValue();
-					OsEntry os = osMap.get(idOs);
-					if (os != null) {
-						os.copyTo(retObj);
-					}
-					break;
+	private void processOsRegex(DataMaps maps, String useragent,
+			UserAgentInfo retObj) {
+		for (int i = 0; i < maps.osPatterns.length; i++) {
+			Matcher matcher = maps.osPatterns[i].matcher(useragent);
+			if (matcher.find()) {
+				// simply copy the OS data into the result object
+				OsEntry os = maps.osMap.get(maps.osPatternIds[i]);
+				if (os != null) {
+					os.copyTo(retObj);
 				}
+				break;
 			}
-		} finally {
-			lock.unlock();
 		}
 	}
 
@@ -163,80 +150,72 @@ public class UASparser {
 	 * Searchs in the browser regex table. if found a match copies the browser
 	 * data and if possible os data
 	 * 
+	 * @param maps
+	 *            the data maps
 	 * @param useragent
 	 *            the useragent
 	 * @param retObj
 	 *            the ret obj
 	 * @return true, if successful
 	 */
-	private boolean processBrowserRegex(String useragent, UserAgentInfo retObj) {
-		try {
-			lock.lock();
-			boolean osFound = false;
-			for (Map.Entry<String, Long> entry : browserRegMap.entrySet()) {
-				Pattern pattern = Pattern.compile(entry.getKey(),
-						Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-				Matcher matcher = pattern.matcher(useragent);
-				if (matcher.find()) {
-					// if a browse was found...
-					Long idBrowser = entry.getValue();
-					// ... but the browser type from browser type map into the
-					// typ
-					copyType(retObj, idBrowser);
-					// get all the browser data from the browser map
-					BrowserEntry be = browserMap.get(idBrowser);
-					if (be != null) {
-						// first try to get the browser version from the first
-						// subgroup of the regex
-						String browserVersionInfo = null;
-						if (matcher.groupCount() > 0) {
-							browserVersionInfo = matcher.group(1);
-						}
-						// copy the browser data into the result
-						be.copyTo(retObj, browserVersionInfo);
+	private boolean processBrowserRegex(DataMaps maps, String useragent,
+			UserAgentInfo retObj) {
+		boolean osFound = false;
+		for (int i = 0; i < maps.browserPatterns.length; i++) {
+			Matcher matcher = maps.browserPatterns[i].matcher(useragent);
+			if (matcher.find()) {
+				// if a browse was found...
+				Long idBrowser = maps.browserPatternIds[i];
+				// ... but the browser type from browser type map into the
+				// typ
+				copyType(maps, retObj, idBrowser);
+				// get all the browser data from the browser map
+				BrowserEntry be = maps.browserMap.get(idBrowser);
+				if (be != null) {
+					// first try to get the browser version from the first
+					// subgroup of the regex
+					String browserVersionInfo = null;
+					if (matcher.groupCount() > 0) {
+						browserVersionInfo = matcher.group(1);
 					}
-					// check if this browser has exactly one OS mapped
-					Long idOs = browserOsMap.get(idBrowser);
-					if (idOs != null) {
-						osFound = true;
-						OsEntry os = osMap.get(idOs);
-						if (os != null) {
-							os.copyTo(retObj);
-						}
+					// copy the browser data into the result
+					be.copyTo(retObj, browserVersionInfo);
+				}
+				// check if this browser has exactly one OS mapped
+				Long idOs = maps.browserOsMap.get(idBrowser);
+				if (idOs != null) {
+					osFound = true;
+					OsEntry os = maps.osMap.get(idOs);
+					if (os != null) {
+						os.copyTo(retObj);
 					}
-					break;
 				}
+				break;
 			}
-			return osFound;
-		} finally {
-			lock.unlock();
 		}
+		return osFound;
 	}
 
 	/**
 	 * Sets the source type, if possible.
 	 * 
+	 * @param maps
+	 *            the data maps
 	 * @param retObj
 	 *            the ret obj
 	 * @param idBrowser
 	 *            the id browser
 	 */
-	private void copyType(UserAgentInfo retObj, Long idBrowser) {
-		try {
-			lock.lock();
-
-			BrowserEntry be = browserMap.get(idBrowser);
-			if (be != null) {
-				Long type = be.getType();
-				if (type != null) {
-					String typeString = browserTypeMap.get(type);
-					if (typeString != null) {
-						retObj.setTyp(typeString);
-					}
+	private void copyType(DataMaps maps, UserAgentInfo retObj, Long idBrowser) {
+		BrowserEntry be = maps.browserMap.get(idBrowser);
+		if (be != null) {
+			Long type = be.getType();
+			if (type != null) {
+				String typeString = maps.browserTypeMap.get(type);
+				if (typeString != null) {
+					retObj.setTyp(typeString);
 				}
 			}
-		} finally {
-			lock.unlock();
 		}
 	}
 
@@ -244,30 +223,27 @@ public class UASparser {
 	 * Checks if the useragent comes from a robot. if yes copies all the data to
 	 * the result object
 	 * 
+	 * @param maps
+	 *            the data maps
 	 * @param useragent
 	 *            the useragent
 	 * @param retObj
 	 *            the ret obj
 	 * @return true if the useragent belongs to a robot, else false
 	 */
-	private boolean processRobot(String useragent, UserAgentInfo retObj) {
-		try {
-			lock.lock();
-
-			if (robotsMap.containsKey(useragent)) {
-				retObj.setTyp("Robot");
-				RobotEntry robotEntry = robotsMap.get(useragent);
-				robotEntry.copyTo(retObj);
-				if (robotEntry.getOsId() != null) {
-					OsEntry os = osMap.get(robotEntry.getOsId());
-					if (os != null) {
-						os.copyTo(retObj);
-					}
+	private boolean processRobot(DataMaps maps, String useragent,
+			UserAgentInfo retObj) {
+		RobotEntry robotEntry = maps.robotsMap.get(useragent);
+		if (robotEntry != null) {
+			retObj.setTyp("Robot");
+			robotEntry.copyTo(retObj);
+			if (robotEntry.getOsId() != null) {
+				OsEntry os = maps.osMap.get(robotEntry.getOsId());
+				if (os != null) {
+					os.copyTo(retObj);
 				}
-				return true;
 			}
-		} finally {
-			lock.unlock();
+			return true;
 		}
 		return false;
 	}
@@ -299,74 +275,89 @@ public class UASparser {
 	}
 
 	/**
-	 * Creates the internal data structes from the seciontList.
+	 * Creates the internal data structes from the seciontList. Sections not in
+	 * the list keep their current data. The new data replaces the old in one
+	 * step, along with an empty result cache.
 	 * 
 	 * @param sectionList
 	 *            the section list
 	 */
-	protected void createInternalDataStructre(List<Section> sectionList) {
-		try {
-			lock.lock();
-
-			for (Section sec : sectionList) {
-				if ("robots".equals(sec.getName())) {
-					Map<String, RobotEntry> robotsMapTmp = new HashMap<String, RobotEntry>();
-					for (Entry en : sec.getEntries()) {
-						RobotEntry re = new RobotEntry(en.getData());
-						robotsMapTmp.put(re.getUserAgentString(), re);
-					}
-					robotsMap = robotsMapTmp;
-				} else if ("os".equals(sec.getName())) {
-					Map<Long, OsEntry> osMapTmp = new HashMap<Long, OsEntry>();
-					for (Entry en : sec.getEntries()) {
-						OsEntry oe = new OsEntry(en.getData());
-						osMapTmp.put(Long.parseLong(en.getKey()), oe);
-					}
-					osMap = osMapTmp;
-				} else if ("browser".equals(sec.getName())) {
-					Map<Long, BrowserEntry> browserMapTmp = new HashMap<Long, BrowserEntry>();
-					for (Entry en : sec.getEntries()) {
-						BrowserEntry be = new BrowserEntry(en.getData());
-						browserMapTmp.put(Long.parseLong(en.getKey()), be);
-					}
-					browserMap = browserMapTmp;
-				} else if ("browser_type".equals(sec.getName())) {
-					Map<Long, String> browserTypeMapTmp = new HashMap<Long, String>();
-					for (Entry en : sec.getEntries()) {
-						browserTypeMapTmp.put(Long.parseLong(en.getKey()), en
-								.getData().iterator().next());
-					}
-					browserTypeMap = browserTypeMapTmp;
-				} else if ("browser_reg".equals(sec.getName())) {
-					Map<String, Long> browserRegMapTmp = new LinkedHashMap<String, Long>();
-					for (Entry en : sec.getEntries()) {
-						Iterator<String> it = en.getData().iterator();
-						browserRegMapTmp.put(convertPerlToJavaRegex(it.next()),
-								Long.parseLong(it.next()));
-					}
-					browserRegMap = browserRegMapTmp;
-				} else if ("browser_os".equals(sec.getName())) {
-					Map<Long, Long> browserOsMapTmp = new HashMap<Long, Long>();
-					for (Entry en : sec.getEntries()) {
-						browserOsMapTmp.put(Long.parseLong(en.getKey()),
-								Long.parseLong(en.getData().iterator().next()));
-					}
-					browserOsMap = browserOsMapTmp;
-				} else if ("os_reg".equals(sec.getName())) {
-					Map<Pattern, Long> osRegMapTmp = new LinkedHashMap<Pattern, Long>();
-					for (Entry en : sec.getEntries()) {
-						Iterator<String> it = en.getData().iterator();
-						Pattern pattern = Pattern.compile(
-								convertPerlToJavaRegex(it.next()),
-								Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
-						osRegMapTmp.put(pattern, Long.parseLong(it.next()));
-					}
-					osRegMap = osRegMapTmp;
+	protected synchronized void createInternalDataStructre(
+			List<Section> sectionList) {
+		DataMaps maps = new DataMaps(dataMaps);
+
+		for (Section sec : sectionList) {
+			if ("robots".equals(sec.getName())) {
+				Map<String, RobotEntry> robotsMapTmp = new HashMap<String, RobotEntry>();
+				for (Entry en : sec.getEntries()) {
+					RobotEntry re = new RobotEntry(en.getData());
+					robotsMapTmp.put(re.getUserAgentString(), re);
+				}
+				maps.robotsMap = robotsMapTmp;
+			} else if ("os".equals(sec.getName())) {
+				Map<Long, OsEntry> osMapTmp = new HashMap<Long, OsEntry>();
+				for (Entry en : sec.getEntries()) {
+					OsEntry oe = new OsEntry(en.getData());
+					osMapTmp.put(Long.parseLong(en.getKey()), oe);
+				}
+				maps.osMap = osMapTmp;
+			} else if ("browser".equals(sec.getName())) {
+				Map<Long, BrowserEntry> browserMapTmp = new HashMap<Long, BrowserEntry>();
+				for (Entry en : sec.getEntries()) {
+					BrowserEntry be = new BrowserEntry(en.getData());
+					browserMapTmp.put(Long.parseLong(en.getKey()), be);
+				}
+				maps.browserMap = browserMapTmp;
+			} else if ("browser_type".equals(sec.getName())) {
+				Map<Long, String> browserTypeMapTmp = new HashMap<Long, String>();
+				for (Entry en : sec.getEntries()) {
+					browserTypeMapTmp.put(Long.parseLong(en.getKey()), en
+							.getData().iterator().next());
+				}
+				maps.browserTypeMap = browserTypeMapTmp;
+			} else if ("browser_reg".equals(sec.getName())) {
+				Map<String, Long> browserRegMapTmp = new LinkedHashMap<String, Long>();
+				for (Entry en : sec.getEntries()) {
+					Iterator<String> it = en.getData().iterator();
+					browserRegMapTmp.put(convertPerlToJavaRegex(it.next()),
+							Long.parseLong(it.next()));
 				}
+				// compile the patterns once here rather than on every parse
+				Pattern[] patterns = new Pattern[browserRegMapTmp.size()];
+				Long[] ids = new Long[browserRegMapTmp.size()];
+				int i = 0;
+				for (Map.Entry<String, Long> entry : browserRegMapTmp
+						.entrySet()) {
+					patterns[i] = Pattern.compile(entry.getKey(),
+							Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+					ids[i] = entry.getValue();
+					i++;
+				}
+				maps.browserPatterns = patterns;
+				maps.browserPatternIds = ids;
+			} else if ("browser_os".equals(sec.getName())) {
+				Map<Long, Long> browserOsMapTmp = new HashMap<Long, Long>();
+				for (Entry en : sec.getEntries()) {
+					browserOsMapTmp.put(Long.parseLong(en.getKey()),
+							Long.parseLong(en.getData().iterator().next()));
+				}
+				maps.browserOsMap = browserOsMapTmp;
+			} else if ("os_reg".equals(sec.getName())) {
+				List<Pattern> patterns = new ArrayList<Pattern>();
+				List<Long> ids = new ArrayList<Long>();
+				for (Entry en : sec.getEntries()) {
+					Iterator<String> it = en.getData().iterator();
+					patterns.add(Pattern.compile(
+							convertPerlToJavaRegex(it.next()),
+							Pattern.CASE_INSENSITIVE | Pattern.DOTALL));
+					ids.add(Long.parseLong(it.next()));
+				}
+				maps.osPatterns = patterns.toArray(new Pattern[patterns.size()]);
+				maps.osPatternIds = ids.toArray(new Long[ids.size()]);
 			}
-		} finally {
-			lock.unlock();
 		}
+
+		dataMaps = maps;
 	}
 
 	/**
@@ -384,4 +375,176 @@ public class UASparser {
 		return regex;
 	}
 
+	/**
+	 * The data loaded from a definition file, with the regexes already
+	 * compiled. It is only changed before it is published, so any number of
+	 * threads can read it without locking.
+	 */
+	private static class DataMaps {
+
+		/** The robots map. */
+		private Map<String, RobotEntry> robotsMap;
+
+		/** The os map. */
+		private Map<Long, OsEntry> osMap;
+
+		/** The browser map. */
+		private Map<Long, BrowserEntry> browserMap;
+
+		/** The browser type map. */
+		private Map<Long, String> browserTypeMap;
+
+		/** The browser patterns, in the order they are tried. */
+		private Pattern[] browserPatterns;
+
+		/** The browser ids matching the browser patterns. */
+		private Long[] browserPatternIds;
+
+		/** The browser os map. */
+		private Map<Long, Long> browserOsMap;
+
+		/** The os patterns, in the order they are tried. */
+		private Pattern[] osPatterns;
+
+		/** The os ids matching the os patterns. */
+		private Long[] osPatternIds;
+
+		/** The results parsed with this data. */
+		private final ResultCache cache = new ResultCache(CACHE_SIZE);
+
+		/**
+		 * Instantiates empty data maps.
+		 */
+		private DataMaps() {
+			robotsMap = Collections.emptyMap();
+			osMap = Collections.emptyMap();
+			browserMap = Collections.emptyMap();
+			browserTypeMap = Collections.emptyMap();
+			browserPatterns = new Pattern[0];
+			browserPatternIds = new Long[0];
+			browserOsMap = Collections.emptyMap();
+			osPatterns = new Pattern[0];
+			osPatternIds = new Long[0];
+		}
+
+		/**
+		 * Instantiates data maps starting out with the data of others.
+		 * 
+		 * @param other
+		 *            the other data maps
+		 */
+		private DataMaps(DataMaps other) {
+			robotsMap = other.robotsMap;
+			osMap = other.osMap;
+			browserMap = other.browserMap;
+			browserTypeMap = other.browserTypeMap;
+			browserPatterns = other.browserPatterns;
+			browserPatternIds = other.browserPatternIds;
+			browserOsMap = other.browserOsMap;
+			osPatterns = other.osPatterns;
+			osPatternIds = other.osPatternIds;
+		}
+	}
+
+	/**
+	 * A bounded cache of parse results that evicts the least recently used.
+	 * The user agent strings are spread over several independently locked
+	 * stripes, so threads parsing different strings rarely wait on each
+	 * other.
+	 */
+	private static class ResultCache {
+
+		/** The number of stripes, a power of two. */
+		private static final int STRIPES = 16;
+
+		/** The stripes. */
+		private final Stripe[] stripes = new Stripe[STRIPES];
+
+		/**
+		 * Instantiates a new result cache.
+		 * 
+		 * @param maxSize
+		 *            the most results to keep
+		 */
+		private ResultCache(int maxSize) {
+			for (int i = 0; i < STRIPES; i++) {
+				stripes[i] = new Stripe(Math.max(maxSize / STRIPES, 1));
+			}
+		}
+
+		/**
+		 * Gets a cached result.
+		 * 
+		 * @param useragent
+		 *            the useragent
+		 * @return the user agent info, null if it is not cached
+		 */
+		private UserAgentInfo get(String useragent) {
+			Stripe stripe = stripe(useragent);
+			synchronized (stripe) {
+				return stripe.get(useragent);
+			}
+		}
+
+		/**
+		 * Caches a result.
+		 * 
+		 * @param useragent
+		 *            the useragent
+		 * @param info
+		 *            the user agent info
+		 */
+		private void put(String useragent, UserAgentInfo info) {
+			Stripe stripe = stripe(useragent);
+			synchronized (stripe) {
+				stripe.put(useragent, info);
+			}
+		}
+
+		/**
+		 * Picks the stripe of a user agent string.
+		 * 
+		 * @param useragent
+		 *            the useragent
+		 * @return the stripe
+		 */
+		private Stripe stripe(String useragent) {
+			int hash = useragent.hashCode();
+			return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+		}
+	}
+
+	/**
+	 * One stripe of the result cache, a map in access order.
+	 */
+	private static class Stripe extends LinkedHashMap<String, UserAgentInfo> {
+
+		/** The Constant serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		/** The max size. */
+		private final int maxSize;
+
+		/**
+		 * Instantiates a new stripe.
+		 * 
+		 * @param maxSize
+		 *            the max size
+		 */
+		private Stripe(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+		 */
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, UserAgentInfo> eldest) {
+			return size() > maxSize;
+		}
+	}
 }
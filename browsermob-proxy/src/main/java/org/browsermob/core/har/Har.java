@@ -6,8 +6,12 @@ package org.browsermob.core.har;
 import org.codehaus.jackson.map.ObjectMapper;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
 import java.io.Writer;
 
 // TODO: Auto-generated Javadoc
@@ -63,6 +67,21 @@ public class Har {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	public void writeTo(Writer writer) throws IOException {
+		if (isStreamed()) {
+			Reader reader = new InputStreamReader(openStream(), "UTF-8");
+			try {
+				char[] buffer = new char[8192];
+				int length;
+				while ((length = reader.read(buffer)) != -1) {
+					writer.write(buffer, 0, length);
+				}
+			} finally {
+				reader.close();
+			}
+			writer.flush();
+			return;
+		}
+
 		ObjectMapper om = new ObjectMapper();
 		om.writeValue(writer, this);
 	}
@@ -76,6 +95,11 @@ public class Har {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	public void writeTo(OutputStream os) throws IOException {
+		if (isStreamed()) {
+			log.getStreamWriter().writeSnapshot(os);
+			return;
+		}
+
 		ObjectMapper om = new ObjectMapper();
 		om.writeValue(os, this);
 	}
@@ -89,7 +113,44 @@ public class Har {
 	 *             Signals that an I/O exception has occurred.
 	 */
 	public void writeTo(File file) throws IOException {
+		if (isStreamed()) {
+			OutputStream os = new FileOutputStream(file);
+			try {
+				log.getStreamWriter().writeSnapshot(os);
+			} finally {
+				os.close();
+			}
+			return;
+		}
+
 		ObjectMapper om = new ObjectMapper();
 		om.writeValue(file, this);
 	}
+
+	/**
+	 * Opens the JSON text of a har whose entries are streamed to disk. The
+	 * entries are read from the file as the stream is, rather than being
+	 * loaded into memory first.
+	 * 
+	 * @return the input stream, which the caller must close
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public InputStream openStream() throws IOException {
+		if (!isStreamed()) {
+			throw new IllegalStateException("The har is not streamed");
+		}
+
+		return log.getStreamWriter().openSnapshot();
+	}
+
+	/**
+	 * Checks if the entries of this har are streamed to disk rather than held
+	 * in memory.
+	 * 
+	 * @return true, if is streamed
+	 */
+	private boolean isStreamed() {
+		return log != null && log.getStreamWriter() != null;
+	}
 }
@@ -3,6 +3,7 @@
  */
 package org.browsermob.core.har;
 
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 
 // TODO: Auto-generated Javadoc
@@ -24,6 +25,9 @@ public class HarContent {
 	/** The text. */
 	private String text;
 
+	/** The source the text is read from when it was not set directly. */
+	private HarContentSource textSource;
+
 	/**
 	 * Gets the size.
 	 * 
@@ -87,6 +91,12 @@ public class HarContent {
 	 * @return the text
 	 */
 	public String getText() {
+		if (text == null && textSource != null) {
+			// not kept, so the decoded text only lives as long as the caller
+			// needs it
+			return textSource.read();
+		}
+
 		return text;
 	}
 
@@ -98,5 +108,29 @@ public class HarContent {
 	 */
 	public void setText(String text) {
 		this.text = text;
+		this.textSource = null;
+	}
+
+	/**
+	 * Gets the text source.
+	 * 
+	 * @return the text source
+	 */
+	@JsonIgnore
+	public HarContentSource getTextSource() {
+		return textSource;
+	}
+
+	/**
+	 * Sets a source to read the text from when it is asked for, instead of
+	 * working it out up front.
+	 * 
+	 * @param textSource
+	 *            the new text source
+	 */
+	@JsonIgnore
+	public void setTextSource(HarContentSource textSource) {
+		this.textSource = textSource;
+		this.text = null;
 	}
 }
@@ -0,0 +1,19 @@
+/*
+ * 
+ */
+package org.browsermob.core.har;
+
+/**
+ * Supplies the text of a {@link HarContent} on demand. Captured content is
+ * held in its raw form and only decoded or encoded when the text is actually
+ * asked for, which normally happens when the HAR is serialized.
+ */
+public interface HarContentSource {
+
+	/**
+	 * Reads the text.
+	 * 
+	 * @return the text, or null if the content could not be decoded
+	 */
+	String read();
+}
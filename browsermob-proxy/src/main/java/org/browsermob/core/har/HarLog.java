@@ -3,10 +3,12 @@
  */
 package org.browsermob.core.har;
 
+import org.browsermob.core.util.ConcurrentAppendList;
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 
+import java.io.IOException;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -25,10 +27,13 @@ public class HarLog {
 	private HarNameVersion browser;
 
 	/** The pages. */
-	private List<HarPage> pages = new CopyOnWriteArrayList<HarPage>();
+	private List<HarPage> pages = new ConcurrentAppendList<HarPage>();
 
 	/** The entries. */
-	private List<HarEntry> entries = new CopyOnWriteArrayList<HarEntry>();
+	private List<HarEntry> entries = new ConcurrentAppendList<HarEntry>();
+
+	/** The stream writer, when completed entries are spilled to disk. */
+	private HarStreamWriter streamWriter;
 
 	/**
 	 * Instantiates a new har log.
@@ -54,7 +59,7 @@ public class HarLog {
 	 */
 	public void addPage(HarPage page) {
 		if (pages == null) {
-			pages = new CopyOnWriteArrayList<HarPage>();
+			pages = new ConcurrentAppendList<HarPage>();
 		}
 
 		pages.add(page);
@@ -67,13 +72,33 @@ public class HarLog {
 	 *            the entry
 	 */
 	public void addEntry(HarEntry entry) {
+		if (streamWriter != null) {
+			streamWriter.begin(entry);
+			return;
+		}
+
 		if (entries == null) {
-			entries = new CopyOnWriteArrayList<HarEntry>();
+			entries = new ConcurrentAppendList<HarEntry>();
 		}
 
 		entries.add(entry);
 	}
 
+	/**
+	 * Marks an entry as complete. When the log is streamed to disk the entry
+	 * is written out and no longer kept in memory.
+	 * 
+	 * @param entry
+	 *            the entry
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void completeEntry(HarEntry entry) throws IOException {
+		if (streamWriter != null) {
+			streamWriter.write(entry);
+		}
+	}
+
 	/**
 	 * Gets the version.
 	 * 
@@ -156,6 +181,10 @@ public class HarLog {
 	 * @return the entries
 	 */
 	public List<HarEntry> getEntries() {
+		if (streamWriter != null) {
+			return streamWriter.getInFlightEntries();
+		}
+
 		return entries;
 	}
 
@@ -168,4 +197,25 @@ public class HarLog {
 	public void setEntries(List<HarEntry> entries) {
 		this.entries = entries;
 	}
+
+	/**
+	 * Gets the stream writer.
+	 * 
+	 * @return the stream writer, or null if the log is held in memory
+	 */
+	@JsonIgnore
+	public HarStreamWriter getStreamWriter() {
+		return streamWriter;
+	}
+
+	/**
+	 * Sets the stream writer.
+	 * 
+	 * @param streamWriter
+	 *            the new stream writer
+	 */
+	@JsonIgnore
+	public void setStreamWriter(HarStreamWriter streamWriter) {
+		this.streamWriter = streamWriter;
+	}
 }
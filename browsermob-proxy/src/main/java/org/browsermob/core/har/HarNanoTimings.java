@@ -0,0 +1,202 @@
+/*
+ * 
+ */
+package org.browsermob.core.har;
+
+/**
+ * The timings of an entry in nanoseconds. They are an extension to the HAR
+ * format, written as the "_nanos" field of the timings when sub millisecond
+ * timings are asked for. Unlike the standard timings the connect time does not
+ * include the ssl handshake.
+ */
+public class HarNanoTimings {
+
+	/** The blocked. */
+	private long blocked;
+
+	/** The dns. */
+	private long dns;
+
+	/** The connect. */
+	private long connect;
+
+	/** The ssl. */
+	private long ssl;
+
+	/** The send. */
+	private long send;
+
+	/** The wait. */
+	private long wait;
+
+	/** The receive. */
+	private long receive;
+
+	/**
+	 * Instantiates new har nano timings.
+	 */
+	public HarNanoTimings() {
+	}
+
+	/**
+	 * Instantiates new har nano timings.
+	 * 
+	 * @param blocked
+	 *            the blocked
+	 * @param dns
+	 *            the dns
+	 * @param connect
+	 *            the connect
+	 * @param ssl
+	 *            the ssl
+	 * @param send
+	 *            the send
+	 * @param wait
+	 *            the wait
+	 * @param receive
+	 *            the receive
+	 */
+	public HarNanoTimings(long blocked, long dns, long connect, long ssl,
+			long send, long wait, long receive) {
+		this.blocked = blocked;
+		this.dns = dns;
+		this.connect = connect;
+		this.ssl = ssl;
+		this.send = send;
+		this.wait = wait;
+		this.receive = receive;
+	}
+
+	/**
+	 * Gets the blocked.
+	 * 
+	 * @return the blocked
+	 */
+	public long getBlocked() {
+		return blocked;
+	}
+
+	/**
+	 * Sets the blocked.
+	 * 
+	 * @param blocked
+	 *            the new blocked
+	 */
+	public void setBlocked(long blocked) {
+		this.blocked = blocked;
+	}
+
+	/**
+	 * Gets the dns.
+	 * 
+	 * @return the dns
+	 */
+	public long getDns() {
+		return dns;
+	}
+
+	/**
+	 * Sets the dns.
+	 * 
+	 * @param dns
+	 *            the new dns
+	 */
+	public void setDns(long dns) {
+		this.dns = dns;
+	}
+
+	/**
+	 * Gets the connect.
+	 * 
+	 * @return the connect
+	 */
+	public long getConnect() {
+		return connect;
+	}
+
+	/**
+	 * Sets the connect.
+	 * 
+	 * @param connect
+	 *            the new connect
+	 */
+	public void setConnect(long connect) {
+		this.connect = connect;
+	}
+
+	/**
+	 * Gets the ssl.
+	 * 
+	 * @return the ssl
+	 */
+	public long getSsl() {
+		return ssl;
+	}
+
+	/**
+	 * Sets the ssl.
+	 * 
+	 * @param ssl
+	 *            the new ssl
+	 */
+	public void setSsl(long ssl) {
+		this.ssl = ssl;
+	}
+
+	/**
+	 * Gets the send.
+	 * 
+	 * @return the send
+	 */
+	public long getSend() {
+		return send;
+	}
+
+	/**
+	 * Sets the send.
+	 * 
+	 * @param send
+	 *            the new send
+	 */
+	public void setSend(long send) {
+		this.send = send;
+	}
+
+	/**
+	 * Gets the wait.
+	 * 
+	 * @return the wait
+	 */
+	public long getWait() {
+		return wait;
+	}
+
+	/**
+	 * Sets the wait.
+	 * 
+	 * @param wait
+	 *            the new wait
+	 */
+	public void setWait(long wait) {
+		this.wait = wait;
+	}
+
+	/**
+	 * Gets the receive.
+	 * 
+	 * @return the receive
+	 */
+	public long getReceive() {
+		return receive;
+	}
+
+	/**
+	 * Sets the receive.
+	 * 
+	 * @param receive
+	 *            the new receive
+	 */
+	public void setReceive(long receive) {
+		this.receive = receive;
+	}
+}
@@ -0,0 +1,21 @@
+/*
+ * 
+ */
+package org.browsermob.core.har;
+
+import java.util.List;
+
+/**
+ * Supplies the query string parameters of a {@link HarRequest} on demand. The
+ * raw query is kept as it was sent and only decoded into parameters when they
+ * are first asked for, which normally happens when the HAR is serialized.
+ */
+public interface HarQueryStringSource {
+
+	/**
+	 * Reads the parameters.
+	 * 
+	 * @return the parameters, in the order they appear in the query
+	 */
+	List<HarNameValuePair> read();
+}
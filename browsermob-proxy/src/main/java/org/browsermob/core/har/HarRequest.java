@@ -3,6 +3,7 @@
  */
 package org.browsermob.core.har;
 
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.map.annotate.JsonSerialize;
 
 import java.util.List;
@@ -33,6 +34,9 @@ public class HarRequest {
 	/** The query string. */
 	private List<HarNameValuePair> queryString = new CopyOnWriteArrayList<HarNameValuePair>();
 
+	/** The source the query string is read from when it is first asked for. */
+	private volatile HarQueryStringSource queryStringSource;
+
 	/** The post data. */
 	private HarPostData postData;
 
@@ -165,6 +169,15 @@ public class HarRequest {
 	 * @return the query string
 	 */
 	public List<HarNameValuePair> getQueryString() {
+		if (queryStringSource != null) {
+			synchronized (this) {
+				if (queryStringSource != null) {
+					queryString.addAll(queryStringSource.read());
+					queryStringSource = null;
+				}
+			}
+		}
+
 		return queryString;
 	}
 
@@ -176,6 +189,30 @@ public class HarRequest {
 	 */
 	public void setQueryString(List<HarNameValuePair> queryString) {
 		this.queryString = queryString;
+		this.queryStringSource = null;
+	}
+
+	/**
+	 * Gets the query string source.
+	 * 
+	 * @return the query string source, null once it has been read
+	 */
+	@JsonIgnore
+	public HarQueryStringSource getQueryStringSource() {
+		return queryStringSource;
+	}
+
+	/**
+	 * Sets a source to read the query string from when it is first asked for,
+	 * instead of working it out up front. The parameters read are added to
+	 * any already in the query string.
+	 * 
+	 * @param queryStringSource
+	 *            the new query string source
+	 */
+	@JsonIgnore
+	public void setQueryStringSource(HarQueryStringSource queryStringSource) {
+		this.queryStringSource = queryStringSource;
 	}
 
 	/**
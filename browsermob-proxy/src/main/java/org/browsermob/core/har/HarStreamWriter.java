@@ -0,0 +1,318 @@
+/*
+ * 
+ */
+package org.browsermob.core.har;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes the entries of a {@link HarLog} to a file as they complete, so that a
+ * long capture does not have to keep every {@link HarEntry} on the heap. Only
+ * the entries that are still in flight are held in memory; a valid HAR
+ * document can be produced at any time with {@link #openSnapshot}, and the
+ * file itself becomes a complete HAR document once {@link #close()} is
+ * called.
+ */
+public class HarStreamWriter {
+
+	/** The Constant ENTRIES_FIELD. */
+	private static final String ENTRIES_FIELD = ",\"entries\":[";
+
+	/** The mapper. */
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	/** The file. */
+	private final File file;
+
+	/** The log. */
+	private final HarLog log;
+
+	/** The output. */
+	private OutputStream out;
+
+	/** The entries that have been started but not yet written out. */
+	private final Set<HarEntry> inFlight = new LinkedHashSet<HarEntry>();
+
+	/** The number of entries written to the file. */
+	private int written;
+
+	/** The closed. */
+	private boolean closed;
+
+	/**
+	 * Instantiates a new har stream writer and writes the log header.
+	 * 
+	 * @param file
+	 *            the file to stream the entries to
+	 * @param log
+	 *            the log whose entries are being streamed
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public HarStreamWriter(File file, HarLog log) throws IOException {
+		this.file = file;
+		this.log = log;
+		this.out = new BufferedOutputStream(new FileOutputStream(file));
+
+		write(out, "{\"log\":{\"version\":");
+		writeValue(out, log.getVersion());
+		if (log.getCreator() != null) {
+			write(out, ",\"creator\":");
+			writeValue(out, log.getCreator());
+		}
+		write(out, ENTRIES_FIELD);
+		out.flush();
+	}
+
+	/**
+	 * Gets the file.
+	 * 
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Records an entry that has been started but is not complete yet.
+	 * 
+	 * @param entry
+	 *            the entry
+	 */
+	public synchronized void begin(HarEntry entry) {
+		inFlight.add(entry);
+	}
+
+	/**
+	 * Appends a completed entry to the file and drops it from memory. Entries
+	 * completing after the writer has been closed stay in memory.
+	 * 
+	 * @param entry
+	 *            the entry
+	 * @return true, if the entry was written
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public synchronized boolean write(HarEntry entry) throws IOException {
+		if (closed) {
+			return false;
+		}
+
+		if (written > 0) {
+			out.write(',');
+		}
+		writeValue(out, entry);
+		out.flush();
+		written++;
+		inFlight.remove(entry);
+
+		return true;
+	}
+
+	/**
+	 * Gets the entries still in flight.
+	 * 
+	 * @return a copy of the in flight entries
+	 */
+	public synchronized List<HarEntry> getInFlightEntries() {
+		return new ArrayList<HarEntry>(inFlight);
+	}
+
+	/**
+	 * Gets the number of entries written to the file.
+	 * 
+	 * @return the written count
+	 */
+	public synchronized int getWrittenCount() {
+		return written;
+	}
+
+	/**
+	 * Writes a complete HAR document made of the entries streamed so far, the
+	 * entries still in flight and the current pages. The file is left open.
+	 * 
+	 * @param os
+	 *            the os
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public void writeSnapshot(OutputStream os) throws IOException {
+		InputStream in = openSnapshot();
+		try {
+			byte[] buffer = new byte[8192];
+			int length;
+			while ((length = in.read(buffer)) != -1) {
+				os.write(buffer, 0, length);
+			}
+		} finally {
+			in.close();
+		}
+		os.flush();
+	}
+
+	/**
+	 * Opens a complete HAR document made of the entries streamed so far, the
+	 * entries still in flight and the current pages. The entries on disk are
+	 * read from the file as the stream is, only the in flight ones and the
+	 * pages are held in memory. Entries written after this call are not part
+	 * of the document.
+	 * 
+	 * @return the input stream, which the caller must close
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public synchronized InputStream openSnapshot() throws IOException {
+		if (closed) {
+			return new FileInputStream(file);
+		}
+
+		out.flush();
+		final long length = file.length();
+
+		ByteArrayOutputStream tail = new ByteArrayOutputStream();
+		int count = written;
+		for (HarEntry entry : inFlight) {
+			if (count++ > 0) {
+				tail.write(',');
+			}
+			writeValue(tail, entry);
+		}
+		writeTrailer(tail);
+
+		// later entries are appended to the file, leave them out
+		InputStream head = new FilterInputStream(new FileInputStream(file)) {
+			private long remaining = length;
+
+			@Override
+			public int read() throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int b = super.read();
+				if (b != -1) {
+					remaining--;
+				}
+				return b;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int n = super.read(b, off, (int) Math.min(len, remaining));
+				if (n != -1) {
+					remaining -= n;
+				}
+				return n;
+			}
+		};
+
+		return new SequenceInputStream(head, new ByteArrayInputStream(
+				tail.toByteArray()));
+	}
+
+	/**
+	 * Finishes the HAR document on disk. Entries still in flight are written
+	 * as they stand so that the file accounts for every request.
+	 * 
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+
+		try {
+			for (HarEntry entry : new ArrayList<HarEntry>(inFlight)) {
+				write(entry);
+			}
+			writeTrailer(out);
+		} finally {
+			closed = true;
+			out.close();
+		}
+	}
+
+	/**
+	 * Checks if is closed.
+	 * 
+	 * @return true, if is closed
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Writes the pages and browser, which may change during the capture, and
+	 * closes the log object.
+	 * 
+	 * @param os
+	 *            the os
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeTrailer(OutputStream os) throws IOException {
+		write(os, "]");
+		if (log.getPages() != null) {
+			write(os, ",\"pages\":");
+			writeValue(os, log.getPages());
+		}
+		if (log.getBrowser() != null) {
+			write(os, ",\"browser\":");
+			writeValue(os, log.getBrowser());
+		}
+		write(os, "}}");
+	}
+
+	/**
+	 * Serializes a value without closing the underlying stream.
+	 * 
+	 * @param os
+	 *            the os
+	 * @param value
+	 *            the value
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private void writeValue(OutputStream os, Object value) throws IOException {
+		JsonGenerator generator = mapper.getJsonFactory().createJsonGenerator(
+				os, JsonEncoding.UTF8);
+		generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		mapper.writeValue(generator, value);
+		generator.close();
+	}
+
+	/**
+	 * Writes a literal fragment of JSON.
+	 * 
+	 * @param os
+	 *            the os
+	 * @param json
+	 *            the json
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static void write(OutputStream os, String json) throws IOException {
+		os.write(json.getBytes("UTF-8"));
+	}
+}
@@ -3,6 +3,9 @@
  */
 package org.browsermob.core.har;
 
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
 // TODO: Auto-generated Javadoc
 /**
  * The Class HarTimings.
@@ -27,6 +30,9 @@ public class HarTimings {
 	/** The receive. */
 	private long receive;
 
+	/** The nano timings, null unless sub millisecond timings were asked for. */
+	private HarNanoTimings nanos;
+
 	/**
 	 * Instantiates a new har timings.
 	 */
@@ -172,4 +178,26 @@ public class HarTimings {
 	public void setReceive(long receive) {
 		this.receive = receive;
 	}
+
+	/**
+	 * Gets the nano timings.
+	 * 
+	 * @return the nano timings, null if they were not captured
+	 */
+	@JsonProperty("_nanos")
+	@JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+	public HarNanoTimings getNanos() {
+		return nanos;
+	}
+
+	/**
+	 * Sets the nano timings.
+	 * 
+	 * @param nanos
+	 *            the new nano timings
+	 */
+	@JsonProperty("_nanos")
+	public void setNanos(HarNanoTimings nanos) {
+		this.nanos = nanos;
+	}
 }
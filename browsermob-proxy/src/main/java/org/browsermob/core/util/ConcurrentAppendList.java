@@ -0,0 +1,188 @@
+/*
+ * 
+ */
+package org.browsermob.core.util;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An append-only list for many concurrent writers and readers. Elements are
+ * stored in segments of doubling size, so adding an element never copies the
+ * ones already stored (unlike a CopyOnWriteArrayList, which copies the whole
+ * backing array on every add). Appends are serialized by a short lock; reads
+ * never lock and only see elements whose addition has been published through
+ * the volatile size. Iterators walk the prefix of the list that existed when
+ * they were created, so iteration is snapshot consistent and never throws a
+ * ConcurrentModificationException. Elements cannot be removed or replaced.
+ * 
+ * @param <E>
+ *            the element type
+ */
+public class ConcurrentAppendList<E> extends AbstractList<E> implements
+		RandomAccess {
+
+	/** The size of the first segment as a power of two. */
+	private static final int FIRST_SEGMENT_SHIFT = 4;
+
+	/** The size of the first segment. */
+	private static final int FIRST_SEGMENT_SIZE = 1 << FIRST_SEGMENT_SHIFT;
+
+	/** Enough segments to hold Integer.MAX_VALUE elements. */
+	private static final int MAX_SEGMENTS = 32 - FIRST_SEGMENT_SHIFT;
+
+	/** The segments, allocated as the list grows. */
+	private final Object[][] segments = new Object[MAX_SEGMENTS][];
+
+	/** The append lock. */
+	private final Object appendLock = new Object();
+
+	/** The published size. */
+	private volatile int size;
+
+	/**
+	 * Instantiates a new, empty list.
+	 */
+	public ConcurrentAppendList() {
+	}
+
+	/**
+	 * Instantiates a new list holding the given elements.
+	 * 
+	 * @param c
+	 *            the elements
+	 */
+	public ConcurrentAppendList(Collection<? extends E> c) {
+		addAll(c);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractList#add(java.lang.Object)
+	 */
+	@Override
+	public boolean add(E e) {
+		synchronized (appendLock) {
+			int index = size;
+			if (index == Integer.MAX_VALUE - FIRST_SEGMENT_SIZE) {
+				throw new IllegalStateException("List is full");
+			}
+
+			int segment = segment(index);
+			Object[] elements = segments[segment];
+			if (elements == null) {
+				elements = new Object[FIRST_SEGMENT_SIZE << segment];
+				segments[segment] = elements;
+			}
+			elements[offset(index, segment)] = e;
+
+			// publishes the element to readers
+			size = index + 1;
+		}
+
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractList#get(int)
+	 */
+	@Override
+	public E get(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+					+ size);
+		}
+
+		return element(index);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.AbstractList#iterator()
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		final int snapshotSize = size;
+
+		return new Iterator<E>() {
+			private int next;
+
+			@Override
+			public boolean hasNext() {
+				return next < snapshotSize;
+			}
+
+			@Override
+			public E next() {
+				if (next >= snapshotSize) {
+					throw new NoSuchElementException();
+				}
+
+				return element(next++);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException(
+						"Elements cannot be removed");
+			}
+		};
+	}
+
+	/**
+	 * Reads an element below the published size.
+	 * 
+	 * @param index
+	 *            the index
+	 * @return the element
+	 */
+	@SuppressWarnings("unchecked")
+	private E element(int index) {
+		int segment = segment(index);
+		return (E) segments[segment][offset(index, segment)];
+	}
+
+	/**
+	 * Gets the segment holding an index.
+	 * 
+	 * @param index
+	 *            the index
+	 * @return the segment
+	 */
+	private static int segment(int index) {
+		int position = index + FIRST_SEGMENT_SIZE;
+		return 31 - Integer.numberOfLeadingZeros(position)
+				- FIRST_SEGMENT_SHIFT;
+	}
+
+	/**
+	 * Gets the offset of an index within its segment.
+	 * 
+	 * @param index
+	 *            the index
+	 * @param segment
+	 *            the segment
+	 * @return the offset
+	 */
+	private static int offset(int index, int segment) {
+		return index + FIRST_SEGMENT_SIZE
+				- (1 << (segment + FIRST_SEGMENT_SHIFT));
+	}
+}
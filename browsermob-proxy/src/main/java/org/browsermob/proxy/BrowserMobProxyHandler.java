@@ -19,9 +19,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.*;
 import java.util.Enumeration;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -44,9 +42,6 @@ public class BrowserMobProxyHandler extends SeleniumProxyHandler {
 	/** The http client. */
 	private BrowserMobHttpClient httpClient;
 
-	/** The ssl relays. */
-	protected final Set<SslRelay> sslRelays = new HashSet<SslRelay>();
-
 	/**
 	 * Instantiates a new browser mob proxy handler.
 	 */
@@ -148,86 +143,22 @@ public class BrowserMobProxyHandler extends SeleniumProxyHandler {
 	 * (non-Javadoc)
 	 * 
 	 * @see
-	 * org.browsermob.proxy.selenium.SeleniumProxyHandler#getSslRelayOrCreateNew
-	 * (org.browsermob.proxy.jetty.util.URI,
+	 * org.browsermob.proxy.selenium.SeleniumProxyHandler#createSslRelay(org
+	 * .browsermob.proxy.jetty.util.URI,
 	 * org.browsermob.proxy.jetty.util.InetAddrPort,
 	 * org.browsermob.proxy.jetty.http.HttpServer)
 	 */
 	@Override
-	protected SslRelay getSslRelayOrCreateNew(URI uri, InetAddrPort addrPort,
+	protected SslRelay createSslRelay(URI uri, InetAddrPort addrPort,
 			HttpServer server) throws Exception {
-		SslRelay relay = super.getSslRelayOrCreateNew(uri, addrPort, server);
-		relay.setNukeDirOrFile(null);
-
-		synchronized (sslRelays) {
-			sslRelays.add(relay);
-		}
-
-		if (!relay.isStarted()) {
-			server.addListener(relay);
-
-			startRelayWithPortTollerance(server, relay, 1);
-		}
+		SslRelay relay = super.createSslRelay(uri, addrPort, server);
 
+		// the relay serves requests itself, so it needs the same buffer
+		// settings as the listeners
+		adjustListenerBuffers(relay);
 		return relay;
 	}
 
-	/**
-	 * Start relay with port tollerance.
-	 * 
-	 * @param server
-	 *            the server
-	 * @param relay
-	 *            the relay
-	 * @param tries
-	 *            the tries
-	 * @throws Exception
-	 *             the exception
-	 */
-	private void startRelayWithPortTollerance(HttpServer server,
-			SslRelay relay, int tries) throws Exception {
-		if (tries >= 5) {
-			throw new BindException(
-					"Unable to bind to several ports, most recently "
-							+ relay.getPort() + ". Giving up");
-		}
-		try {
-			if (server.isStarted()) {
-				relay.start();
-			} else {
-				throw new RuntimeException(
-						"Can't start SslRelay: server is not started (perhaps it was just shut down?)");
-			}
-		} catch (BindException e) {
-			// doh - the port is being used up, let's pick a new port
-			LOG.info("Unable to bind to port %d, going to try port %d now",
-					relay.getPort(), relay.getPort() + 1);
-			relay.setPort(relay.getPort() + 1);
-			startRelayWithPortTollerance(server, relay, tries + 1);
-		}
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see
-	 * org.browsermob.proxy.selenium.SeleniumProxyHandler#newHttpTunnel(org.
-	 * browsermob.proxy.jetty.http.HttpRequest,
-	 * org.browsermob.proxy.jetty.http.HttpResponse, java.net.InetAddress, int,
-	 * int)
-	 */
-	@Override
-	protected HttpTunnel newHttpTunnel(HttpRequest httpRequest,
-			HttpResponse httpResponse, InetAddress inetAddress, int i, int i1)
-			throws IOException {
-		// we're opening up a new tunnel, so let's make sure that the associated
-		// SslRelay (which may or may not be new) has the proper buffer settings
-		adjustListenerBuffers();
-
-		return super.newHttpTunnel(httpRequest, httpResponse, inetAddress, i,
-				i1);
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -529,16 +460,29 @@ public class BrowserMobProxyHandler extends SeleniumProxyHandler {
 		HttpListener[] listeners = jettyServer.getListeners();
 		for (HttpListener listener : listeners) {
 			if (listener instanceof SocketListener) {
-				SocketListener sl = (SocketListener) listener;
-				if (sl.getBufferReserve() != 512 * headerBufferMultiplier) {
-					sl.setBufferReserve(512 * headerBufferMultiplier);
-				}
-
-				if (sl.getBufferSize() != 8192 * headerBufferMultiplier) {
-					sl.setBufferSize(8192 * headerBufferMultiplier);
-				}
+				adjustListenerBuffers((SocketListener) listener);
 			}
 		}
+
+		for (SslRelay relay : getSslRelays()) {
+			adjustListenerBuffers(relay);
+		}
+	}
+
+	/**
+	 * Adjust the buffers of one listener.
+	 * 
+	 * @param sl
+	 *            the listener
+	 */
+	private void adjustListenerBuffers(SocketListener sl) {
+		if (sl.getBufferReserve() != 512 * headerBufferMultiplier) {
+			sl.setBufferReserve(512 * headerBufferMultiplier);
+		}
+
+		if (sl.getBufferSize() != 8192 * headerBufferMultiplier) {
+			sl.setBufferSize(8192 * headerBufferMultiplier);
+		}
 	}
 
 	/**
@@ -555,14 +499,6 @@ public class BrowserMobProxyHandler extends SeleniumProxyHandler {
 	 * Cleanup.
 	 */
 	public void cleanup() {
-		synchronized (sslRelays) {
-			for (SslRelay relay : sslRelays) {
-				if (relay.getHttpServer() != null && relay.isStarted()) {
-					relay.getHttpServer().removeListener(relay);
-				}
-			}
-
-			sslRelays.clear();
-		}
+		stopSslRelays();
 	}
 }
@@ -6,8 +6,12 @@ package org.browsermob.proxy;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.Provider;
+import org.browsermob.proxy.http.ResponseCache;
+import org.browsermob.proxy.selenium.KeyType;
 
+import java.io.File;
 import java.util.Hashtable;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -28,6 +32,9 @@ public class ProxyManager {
 	/** The proxies. */
 	private Map<Integer, ProxyServer> proxies = new ConcurrentHashMap<Integer, ProxyServer>();
 
+	/** The response cache shared by the proxies, null until one asks for it. */
+	private ResponseCache responseCache;
+
 	/**
 	 * Instantiates a new proxy manager.
 	 * 
@@ -54,6 +61,7 @@ public class ProxyManager {
 			throws Exception {
 		ProxyServer proxy = proxyServerProvider.get();
 		proxy.setPort(port);
+		setStartOptions(proxy, options);
 		proxy.start();
 		proxy.setOptions(options);
 		proxies.put(port, proxy);
@@ -74,6 +82,7 @@ public class ProxyManager {
 		ProxyServer proxy = proxyServerProvider.get();
 
 		proxy.setPort(port);
+		setStartOptions(proxy, options);
 		proxy.start();
 		proxy.setOptions(options);
 
@@ -82,6 +91,24 @@ public class ProxyManager {
 		return proxy;
 	}
 
+	/**
+	 * Applies the options that have to be known before the proxy starts.
+	 * 
+	 * @param proxy
+	 *            the proxy
+	 * @param options
+	 *            the options
+	 */
+	private void setStartOptions(ProxyServer proxy, Map<String, String> options) {
+		if (options.containsKey("maxThreads")) {
+			proxy.setMaxThreads(Integer.parseInt(options.get("maxThreads")));
+		}
+		if (options.containsKey("certificateKeyType")) {
+			proxy.setCertificateKeyType(KeyType.valueOf(options.get(
+					"certificateKeyType").toUpperCase(Locale.ENGLISH)));
+		}
+	}
+
 	/**
 	 * Gets the.
 	 * 
@@ -105,4 +132,27 @@ public class ProxyManager {
 		ProxyServer proxy = proxies.remove(port);
 		proxy.stop();
 	}
+
+	/**
+	 * Gets the response cache shared by all the proxies, creating it the first
+	 * time it is asked for. The sizes are only used then.
+	 * 
+	 * @param maxMemorySize
+	 *            the most bytes to hold in memory
+	 * @param directory
+	 *            the directory to hold entries pushed out of memory in, null
+	 *            to only cache in memory
+	 * @param maxDiskSize
+	 *            the most bytes to hold on disk
+	 * @return the response cache
+	 */
+	public synchronized ResponseCache getResponseCache(long maxMemorySize,
+			File directory, long maxDiskSize) {
+		if (responseCache == null) {
+			responseCache = new ResponseCache(maxMemorySize, directory,
+					maxDiskSize);
+		}
+
+		return responseCache;
+	}
 }
@@ -6,26 +6,31 @@ package org.browsermob.proxy;
 import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.HttpResponseInterceptor;
 import org.browsermob.core.har.*;
-import org.browsermob.core.util.ThreadUtils;
 import org.browsermob.proxy.http.BrowserMobHttpClient;
+import org.browsermob.proxy.http.CapturePolicy;
+import org.browsermob.proxy.http.ConnectionPoolStats;
 import org.browsermob.proxy.http.RequestInterceptor;
+import org.browsermob.proxy.http.ResponseCache;
 import org.browsermob.proxy.http.ResponseInterceptor;
 import org.browsermob.proxy.jetty.http.HttpContext;
-import org.browsermob.proxy.jetty.http.HttpListener;
 import org.browsermob.proxy.jetty.http.SocketListener;
 import org.browsermob.proxy.jetty.jetty.Server;
 import org.browsermob.proxy.jetty.util.InetAddrPort;
+import org.browsermob.proxy.selenium.KeyType;
+import org.browsermob.proxy.selenium.SeleniumProxyHandler;
+import org.browsermob.proxy.selenium.SslContextCache;
 import org.browsermob.proxy.util.Log;
 import org.java_bandwidthlimiter.BandwidthLimiter;
 import org.java_bandwidthlimiter.StreamManager;
 import org.openqa.selenium.Proxy;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -61,8 +66,23 @@ public class ProxyServer {
 	/** The page count. */
 	private int pageCount = 1;
 
-	/** The request counter. */
-	private AtomicInteger requestCounter = new AtomicInteger(0);
+	/** The default time getHar() waits for active requests, in ms. */
+	private static final long DEFAULT_HAR_TIMEOUT = 5000;
+
+	/** The directory new HARs are streamed to, null to keep them in memory. */
+	private File harStreamDirectory;
+
+	/**
+	 * The most worker threads serving browser requests, -1 for the jetty
+	 * default.
+	 */
+	private int maxThreads = -1;
+
+	/** The type of key in the certificates issued for HTTPS hosts. */
+	private KeyType certificateKeyType = KeyType.RSA;
+
+	/** The most HTTPS hosts TLS interception is kept set up for. */
+	private int maxSslRelays = SeleniumProxyHandler.DEFAULT_MAX_SSL_RELAYS;
 
 	/**
 	 * Instantiates a new proxy server.
@@ -93,10 +113,34 @@ public class ProxyServer {
 
 		// create a stream manager that will be capped to 100 Megabits
 		// remember that by default it is disabled!
-		streamManager = new StreamManager(100 * BandwidthLimiter.OneMbps);
+		streamManager = new StreamManager(100 * BandwidthLimiter.OneMbps) {
+			// the client bypasses the response cache while throttling
+			@Override
+			public void enable() {
+				super.enable();
+				if (client != null) {
+					client.setThrottled(true);
+				}
+			}
+
+			@Override
+			public void disable() {
+				super.disable();
+				if (client != null) {
+					client.setThrottled(false);
+				}
+			}
+		};
 
 		server = new Server();
-		HttpListener listener = new SocketListener(new InetAddrPort(getPort()));
+		SocketListener listener = new SocketListener(new InetAddrPort(getPort()));
+		if (maxThreads != -1) {
+			// every request in flight holds a worker thread until its upstream
+			// response has been relayed, so this caps the parallel requests
+			listener.setMinThreads(Math.min(listener.getMinThreads(),
+					maxThreads - 1));
+			listener.setMaxThreads(maxThreads);
+		}
 		server.addListener(listener);
 		HttpContext context = new HttpContext();
 		context.setContextPath("/");
@@ -105,7 +149,9 @@ public class ProxyServer {
 		handler = new BrowserMobProxyHandler();
 		handler.setJettyServer(server);
 		handler.setShutdownLock(new Object());
-		client = new BrowserMobHttpClient(streamManager, requestCounter);
+		handler.setCertificateKeyType(certificateKeyType);
+		handler.setMaxSslRelays(maxSslRelays);
+		client = new BrowserMobHttpClient(streamManager);
 		client.prepareForBrowser();
 		handler.setHttpClient(client);
 
@@ -113,9 +159,98 @@ public class ProxyServer {
 
 		server.start();
 
+		// load the CA now rather than on the first CONNECT
+		SslContextCache.prewarm();
+
 		setPort(listener.getPort());
 	}
 
+	/**
+	 * Gets the max threads.
+	 * 
+	 * @return the most worker threads, -1 for the jetty default
+	 */
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * Sets the most worker threads serving browser requests. Each request in
+	 * flight holds a thread for as long as it waits on the upstream server,
+	 * so this is the number of requests the proxy can handle at once. It has
+	 * to be set before the proxy is started.
+	 * 
+	 * @param maxThreads
+	 *            the most worker threads, -1 for the jetty default
+	 */
+	public void setMaxThreads(int maxThreads) {
+		if (maxThreads != -1 && maxThreads < 2) {
+			throw new IllegalArgumentException(
+					"At least 2 worker threads are needed: " + maxThreads);
+		}
+
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * Gets the certificate key type.
+	 * 
+	 * @return the type of key in the certificates issued for HTTPS hosts
+	 */
+	public KeyType getCertificateKeyType() {
+		return certificateKeyType;
+	}
+
+	/**
+	 * Sets the type of key in the certificates the proxy issues for the HTTPS
+	 * hosts it intercepts. Elliptic curve keys make setting up a new host and
+	 * every handshake cheaper. Either way the certificates are signed by the
+	 * same CA. Hosts already intercepted keep the certificate they have.
+	 * 
+	 * @param certificateKeyType
+	 *            the new certificate key type
+	 */
+	public void setCertificateKeyType(KeyType certificateKeyType) {
+		this.certificateKeyType = certificateKeyType;
+		if (handler != null) {
+			handler.setCertificateKeyType(certificateKeyType);
+		}
+	}
+
+	/**
+	 * Gets the number of HTTPS hosts TLS interception is set up for, including
+	 * those being set up.
+	 * 
+	 * @return the ssl relay count
+	 */
+	public int getSslRelayCount() {
+		return handler != null ? handler.getSslRelayCount() : 0;
+	}
+
+	/**
+	 * Gets the most HTTPS hosts TLS interception is kept set up for.
+	 * 
+	 * @return the max ssl relays
+	 */
+	public int getMaxSslRelays() {
+		return maxSslRelays;
+	}
+
+	/**
+	 * Sets the most HTTPS hosts TLS interception is kept set up for. Past it,
+	 * the hosts idle the longest are dropped and set up again if they are
+	 * visited later.
+	 * 
+	 * @param maxSslRelays
+	 *            the new max ssl relays
+	 */
+	public void setMaxSslRelays(int maxSslRelays) {
+		this.maxSslRelays = maxSslRelays;
+		if (handler != null) {
+			handler.setMaxSslRelays(maxSslRelays);
+		}
+	}
+
 	/**
 	 * Selenium proxy.
 	 * 
@@ -152,6 +287,11 @@ public class ProxyServer {
 		cleanup();
 		client.shutdown();
 		server.stop();
+
+		Har har = client.getHar();
+		if (har != null && har.getLog().getStreamWriter() != null) {
+			har.getLog().getStreamWriter().close();
+		}
 	}
 
 	/**
@@ -179,20 +319,34 @@ public class ProxyServer {
 	 * @return the har
 	 */
 	public Har getHar() {
-		// Wait up to 5 seconds for all active requests to cease before
-		// returning the HAR.
+		return getHar(DEFAULT_HAR_TIMEOUT);
+	}
+
+	/**
+	 * Gets the har once all active requests have finished.
+	 * 
+	 * @param timeoutInMs
+	 *            how long to wait for active requests to finish
+	 * @return the har
+	 */
+	public Har getHar(long timeoutInMs) {
+		// Wait for all active requests to cease before returning the HAR.
 		// This helps with race conditions but won't cause deadlocks should a
-		// request hang
-		// or error out in an unexpected way (which of course would be a bug!)
-		boolean success = ThreadUtils.waitFor(new ThreadUtils.WaitCondition() {
-			@Override
-			public boolean checkCondition(long elapsedTimeInMs) {
-				return requestCounter.get() == 0;
-			}
-		}, TimeUnit.SECONDS, 5);
+		// request hang or error out in an unexpected way (which of course
+		// would be a bug!)
+		boolean success;
+		try {
+			success = client.getTrafficMonitor().awaitNoActiveRequests(
+					timeoutInMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			success = false;
+		}
 
 		if (!success) {
-			LOG.warn("Waited 5 seconds for requests to cease before returning HAR; giving up!");
+			LOG.warn(
+					"Waited %d ms for requests to cease before returning HAR; giving up!",
+					timeoutInMs);
 		}
 
 		return client.getHar();
@@ -210,13 +364,70 @@ public class ProxyServer {
 
 		Har oldHar = getHar();
 
-		Har har = new Har(new HarLog(CREATOR));
+		HarLog log = new HarLog(CREATOR);
+		if (harStreamDirectory != null) {
+			File file = new File(harStreamDirectory, "har-" + getPort() + "-"
+					+ System.currentTimeMillis() + ".har");
+			try {
+				log.setStreamWriter(new HarStreamWriter(file, log));
+			} catch (IOException e) {
+				throw new RuntimeException("Could not create HAR file " + file,
+						e);
+			}
+		}
+
+		Har har = new Har(log);
 		client.setHar(har);
 		newPage(initialPageRef);
 
+		// nothing is added to the old har anymore, so finish its file
+		if (oldHar != null && oldHar.getLog().getStreamWriter() != null) {
+			try {
+				oldHar.getLog().getStreamWriter().close();
+			} catch (IOException e) {
+				LOG.warn("Could not finish HAR file %s", e, oldHar.getLog()
+						.getStreamWriter().getFile());
+			}
+		}
+
 		return oldHar;
 	}
 
+	/**
+	 * Sets the directory new HARs are streamed to. When set, completed entries
+	 * are written to a file in this directory instead of being held in memory;
+	 * the setting takes effect with the next call to {@link #newHar(String)}.
+	 * 
+	 * @param harStreamDirectory
+	 *            the directory, or null to keep HARs in memory
+	 */
+	public void setHarStreamDirectory(File harStreamDirectory) {
+		this.harStreamDirectory = harStreamDirectory;
+	}
+
+	/**
+	 * Gets the har stream directory.
+	 * 
+	 * @return the har stream directory
+	 */
+	public File getHarStreamDirectory() {
+		return harStreamDirectory;
+	}
+
+	/**
+	 * Gets the file the current HAR is streamed to.
+	 * 
+	 * @return the har file, or null if the HAR is held in memory
+	 */
+	public File getHarFile() {
+		Har har = client.getHar();
+		if (har == null || har.getLog().getStreamWriter() == null) {
+			return null;
+		}
+
+		return har.getLog().getStreamWriter().getFile();
+	}
+
 	/**
 	 * New page.
 	 * 
@@ -485,6 +696,115 @@ public class ProxyServer {
 		client.setCaptureBinaryContent(captureBinaryContent);
 	}
 
+	/**
+	 * Sets whether the timings of each entry also carry their nanosecond
+	 * values, in the "_nanos" extension field.
+	 * 
+	 * @param captureNanoTimings
+	 *            the new capture nano timings
+	 */
+	public void setCaptureNanoTimings(boolean captureNanoTimings) {
+		client.setCaptureNanoTimings(captureNanoTimings);
+	}
+
+	/**
+	 * Sets the policy deciding which responses have their content captured.
+	 * It only applies while content capture is on.
+	 * 
+	 * @param capturePolicy
+	 *            the new capture policy, null to capture everything
+	 */
+	public void setCapturePolicy(CapturePolicy capturePolicy) {
+		client.setCapturePolicy(capturePolicy);
+	}
+
+	/**
+	 * Gets the capture policy.
+	 * 
+	 * @return the capture policy
+	 */
+	public CapturePolicy getCapturePolicy() {
+		return client.getCapturePolicy();
+	}
+
+	/**
+	 * Sets the cache fresh upstream responses are served from. The cache is
+	 * bypassed while any host is remapped or the bandwidth or latency is
+	 * limited, since it is keyed by URI alone and its hits aren't throttled.
+	 * 
+	 * @param responseCache
+	 *            the response cache, which may be shared with other proxies,
+	 *            null to stop caching
+	 */
+	public void setResponseCache(ResponseCache responseCache) {
+		client.setResponseCache(responseCache);
+	}
+
+	/**
+	 * Gets the response cache.
+	 * 
+	 * @return the response cache, null if responses aren't cached
+	 */
+	public ResponseCache getResponseCache() {
+		return client.getResponseCache();
+	}
+
+	/**
+	 * Sets the limits of the upstream connection pool. The defaults, 30
+	 * connections in all and 6 per host, match Firefox 3 and are too low
+	 * when several browsers share the proxy.
+	 * 
+	 * @param maxTotal
+	 *            the most connections in all
+	 * @param maxPerRoute
+	 *            the most connections to one host
+	 */
+	public void setConnectionLimits(int maxTotal, int maxPerRoute) {
+		client.setConnectionLimits(maxTotal, maxPerRoute);
+	}
+
+	/**
+	 * Lets the upstream connection pool grow when requests wait longer than
+	 * the threshold for a connection.
+	 * 
+	 * @param thresholdMs
+	 *            the wait that makes the pool grow, -1 to keep its size fixed
+	 * @param maxTotal
+	 *            the size the pool may grow to
+	 */
+	public void setAdaptiveConnectionPool(long thresholdMs, int maxTotal) {
+		client.setAdaptiveConnectionPool(thresholdMs, maxTotal);
+	}
+
+	/**
+	 * Gets the state of the upstream connection pool.
+	 * 
+	 * @return the connection pool stats
+	 */
+	public ConnectionPoolStats getConnectionPoolStats() {
+		return client.getConnectionPoolStats();
+	}
+
+	/**
+	 * Sets the most content bytes captured for a single entry.
+	 * 
+	 * @param maxEntryContentSize
+	 *            the max entry content size, -1 for no limit
+	 */
+	public void setMaxEntryContentSize(long maxEntryContentSize) {
+		client.setMaxEntryContentSize(maxEntryContentSize);
+	}
+
+	/**
+	 * Sets the most content bytes captured for a whole HAR.
+	 * 
+	 * @param maxHarContentSize
+	 *            the max har content size, -1 for no limit
+	 */
+	public void setMaxHarContentSize(long maxHarContentSize) {
+		client.setMaxHarContentSize(maxHarContentSize);
+	}
+
 	/**
 	 * Clear dns cache.
 	 */
@@ -510,39 +830,16 @@ public class ProxyServer {
 	 * @param timeoutInMs
 	 *            the timeout in ms
 	 */
-	public void waitForNetworkTrafficToStop(final long quietPeriodInMs,
+	public void waitForNetworkTrafficToStop(long quietPeriodInMs,
 			long timeoutInMs) {
-		long start = System.currentTimeMillis();
-		boolean result = ThreadUtils.waitFor(new ThreadUtils.WaitCondition() {
-			@Override
-			public boolean checkCondition(long elapsedTimeInMs) {
-				Date lastCompleted = null;
-				Har har = client.getHar();
-				if (har == null || har.getLog() == null) {
-					return true;
-				}
-
-				for (HarEntry entry : har.getLog().getEntries()) {
-					// if there is an active request, just stop looking
-					if (entry.getResponse().getStatus() < 0) {
-						return false;
-					}
-
-					Date end = new Date(entry.getStartedDateTime().getTime()
-							+ entry.getTime());
-					if (lastCompleted == null) {
-						lastCompleted = end;
-					} else if (end.after(lastCompleted)) {
-						lastCompleted = end;
-					}
-				}
-
-				return lastCompleted != null
-						&& System.currentTimeMillis() - lastCompleted.getTime() >= quietPeriodInMs;
-			}
-		}, TimeUnit.MILLISECONDS, timeoutInMs);
-		long end = System.currentTimeMillis();
-		long time = (end - start);
+		boolean result;
+		try {
+			result = client.getTrafficMonitor().awaitQuietPeriod(
+					quietPeriodInMs, timeoutInMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result = false;
+		}
 
 		if (!result) {
 			throw new RuntimeException("Timed out after " + timeoutInMs
@@ -19,14 +19,19 @@ import org.browsermob.proxy.ProxyManager;
 import org.browsermob.proxy.ProxyServer;
 import org.browsermob.proxy.http.BrowserMobHttpRequest;
 import org.browsermob.proxy.http.BrowserMobHttpResponse;
+import org.browsermob.proxy.http.CapturePolicy;
+import org.browsermob.proxy.http.ConnectionPoolStats;
 import org.browsermob.proxy.http.RequestInterceptor;
+import org.browsermob.proxy.http.ResponseCache;
 import org.browsermob.proxy.http.ResponseInterceptor;
 import org.browsermob.proxy.util.Log;
 import org.java_bandwidthlimiter.StreamManager;
 
 import javax.script.*;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
@@ -81,6 +86,16 @@ public class ProxyResource {
 					String.format("%s:%s", systemProxyHost, systemProxyPort));
 		}
 
+		String maxThreads = request.param("maxThreads");
+		if (maxThreads != null) {
+			options.put("maxThreads", maxThreads);
+		}
+
+		String certificateKeyType = request.param("certificateKeyType");
+		if (certificateKeyType != null) {
+			options.put("certificateKeyType", certificateKeyType);
+		}
+
 		String paramPort = request.param("port");
 		int port = 0;
 		if (paramPort != null) {
@@ -98,15 +113,26 @@ public class ProxyResource {
 	 * 
 	 * @param port
 	 *            the port
+	 * @param request
+	 *            the request
 	 * @return the har
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
 	 */
 	@Get
 	@At("/:port/har")
-	public Reply<Har> getHar(@Named("port") int port) {
+	public Reply<?> getHar(@Named("port") int port, Request request)
+			throws IOException {
 		ProxyServer proxy = proxyManager.get(port);
-		Har har = proxy.getHar();
+		String timeoutInMs = request.param("timeoutInMs");
+		Har har;
+		if (timeoutInMs != null) {
+			har = proxy.getHar(Long.parseLong(timeoutInMs));
+		} else {
+			har = proxy.getHar();
+		}
 
-		return Reply.with(har).as(Json.class);
+		return reply(har);
 	}
 
 	/**
@@ -120,9 +146,17 @@ public class ProxyResource {
 	 */
 	@Put
 	@At("/:port/har")
-	public Reply<?> newHar(@Named("port") int port, Request request) {
+	public Reply<?> newHar(@Named("port") int port, Request request)
+			throws IOException {
 		String initialPageRef = request.param("initialPageRef");
 		ProxyServer proxy = proxyManager.get(port);
+
+		String streamDirectory = request.param("streamDirectory");
+		if (streamDirectory != null) {
+			proxy.setHarStreamDirectory(streamDirectory.length() > 0 ? new File(
+					streamDirectory) : null);
+		}
+
 		Har oldHar = proxy.newHar(initialPageRef);
 
 		String captureHeaders = request.param("captureHeaders");
@@ -132,14 +166,47 @@ public class ProxyResource {
 		proxy.setCaptureContent(Boolean.parseBoolean(captureContent));
 		proxy.setCaptureBinaryContent(Boolean
 				.parseBoolean(captureBinaryContent));
+		proxy.setCaptureNanoTimings(Boolean.parseBoolean(request
+				.param("captureNanoTimings")));
+
+		String maxEntryContentSize = request.param("maxEntryContentSize");
+		if (maxEntryContentSize != null) {
+			proxy.setMaxEntryContentSize(Long.parseLong(maxEntryContentSize));
+		}
+
+		String maxHarContentSize = request.param("maxHarContentSize");
+		if (maxHarContentSize != null) {
+			proxy.setMaxHarContentSize(Long.parseLong(maxHarContentSize));
+		}
 
 		if (oldHar != null) {
-			return Reply.with(oldHar).as(Json.class);
+			return reply(oldHar);
 		} else {
 			return Reply.saying().noContent();
 		}
 	}
 
+	/**
+	 * Replies with a har. A har streamed to disk is sent as the JSON text of
+	 * its file rather than through the bean mapping, which would only see the
+	 * entries still in memory. The file is copied to the response as it is
+	 * read, so a large capture is never held in memory.
+	 * 
+	 * @param har
+	 *            the har
+	 * @return the reply
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private Reply<?> reply(Har har) throws IOException {
+		if (har.getLog().getStreamWriter() == null) {
+			return Reply.with(har).as(Json.class);
+		}
+
+		// sitebricks copies a stream to the response and closes it
+		return Reply.with(har.openStream()).type("application/json");
+	}
+
 	/**
 	 * Sets the page.
 	 * 
@@ -199,6 +266,168 @@ public class ProxyResource {
 		return Reply.saying().ok();
 	}
 
+	/**
+	 * Gets the state of the upstream connection pool.
+	 * 
+	 * @param port
+	 *            the port
+	 * @return the reply
+	 */
+	@Get
+	@At("/:port/connections")
+	public Reply<ConnectionPoolStats> connectionPool(@Named("port") int port) {
+		ProxyServer proxy = proxyManager.get(port);
+		return Reply.with(proxy.getConnectionPoolStats()).as(Json.class);
+	}
+
+	/**
+	 * Sets the limits of the upstream connection pool.
+	 * 
+	 * @param port
+	 *            the port
+	 * @param request
+	 *            the request
+	 * @return the reply
+	 */
+	@Put
+	@At("/:port/connections")
+	public Reply<?> setConnectionPool(@Named("port") int port,
+			Request request) {
+		ProxyServer proxy = proxyManager.get(port);
+		ConnectionPoolStats stats = proxy.getConnectionPoolStats();
+
+		String maxTotal = request.param("maxTotal");
+		String maxPerRoute = request.param("maxPerRoute");
+		if (maxTotal != null || maxPerRoute != null) {
+			proxy.setConnectionLimits(
+					maxTotal != null ? Integer.parseInt(maxTotal) : stats
+							.getMaxTotal(),
+					maxPerRoute != null ? Integer.parseInt(maxPerRoute)
+							: stats.getMaxPerRoute());
+		}
+
+		String adaptiveThresholdMs = request.param("adaptiveThresholdMs");
+		if (adaptiveThresholdMs != null) {
+			String adaptiveMaxTotal = request.param("adaptiveMaxTotal");
+			proxy.setAdaptiveConnectionPool(
+					Long.parseLong(adaptiveThresholdMs),
+					adaptiveMaxTotal != null ? Integer
+							.parseInt(adaptiveMaxTotal) : 4 * proxy
+							.getConnectionPoolStats().getMaxTotal());
+		}
+
+		return Reply.saying().ok();
+	}
+
+	/**
+	 * Gets the number of HTTPS hosts TLS interception is set up for and the
+	 * most kept.
+	 * 
+	 * @param port
+	 *            the port
+	 * @return the reply
+	 */
+	@Get
+	@At("/:port/ssl/relays")
+	public Reply<Map<String, Integer>> sslRelays(@Named("port") int port) {
+		ProxyServer proxy = proxyManager.get(port);
+		Map<String, Integer> relays = new HashMap<String, Integer>();
+		relays.put("count", proxy.getSslRelayCount());
+		relays.put("max", proxy.getMaxSslRelays());
+		return Reply.with(relays).as(Json.class);
+	}
+
+	/**
+	 * Sets the most HTTPS hosts TLS interception is kept set up for.
+	 * 
+	 * @param port
+	 *            the port
+	 * @param request
+	 *            the request
+	 * @return the reply
+	 */
+	@Put
+	@At("/:port/ssl/relays")
+	public Reply<?> setSslRelays(@Named("port") int port, Request request) {
+		ProxyServer proxy = proxyManager.get(port);
+
+		String max = request.param("max");
+		if (max != null) {
+			proxy.setMaxSslRelays(Integer.parseInt(max));
+		}
+
+		return Reply.saying().ok();
+	}
+
+	/**
+	 * Sets the capture policy. Parameters left out match everything, so a
+	 * request without parameters goes back to capturing every response.
+	 * 
+	 * @param port
+	 *            the port
+	 * @param request
+	 *            the request
+	 * @return the reply
+	 */
+	@Put
+	@At("/:port/capture")
+	public Reply<?> capturePolicy(@Named("port") int port, Request request) {
+		String urlPattern = request.param("urlPattern");
+		String mimeTypes = request.param("mimeTypes");
+		String maxSize = request.param("maxSize");
+		String sampleRate = request.param("sampleRate");
+
+		CapturePolicy policy = new CapturePolicy(
+				urlPattern != null && urlPattern.length() > 0 ? urlPattern
+						: null, mimeTypes != null ? Arrays.asList(mimeTypes
+						.split(",")) : null, maxSize != null ? Long
+						.parseLong(maxSize) : -1, sampleRate != null ? Double
+						.parseDouble(sampleRate) : 1.0);
+
+		ProxyServer proxy = proxyManager.get(port);
+		proxy.setCapturePolicy(policy);
+
+		return Reply.saying().ok();
+	}
+
+	/**
+	 * Turns the response cache on or off. All the proxies share one cache,
+	 * which is created with the sizes given by the first proxy to turn it on.
+	 * A proxy with remapped hosts or throttled connections bypasses it.
+	 * 
+	 * @param port
+	 *            the port
+	 * @param request
+	 *            the request
+	 * @return the reply
+	 */
+	@Put
+	@At("/:port/cache")
+	public Reply<?> responseCache(@Named("port") int port, Request request) {
+		ProxyServer proxy = proxyManager.get(port);
+
+		String enabled = request.param("enabled");
+		if (enabled != null && !Boolean.parseBoolean(enabled)) {
+			proxy.setResponseCache(null);
+			return Reply.saying().ok();
+		}
+
+		String maxMemorySize = request.param("maxMemorySize");
+		String directory = request.param("directory");
+		String maxDiskSize = request.param("maxDiskSize");
+
+		ResponseCache cache = proxyManager.getResponseCache(
+				maxMemorySize != null ? Long.parseLong(maxMemorySize)
+						: 64 * 1024 * 1024,
+				directory != null && directory.length() > 0 ? new File(
+						directory) : null,
+				maxDiskSize != null ? Long.parseLong(maxDiskSize)
+						: 512 * 1024 * 1024);
+		proxy.setResponseCache(cache);
+
+		return Reply.saying().ok();
+	}
+
 	/**
 	 * Auto basic auth.
 	 * 
@@ -54,6 +54,9 @@ public class ConfigModule implements Module {
 						"The number of days to cache a database of User-Agent records from http://user-agent-string.info")
 				.withOptionalArg().ofType(Integer.class).defaultsTo(1);
 
+		parser.accepts("uaOffline",
+				"Never download the database of User-Agent records, only use a copy cached by an earlier run");
+
 		parser.acceptsAll(asList("help", "?"), "This help text");
 
 		OptionSet options = parser.parse(args);
@@ -76,6 +79,8 @@ public class ConfigModule implements Module {
 		if (BrowserMobHttpClient.PARSER instanceof OnlineUpdateUASparser) {
 			((OnlineUpdateUASparser) BrowserMobHttpClient.PARSER)
 					.setUpdateInterval(1000 * 60 * 60 * 24 * userAgentCacheDays);
+			((OnlineUpdateUASparser) BrowserMobHttpClient.PARSER)
+					.setOffline(options.has("uaOffline"));
 		}
 	}
 }
@@ -0,0 +1,176 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.browsermob.proxy.util.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The upstream connection pool of a {@link BrowserMobHttpClient}. Besides
+ * recording the time each request is blocked waiting for a connection in its
+ * {@link RequestInfo}, it keeps running totals of those waits and can grow
+ * itself when requests wait too long, which happens when several browsers
+ * share one proxy.
+ */
+public class BrowserMobConnectionManager extends PoolingClientConnectionManager {
+
+	/** The Constant LOG. */
+	private static final Log LOG = new Log();
+
+	/** The least time between two growths of the pool. */
+	private static final long GROWTH_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+	/** The number of connections requested. */
+	private final AtomicLong requests = new AtomicLong();
+
+	/** The total time spent waiting for connections. */
+	private final AtomicLong waitNanos = new AtomicLong();
+
+	/** The number of times the pool grew. */
+	private final AtomicLong growths = new AtomicLong();
+
+	/** The wait above which the pool grows, -1 for a fixed size pool. */
+	private volatile long growThresholdNanos = -1;
+
+	/** The size the pool may grow to. */
+	private volatile int growMaxTotal;
+
+	/** The System.nanoTime() of the last growth. */
+	private long lastGrowth;
+
+	/**
+	 * Instantiates a new connection manager.
+	 * 
+	 * @param schemeRegistry
+	 *            the scheme registry
+	 */
+	public BrowserMobConnectionManager(SchemeRegistry schemeRegistry) {
+		super(schemeRegistry);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * org.apache.http.impl.conn.PoolingClientConnectionManager#requestConnection
+	 * (org.apache.http.conn.routing.HttpRoute, java.lang.Object)
+	 */
+	@Override
+	public ClientConnectionRequest requestConnection(final HttpRoute route,
+			Object state) {
+		final ClientConnectionRequest wrapped = super.requestConnection(route,
+				state);
+		return new ClientConnectionRequest() {
+			@Override
+			public ManagedClientConnection getConnection(long timeout,
+					TimeUnit tunit) throws InterruptedException,
+					ConnectionPoolTimeoutException {
+				long start = RequestInfo.now();
+				try {
+					return wrapped.getConnection(timeout, tunit);
+				} finally {
+					long end = RequestInfo.now();
+					RequestInfo.get().blocked(start, end);
+					waited(route, end - start);
+				}
+			}
+
+			@Override
+			public void abortRequest() {
+				wrapped.abortRequest();
+			}
+		};
+	}
+
+	/**
+	 * Lets the pool grow when requests wait too long for a connection. When
+	 * a request waits longer than the threshold, the limit for its route and
+	 * the total limit are raised by one, at most once a second, until the
+	 * total reaches the given size.
+	 * 
+	 * @param thresholdMs
+	 *            the wait that makes the pool grow, -1 to keep its size fixed
+	 * @param maxTotal
+	 *            the size the pool may grow to
+	 */
+	public void setAdaptive(long thresholdMs, int maxTotal) {
+		this.growMaxTotal = maxTotal;
+		this.growThresholdNanos = thresholdMs != -1 ? TimeUnit.MILLISECONDS
+				.toNanos(thresholdMs) : -1;
+	}
+
+	/**
+	 * Gets the current state of the pool.
+	 * 
+	 * @return the stats
+	 */
+	public ConnectionPoolStats getPoolStats() {
+		PoolStats totals = getTotalStats();
+		long count = requests.get();
+		double averageWaitMs = count > 0 ? waitNanos.get() / 1e6 / count : 0;
+
+		return new ConnectionPoolStats(totals.getLeased(),
+				totals.getAvailable(), totals.getPending(), getMaxTotal(),
+				getDefaultMaxPerRoute(), count, averageWaitMs, growths.get(),
+				growThresholdNanos != -1);
+	}
+
+	/**
+	 * Records a wait for a connection, growing the pool if it was too long.
+	 * 
+	 * @param route
+	 *            the route
+	 * @param nanos
+	 *            the wait
+	 */
+	private void waited(HttpRoute route, long nanos) {
+		requests.incrementAndGet();
+		waitNanos.addAndGet(nanos);
+
+		long threshold = growThresholdNanos;
+		if (threshold != -1 && nanos > threshold) {
+			grow(route);
+		}
+	}
+
+	/**
+	 * Raises the limits for a route and for the whole pool by one.
+	 * 
+	 * @param route
+	 *            the route
+	 */
+	private synchronized void grow(HttpRoute route) {
+		long now = System.nanoTime();
+		if (growths.get() > 0 && now - lastGrowth < GROWTH_INTERVAL) {
+			return;
+		}
+
+		int maxTotal = getMaxTotal();
+		int maxForRoute = getMaxPerRoute(route);
+		if (maxTotal >= growMaxTotal && maxForRoute >= maxTotal) {
+			return;
+		}
+
+		if (maxTotal < growMaxTotal) {
+			setMaxTotal(maxTotal + 1);
+		}
+		if (maxForRoute < getMaxTotal()) {
+			setMaxPerRoute(route, maxForRoute + 1);
+		}
+		lastGrowth = now;
+		growths.incrementAndGet();
+
+		LOG.fine("Grew the connection pool to %d connections, %d for %s",
+				getMaxTotal(), getMaxPerRoute(route), route);
+	}
+}
@@ -11,7 +11,6 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -86,7 +85,7 @@ public class BrowserMobHostNameResolver implements HostNameResolver {
 		lookup.setCache(cache);
 		lookup.setResolver(resolver);
 
-		Date start = new Date();
+		long start = RequestInfo.now();
 		Record[] records = lookup.run();
 		if (fakeSlow.get()) {
 			fakeSlow.set(false);
@@ -96,7 +95,7 @@ public class BrowserMobHostNameResolver implements HostNameResolver {
 				e.printStackTrace();
 			}
 		}
-		Date end = new Date();
+		long end = RequestInfo.now();
 
 		if (records == null || records.length == 0) {
 			throw new UnknownHostException(hostname);
@@ -152,6 +151,15 @@ public class BrowserMobHostNameResolver implements HostNameResolver {
 		return remappings.get(host);
 	}
 
+	/**
+	 * Checks if any host is remapped.
+	 * 
+	 * @return true, if there are remappings
+	 */
+	public boolean hasRemappings() {
+		return !remappings.isEmpty();
+	}
+
 	/**
 	 * Original.
 	 * 
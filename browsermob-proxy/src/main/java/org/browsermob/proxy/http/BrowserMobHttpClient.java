@@ -14,11 +14,7 @@ import org.apache.http.client.params.ClientPNames;
 import org.apache.http.client.params.CookiePolicy;
 import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.client.utils.URLEncodedUtils;
-import org.apache.http.conn.ClientConnectionRequest;
-import org.apache.http.conn.ConnectionPoolTimeoutException;
-import org.apache.http.conn.ManagedClientConnection;
 import org.apache.http.conn.params.ConnRoutePNames;
-import org.apache.http.conn.routing.HttpRoute;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.cookie.*;
@@ -26,7 +22,6 @@ import org.apache.http.cookie.params.CookieSpecPNames;
 import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
-import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.impl.cookie.BasicClientCookie;
 import org.apache.http.impl.cookie.BrowserCompatSpec;
 import org.apache.http.params.CoreConnectionPNames;
@@ -37,8 +32,6 @@ import org.apache.http.protocol.HttpContext;
 import org.apache.http.protocol.HttpRequestExecutor;
 import org.browsermob.core.har.*;
 import org.browsermob.proxy.util.*;
-import org.eclipse.jetty.util.MultiMap;
-import org.eclipse.jetty.util.UrlEncoded;
 import org.java_bandwidthlimiter.StreamManager;
 import org.xbill.DNS.Cache;
 import org.xbill.DNS.DClass;
@@ -47,12 +40,11 @@ import java.io.*;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPInputStream;
 
 // TODO: Auto-generated Javadoc
@@ -92,8 +84,20 @@ public class BrowserMobHttpClient {
 		PARSER = parser;
 	}
 
-	/** The Constant BUFFER. */
-	private static final int BUFFER = 4096;
+	/** The buffers for bodies known to be small. */
+	private static final BufferPool SMALL_BUFFERS = new BufferPool(8 * 1024,
+			256);
+
+	/** The buffers for all other bodies. */
+	private static final BufferPool LARGE_BUFFERS = new BufferPool(
+			64 * 1024, 64);
+
+	/** The most bytes copied before the output is flushed. */
+	private static final int FLUSH_SIZE = 64 * 1024;
+
+	/** The longest time bytes are held back before the output is flushed. */
+	private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(50);
 
 	/** The har. */
 	private Har har;
@@ -111,6 +115,27 @@ public class BrowserMobHttpClient {
 	/** The capture binary content. */
 	private boolean captureBinaryContent = true;
 
+	/** Whether to add the nanosecond timings to the har. */
+	private boolean captureNanoTimings;
+
+	/** The capture policy. */
+	private volatile CapturePolicy capturePolicy = CapturePolicy.CAPTURE_ALL;
+
+	/** The response cache, null for no caching. */
+	private volatile ResponseCache responseCache;
+
+	/** Whether the bandwidth or latency of the connections is limited. */
+	private volatile boolean throttled;
+
+	/** The most content bytes captured per entry, -1 for no limit. */
+	private long maxEntryContentSize = -1;
+
+	/** The most content bytes captured per HAR, -1 for no limit. */
+	private long maxHarContentSize = -1;
+
+	/** The content bytes captured for the current HAR. */
+	private final AtomicLong harContentSize = new AtomicLong();
+
 	/** The socket factory. */
 	private SimulatedSocketFactory socketFactory;
 
@@ -118,19 +143,13 @@ public class BrowserMobHttpClient {
 	private TrustingSSLSocketFactory sslSocketFactory;
 
 	/** The http client conn mgr. */
-	private ThreadSafeClientConnManager httpClientConnMgr;
+	private BrowserMobConnectionManager httpClientConnMgr;
 
 	/** The http client. */
 	private DefaultHttpClient httpClient;
 
-	/** The blacklist entries. */
-	private List<BlacklistEntry> blacklistEntries = null;
-
-	/** The whitelist entry. */
-	private WhitelistEntry whitelistEntry = null;
-
-	/** The rewrite rules. */
-	private List<RewriteRule> rewriteRules = new CopyOnWriteArrayList<RewriteRule>();
+	/** The rewrite, whitelist and blacklist rules. */
+	private final UrlRules urlRules = new UrlRules();
 
 	/** The request interceptors. */
 	private List<RequestInterceptor> requestInterceptors = new CopyOnWriteArrayList<RequestInterceptor>();
@@ -153,10 +172,12 @@ public class BrowserMobHttpClient {
 	/** The decompress. */
 	private boolean decompress = true;
 	// not using CopyOnWriteArray because we're WRITE heavy and it is for READ
-	// heavy operations
-	// instead doing it the old fashioned way with a synchronized block
+	// heavy operations. The map is lock striped, so worker threads adding and
+	// removing their requests don't queue up on a single monitor, and
+	// iterating it for an abort never blocks them
 	/** The active requests. */
-	private final Set<ActiveRequest> activeRequests = new HashSet<ActiveRequest>();
+	private final Set<ActiveRequest> activeRequests = Collections
+			.newSetFromMap(new ConcurrentHashMap<ActiveRequest, Boolean>());
 
 	/** The creds provider. */
 	private WildcardMatchingCredentialsProvider credsProvider;
@@ -173,20 +194,16 @@ public class BrowserMobHttpClient {
 	/** The Constant MAX_REDIRECT. */
 	private static final int MAX_REDIRECT = 10;
 
-	/** The request counter. */
-	private AtomicInteger requestCounter;
+	/** The traffic monitor. */
+	private final TrafficMonitor trafficMonitor = new TrafficMonitor();
 
 	/**
 	 * Instantiates a new browser mob http client.
 	 * 
 	 * @param streamManager
 	 *            the stream manager
-	 * @param requestCounter
-	 *            the request counter
 	 */
-	public BrowserMobHttpClient(StreamManager streamManager,
-			AtomicInteger requestCounter) {
-		this.requestCounter = requestCounter;
+	public BrowserMobHttpClient(StreamManager streamManager) {
 		SchemeRegistry schemeRegistry = new SchemeRegistry();
 		hostNameResolver = new BrowserMobHostNameResolver(new Cache(DClass.ANY));
 
@@ -201,32 +218,7 @@ public class BrowserMobHttpClient {
 		schemeRegistry.register(new Scheme("http", 80, socketFactory));
 		schemeRegistry.register(new Scheme("https", 443, sslSocketFactory));
 
-		httpClientConnMgr = new ThreadSafeClientConnManager(schemeRegistry) {
-			@Override
-			public ClientConnectionRequest requestConnection(HttpRoute route,
-					Object state) {
-				final ClientConnectionRequest wrapped = super
-						.requestConnection(route, state);
-				return new ClientConnectionRequest() {
-					@Override
-					public ManagedClientConnection getConnection(long timeout,
-							TimeUnit tunit) throws InterruptedException,
-							ConnectionPoolTimeoutException {
-						Date start = new Date();
-						try {
-							return wrapped.getConnection(timeout, tunit);
-						} finally {
-							RequestInfo.get().blocked(start, new Date());
-						}
-					}
-
-					@Override
-					public void abortRequest() {
-						wrapped.abortRequest();
-					}
-				};
-			}
-		};
+		httpClientConnMgr = new BrowserMobConnectionManager(schemeRegistry);
 
 		// MOB-338: 30 total connections and 6 connections per host matches the
 		// behavior in Firefox 3
@@ -241,10 +233,10 @@ public class BrowserMobHttpClient {
 					protected HttpResponse doSendRequest(HttpRequest request,
 							HttpClientConnection conn, HttpContext context)
 							throws IOException, HttpException {
-						Date start = new Date();
+						long start = RequestInfo.now();
 						HttpResponse response = super.doSendRequest(request,
 								conn, context);
-						RequestInfo.get().send(start, new Date());
+						RequestInfo.get().send(start, RequestInfo.now());
 						return response;
 					}
 
@@ -253,10 +245,10 @@ public class BrowserMobHttpClient {
 							HttpRequest request, HttpClientConnection conn,
 							HttpContext context) throws HttpException,
 							IOException {
-						Date start = new Date();
+						long start = RequestInfo.now();
 						HttpResponse response = super.doReceiveResponse(
 								request, conn, context);
-						RequestInfo.get().wait(start, new Date());
+						RequestInfo.get().waitPhase(start, RequestInfo.now());
 						return response;
 					}
 				};
@@ -277,7 +269,6 @@ public class BrowserMobHttpClient {
 		httpClient.getParams().setParameter(ClientPNames.HANDLE_REDIRECTS,
 				false);
 
-		HttpClientInterrupter.watch(this);
 		setConnectionTimeout(60000);
 		setSocketOperationTimeout(60000);
 		setRequestTimeout(-1);
@@ -642,19 +633,26 @@ public class BrowserMobHttpClient {
 			entry.setResponse(new HarResponse(-998, "Bad URI", "HTTP/1.1"));
 			entry.setTimings(new HarTimings());
 			har.getLog().addEntry(entry);
+			completeEntry(har.getLog(), entry);
 		}
 
 		throw new BadURIException("Bad URI requested: " + url);
 	}
 
 	/**
-	 * Check timeout.
+	 * Complete entry.
+	 * 
+	 * @param harLog
+	 *            the har log the entry was added to
+	 * @param entry
+	 *            the entry
 	 */
-	public void checkTimeout() {
-		synchronized (activeRequests) {
-			for (ActiveRequest activeRequest : activeRequests) {
-				activeRequest.checkTimeout();
-			}
+	private void completeEntry(HarLog harLog, HarEntry entry) {
+		try {
+			harLog.completeEntry(entry);
+		} catch (IOException e) {
+			LOG.warn("Could not stream HAR entry for %s", e, entry
+					.getRequest().getUrl());
 		}
 	}
 
@@ -670,47 +668,37 @@ public class BrowserMobHttpClient {
 			throw new RuntimeException("No more requests allowed");
 		}
 
+		trafficMonitor.requestStarted();
 		try {
-			requestCounter.incrementAndGet();
-
 			for (RequestInterceptor interceptor : requestInterceptors) {
 				interceptor.process(req);
 			}
 
-			BrowserMobHttpResponse response = execute(req, 1);
+			BrowserMobHttpResponse response = executeFollowingRedirects(req);
 			for (ResponseInterceptor interceptor : responseInterceptors) {
 				interceptor.process(response);
 			}
 
 			return response;
 		} finally {
-			requestCounter.decrementAndGet();
+			trafficMonitor.requestFinished();
 		}
 	}
 
-	//
-	// If we were making cake, this would be the filling :)
-	//
 	/**
-	 * Execute.
+	 * Executes a request, following redirects if asked to. What stays the
+	 * same from one hop to the next, such as the extra headers, the context
+	 * and the active request, is set up once here. Each hop only applies the
+	 * url rules to its own url and gets its own har entry, whose redirect url
+	 * links it to the next.
 	 * 
 	 * @param req
 	 *            the req
-	 * @param depth
-	 *            the depth
-	 * @return the browser mob http response
+	 * @return the response to the last hop
 	 */
-	private BrowserMobHttpResponse execute(BrowserMobHttpRequest req, int depth) {
-		if (depth >= MAX_REDIRECT) {
-			throw new IllegalStateException("Max number of redirects ("
-					+ MAX_REDIRECT + ") reached");
-		}
-
-		RequestCallback callback = req.getRequestCallback();
-
+	private BrowserMobHttpResponse executeFollowingRedirects(
+			BrowserMobHttpRequest req) {
 		HttpRequestBase method = req.getMethod();
-		String verificationText = req.getVerificationText();
-		String url = method.getURI().toString();
 
 		// save the browser and version if it's not yet been set
 		if (har != null && har.getLog().getBrowser() == null) {
@@ -735,59 +723,99 @@ public class BrowserMobHttpClient {
 			}
 		}
 
-		// process any rewrite requests
-		boolean rewrote = false;
-		String newUrl = url;
-		for (RewriteRule rule : rewriteRules) {
-			Matcher matcher = rule.match.matcher(newUrl);
-			newUrl = matcher.replaceAll(rule.replace);
-			rewrote = true;
+		if (!additionalHeaders.isEmpty()) {
+			// Set the additional headers
+			for (Map.Entry<String, String> entry : additionalHeaders.entrySet()) {
+				String key = entry.getKey();
+				String value = entry.getValue();
+				method.removeHeaders(key);
+				method.addHeader(key, value);
+			}
 		}
 
-		if (rewrote) {
-			try {
-				method.setURI(new URI(newUrl));
-				url = newUrl;
-			} catch (URISyntaxException e) {
-				LOG.warn("Could not rewrite url to %s", newUrl);
-			}
+		// set the User-Agent if it's not already set
+		if (method.getHeaders("User-Agent").length == 0) {
+			method.addHeader("User-Agent", "BrowserMob VU/1.0");
 		}
 
-		// handle whitelist and blacklist entries
-		int mockResponseCode = -1;
-		if (whitelistEntry != null) {
-			boolean found = false;
-			for (Pattern pattern : whitelistEntry.patterns) {
-				if (pattern.matcher(url).matches()) {
-					found = true;
-					break;
-				}
+		BasicHttpContext ctx = new BasicHttpContext();
+
+		// for dealing with automatic authentication
+		if (authType == AuthType.NTLM) {
+			// todo: not supported yet
+			// ctx.setAttribute("preemptive-auth", new NTLMScheme(new
+			// JCIFSEngine()));
+		} else if (authType == AuthType.BASIC) {
+			ctx.setAttribute("preemptive-auth", new BasicScheme());
+		}
+
+		ActiveRequest activeRequest = new ActiveRequest(method, ctx,
+				new Date());
+
+		for (int depth = 1;; depth++) {
+			if (depth >= MAX_REDIRECT) {
+				throw new IllegalStateException("Max number of redirects ("
+						+ MAX_REDIRECT + ") reached");
 			}
 
-			if (!found) {
-				mockResponseCode = whitelistEntry.responseCode;
+			BrowserMobHttpResponse response = execute(req, ctx, activeRequest);
+
+			String location = response.getEntry().getResponse()
+					.getRedirectURL();
+			if (!followRedirects || location == null
+					|| location.length() == 0) {
+				return response;
 			}
-		}
 
-		if (blacklistEntries != null) {
-			for (BlacklistEntry blacklistEntry : blacklistEntries) {
-				if (blacklistEntry.pattern.matcher(url).matches()) {
-					mockResponseCode = blacklistEntry.responseCode;
-					break;
-				}
+			// updating location:
+			try {
+				URI redirectUri = new URI(location);
+				URI newUri = method.getURI().resolve(redirectUri);
+				method.setURI(newUri);
+			} catch (URISyntaxException e) {
+				LOG.warn("Could not parse URL", e);
+				return response;
 			}
 		}
+	}
 
-		if (!additionalHeaders.isEmpty()) {
-			// Set the additional headers
-			for (Map.Entry<String, String> entry : additionalHeaders.entrySet()) {
-				String key = entry.getKey();
-				String value = entry.getValue();
-				method.removeHeaders(key);
-				method.addHeader(key, value);
+	//
+	// If we were making cake, this would be the filling :)
+	//
+	/**
+	 * Executes one hop of a request.
+	 * 
+	 * @param req
+	 *            the req
+	 * @param ctx
+	 *            the context, shared by the hops
+	 * @param activeRequest
+	 *            the active request, shared by the hops
+	 * @return the browser mob http response
+	 */
+	private BrowserMobHttpResponse execute(BrowserMobHttpRequest req,
+			BasicHttpContext ctx, ActiveRequest activeRequest) {
+		RequestCallback callback = req.getRequestCallback();
+
+		HttpRequestBase method = req.getMethod();
+		List<String> verificationTexts = req.getVerificationTexts();
+		String url = method.getURI().toString();
+
+		// process any rewrite requests, the uri is only rebuilt if a rule
+		// actually changed the url
+		String newUrl = urlRules.rewrite(url);
+		if (!newUrl.equals(url)) {
+			try {
+				method.setURI(new URI(newUrl));
+				url = newUrl;
+			} catch (URISyntaxException e) {
+				LOG.warn("Could not rewrite url to %s", newUrl);
 			}
 		}
 
+		// handle whitelist and blacklist entries
+		int mockResponseCode = urlRules.getMockResponseCode(url);
+
 		String charSet = "UTF-8";
 		String responseBody = null;
 
@@ -795,18 +823,23 @@ public class BrowserMobHttpClient {
 		int statusCode = -998;
 		long bytes = 0;
 		boolean gzipping = false;
-		boolean contentMatched = true;
-		OutputStream os = req.getOutputStream();
-		if (os == null) {
-			os = new CappedByteArrayOutputStream(1024 * 1024); // MOB-216 don't
-																// buffer more
-																// than 1 MB
-		}
-		if (verificationText != null) {
-			contentMatched = false;
+		CaptureBuffer capture = null;
+		VerificationMatcher verification = null;
+		// a shared cache is keyed by the URI alone, so it can't serve hosts
+		// remapped to another backend, and its hits would skip the throttling.
+		// Nor can it hold what the auto authorization credentials fetched,
+		// those are added by HttpClient and never show up on the method
+		ResponseCache cache = throttled || hostNameResolver.hasRemappings()
+				|| credsProvider.hasCredentials() ? null : responseCache;
+		ResponseCache.Recorder recorder = null;
+		OutputStream body = req.getOutputStream();
+		if (body == null) {
+			// MOB-216 don't buffer more than 1 MB
+			body = new CappedByteArrayOutputStream(1024 * 1024);
 		}
-		Date start = new Date();
-
+		// os may be wrapped for the capture and the verification texts, the
+		// response body is still read from the stream underneath
+		OutputStream os = body;
 		// link the object up now, before we make the request, so that if we get
 		// cut off (ie: favicon.ico request and browser shuts down)
 		// we still have the attempt associated, even if we never got a response
@@ -820,49 +853,27 @@ public class BrowserMobHttpClient {
 				.getProtocolVersion().getProtocol()));
 		entry.setResponse(new HarResponse(-999, "NO RESPONSE", method
 				.getProtocolVersion().getProtocol()));
+		HarLog harLog = null;
 		if (this.har != null && harPageRef != null) {
-			har.getLog().addEntry(entry);
+			harLog = har.getLog();
+			harLog.addEntry(entry);
 		}
 
+		// the query is only decoded when the har is written out
 		String query = method.getURI().getRawQuery();
 		if (query != null) {
-			MultiMap<String> params = new MultiMap<String>();
-			UrlEncoded.decodeTo(query, params, "UTF-8");
-			for (String k : params.keySet()) {
-				for (Object v : params.getValues(k)) {
-					entry.getRequest().getQueryString()
-							.add(new HarNameValuePair(k, (String) v));
-				}
-			}
+			entry.getRequest().setQueryStringSource(
+					new CapturedQueryString(query));
 		}
 
 		String errorMessage = null;
 		HttpResponse response = null;
 
-		BasicHttpContext ctx = new BasicHttpContext();
-
-		ActiveRequest activeRequest = new ActiveRequest(method, ctx,
-				entry.getStartedDateTime());
-		synchronized (activeRequests) {
-			activeRequests.add(activeRequest);
-		}
-
-		// for dealing with automatic authentication
-		if (authType == AuthType.NTLM) {
-			// todo: not supported yet
-			// ctx.setAttribute("preemptive-auth", new NTLMScheme(new
-			// JCIFSEngine()));
-		} else if (authType == AuthType.BASIC) {
-			ctx.setAttribute("preemptive-auth", new BasicScheme());
-		}
+		activeRequests.add(activeRequest);
+		activeRequest.scheduleTimeout();
 
 		StatusLine statusLine = null;
 		try {
-			// set the User-Agent if it's not already set
-			if (method.getHeaders("User-Agent").length == 0) {
-				method.addHeader("User-Agent", "BrowserMob VU/1.0");
-			}
-
 			// was the request mocked out?
 			if (mockResponseCode != -1) {
 				statusCode = mockResponseCode;
@@ -885,7 +896,16 @@ public class BrowserMobHttpClient {
 					}
 				} });
 			} else {
-				response = httpClient.execute(method, ctx);
+				ResponseCache.Entry cached = cache != null ? cache.get(method)
+						: null;
+				if (cached != null) {
+					response = cached.hit(method, entry.getCache());
+				} else {
+					response = httpClient.execute(method, ctx);
+					if (cache != null) {
+						recorder = cache.record(method, response);
+					}
+				}
 				statusLine = response.getStatusLine();
 				statusCode = statusLine.getStatusCode();
 
@@ -902,6 +922,11 @@ public class BrowserMobHttpClient {
 				// which is what Google does with
 				// http://clients1.google.com/generate_204)
 				if (is != null) {
+					// the cache keeps the body as it came off the wire
+					if (recorder != null) {
+						is = recorder.record(is);
+					}
+
 					Header contentEncodingHeader = response
 							.getFirstHeader("Content-Encoding");
 					if (contentEncodingHeader != null
@@ -910,18 +935,48 @@ public class BrowserMobHttpClient {
 						gzipping = true;
 					}
 
+					// whether the next read may block is down to what has
+					// come off the wire, the inflater can't tell
+					InputStream wire = is;
+					long contentLength = response.getEntity()
+							.getContentLength();
+
 					// deal with GZIP content!
 					if (decompress && gzipping) {
 						is = new GZIPInputStream(is);
+						// the length is that of the compressed body
+						contentLength = -1;
 					}
 
-					if (captureContent) {
-						// todo - something here?
-						os = new ClonedOutputStream(os);
+					if (captureContent
+							&& capturePolicy.accepts(url,
+									contentTypeOf(response), response
+											.getEntity().getContentLength())) {
+						long limit = contentCaptureLimit();
+						if (limit != 0) {
+							capture = new CaptureBuffer(limit);
+							os = new ClonedOutputStream(os, capture);
+						}
+					}
 
+					// verification texts are looked for as the body goes by,
+					// rather than in a copy of it afterwards
+					if (!verificationTexts.isEmpty()) {
+						verification = new VerificationMatcher(
+								verificationTexts, charsetOf(response
+										.getFirstHeader("Content-Type")));
+						os = new ClonedOutputStream(os, verification);
 					}
 
-					bytes = copyWithStats(is, os);
+					bytes = copyWithStats(is, os, contentLength, wire);
+
+					if (recorder != null) {
+						recorder.store(entry.getCache());
+					}
+
+					if (capture != null) {
+						harContentSize.addAndGet(capture.size());
+					}
 				}
 			}
 		} catch (Exception e) {
@@ -939,8 +994,11 @@ public class BrowserMobHttpClient {
 			}
 		} finally {
 			// the request is done, get it out of here
-			synchronized (activeRequests) {
-				activeRequests.remove(activeRequest);
+			activeRequest.cancelTimeout();
+			activeRequests.remove(activeRequest);
+
+			if (recorder != null) {
+				recorder.release();
 			}
 
 			if (is != null) {
@@ -957,7 +1015,11 @@ public class BrowserMobHttpClient {
 
 		// set the start time and other timings
 		entry.setStartedDateTime(RequestInfo.get().getStart());
-		entry.setTimings(RequestInfo.get().getTimings());
+		HarTimings timings = RequestInfo.get().getTimings();
+		if (captureNanoTimings) {
+			timings.setNanos(RequestInfo.get().getNanoTimings());
+		}
+		entry.setTimings(timings);
 		entry.setServerIPAddress(RequestInfo.get().getResolvedAddress());
 		entry.setTime(RequestInfo.get().getTotalTime());
 
@@ -970,28 +1032,15 @@ public class BrowserMobHttpClient {
 			entry.getResponse().setStatusText(statusLine.getReasonPhrase());
 		}
 
-		boolean urlEncoded = false;
 		if (captureHeaders || captureContent) {
-			for (Header header : method.getAllHeaders()) {
-				if (header.getValue() != null
-						&& header.getValue().startsWith(
-								URLEncodedUtils.CONTENT_TYPE)) {
-					urlEncoded = true;
-				}
-
-				entry.getRequest()
-						.getHeaders()
-						.add(new HarNameValuePair(header.getName(), header
-								.getValue()));
-			}
+			// added in one go, the header lists copy themselves on every
+			// change
+			entry.getRequest().getHeaders()
+					.addAll(HeaderCapture.toHar(method.getAllHeaders()));
 
 			if (response != null) {
-				for (Header header : response.getAllHeaders()) {
-					entry.getResponse()
-							.getHeaders()
-							.add(new HarNameValuePair(header.getName(), header
-									.getValue()));
-				}
+				entry.getResponse().getHeaders()
+						.addAll(HeaderCapture.toHar(response.getAllHeaders()));
 			}
 		}
 
@@ -1002,9 +1051,16 @@ public class BrowserMobHttpClient {
 				HttpEntityEnclosingRequestBase enclosingReq = (HttpEntityEnclosingRequestBase) method;
 				HttpEntity entity = enclosingReq.getEntity();
 
+				Header requestContentType = method
+						.getFirstHeader("Content-Type");
+				boolean urlEncoded = requestContentType != null
+						&& requestContentType.getValue() != null
+						&& requestContentType.getValue().startsWith(
+								URLEncodedUtils.CONTENT_TYPE);
+
 				HarPostData data = new HarPostData();
-				data.setMimeType(req.getMethod().getFirstHeader("Content-Type")
-						.getValue());
+				data.setMimeType(requestContentType != null ? requestContentType
+						.getValue() : null);
 				entry.getRequest().setPostData(data);
 
 				if (urlEncoded || URLEncodedUtils.isEncoded(entity)) {
@@ -1055,64 +1111,46 @@ public class BrowserMobHttpClient {
 					contentType = contentTypeHdr.getValue();
 					entry.getResponse().getContent().setMimeType(contentType);
 
-					if (captureContent && os != null
-							&& os instanceof ClonedOutputStream) {
-						ByteArrayOutputStream copy = ((ClonedOutputStream) os)
-								.getOutput();
-
-						if (gzipping) {
-							// ok, we need to decompress it before we can put it
-							// in the har file
-							try {
-								InputStream temp = new GZIPInputStream(
-										new ByteArrayInputStream(
-												copy.toByteArray()));
-								copy = new ByteArrayOutputStream();
-								IOUtils.copy(temp, copy);
-							} catch (IOException e) {
-								throw new RuntimeException(e);
-							}
-						}
+					String charset = charsetOf(contentTypeHdr);
+					if (charset != null) {
+						charSet = charset;
+					}
+
+					if (capture != null && !capture.isTruncated()) {
+						// the capture holds what came off the wire, which is
+						// still gzipped unless we decompressed it on the way
+						boolean gzipped = gzipping && !decompress;
 
-						if (contentType != null
-								&& (contentType.startsWith("text/") || contentType
-										.startsWith("application/x-javascript"))
-								|| contentType
-										.startsWith("application/javascript")
-								|| contentType.startsWith("application/json")
-								|| contentType.startsWith("application/xml")
-								|| contentType
-										.startsWith("application/xhtml+xml")) {
-							entry.getResponse().getContent()
-									.setText(new String(copy.toByteArray()));
+						// the text is only decoded or Base64 encoded when the
+						// HAR is written out
+						if (CapturePolicy.isText(contentType)) {
+							entry.getResponse()
+									.getContent()
+									.setTextSource(
+											new CapturedContent(capture
+													.toByteArray(), gzipped,
+													charSet));
 						} else if (captureBinaryContent) {
 							entry.getResponse()
 									.getContent()
-									.setText(
-											Base64.byteArrayToBase64(copy
-													.toByteArray()));
+									.setTextSource(
+											new CapturedContent(capture
+													.toByteArray(), gzipped,
+													null));
 						}
 					}
-
-					NameValuePair nvp = contentTypeHdr.getElements()[0]
-							.getParameterByName("charset");
-
-					if (nvp != null) {
-						charSet = nvp.getValue();
-					}
 				}
 
-				if (os instanceof ByteArrayOutputStream) {
-					responseBody = ((ByteArrayOutputStream) os)
+				if (body instanceof ByteArrayOutputStream) {
+					responseBody = ((ByteArrayOutputStream) body)
 							.toString(charSet);
-
-					if (verificationText != null) {
-						contentMatched = responseBody
-								.contains(verificationText);
-					}
 				}
 			} catch (UnsupportedEncodingException e) {
 				throw new RuntimeException(e);
+			} finally {
+				if (capture != null) {
+					capture.release();
+				}
 			}
 		}
 
@@ -1120,24 +1158,31 @@ public class BrowserMobHttpClient {
 			entry.getResponse().getContent().setMimeType(contentType);
 		}
 
-		// checking to see if the client is being redirected
-		boolean isRedirect = false;
+		// checking to see if the client is being redirected, the chain is
+		// recorded in the har through the redirect url of each entry
+		boolean isRedirect = response != null && statusCode >= 300
+				&& statusCode < 400 && statusCode != 304;
 
 		String location = null;
-		if (response != null && statusCode >= 300 && statusCode < 400
-				&& statusCode != 304) {
-			isRedirect = true;
-
+		if (isRedirect) {
 			// pulling the header for the redirect
 			Header locationHeader = response.getLastHeader("location");
 			if (locationHeader != null) {
 				location = locationHeader.getValue();
-			} else if (this.followRedirects) {
-				throw new RuntimeException(
-						"Invalid redirect - missing location header");
+				entry.getResponse().setRedirectURL(location);
 			}
 		}
 
+		// the entry is fully populated now, let a streaming HAR write it out
+		if (harLog != null) {
+			completeEntry(harLog, entry);
+		}
+
+		if (isRedirect && location == null && this.followRedirects) {
+			throw new RuntimeException(
+					"Invalid redirect - missing location header");
+		}
+
 		//
 		// Response validation - they only work if we're not following redirects
 		//
@@ -1178,18 +1223,13 @@ public class BrowserMobHttpClient {
 
 		// end of validation logic
 
-		// basic tail recursion for redirect handling
-		if (isRedirect && this.followRedirects) {
-			// updating location:
-			try {
-				URI redirectUri = new URI(location);
-				URI newUri = method.getURI().resolve(redirectUri);
-				method.setURI(newUri);
+		boolean contentMatched = verificationTexts.isEmpty()
+				|| verification != null && verification.isMatched();
 
-				return execute(req, ++depth);
-			} catch (URISyntaxException e) {
-				LOG.warn("Could not parse URL", e);
-			}
+		String verificationText = null;
+		for (String text : verificationTexts) {
+			verificationText = verificationText == null ? text
+					: verificationText + "', '" + text;
 		}
 
 		return new BrowserMobHttpResponse(entry, method, response,
@@ -1203,10 +1243,9 @@ public class BrowserMobHttpClient {
 	public void shutdown() {
 		shutdown = true;
 		abortActiveRequests();
-		rewriteRules.clear();
+		urlRules.clearRewriteRules();
 		credsProvider.clear();
 		httpClientConnMgr.shutdown();
-		HttpClientInterrupter.release(this);
 	}
 
 	/**
@@ -1215,11 +1254,10 @@ public class BrowserMobHttpClient {
 	public void abortActiveRequests() {
 		allowNewRequests.set(true);
 
-		synchronized (activeRequests) {
-			for (ActiveRequest activeRequest : activeRequests) {
-				activeRequest.abort();
-			}
-			activeRequests.clear();
+		for (Iterator<ActiveRequest> i = activeRequests.iterator(); i.hasNext();) {
+			ActiveRequest activeRequest = i.next();
+			i.remove();
+			activeRequest.abort();
 		}
 	}
 
@@ -1231,6 +1269,7 @@ public class BrowserMobHttpClient {
 	 */
 	public void setHar(Har har) {
 		this.har = har;
+		harContentSize.set(0);
 	}
 
 	/**
@@ -1340,7 +1379,7 @@ public class BrowserMobHttpClient {
 	 *            the replace
 	 */
 	public void rewriteUrl(String match, String replace) {
-		rewriteRules.add(new RewriteRule(match, replace));
+		urlRules.addRewriteRule(match, replace);
 	}
 
 	// this method is provided for backwards compatibility before we renamed it
@@ -1367,11 +1406,7 @@ public class BrowserMobHttpClient {
 	 *            the response code
 	 */
 	public void blacklistRequests(String pattern, int responseCode) {
-		if (blacklistEntries == null) {
-			blacklistEntries = new CopyOnWriteArrayList<BlacklistEntry>();
-		}
-
-		blacklistEntries.add(new BlacklistEntry(pattern, responseCode));
+		urlRules.addBlacklistEntry(pattern, responseCode);
 	}
 
 	/**
@@ -1383,7 +1418,7 @@ public class BrowserMobHttpClient {
 	 *            the response code
 	 */
 	public void whitelistRequests(String[] patterns, int responseCode) {
-		whitelistEntry = new WhitelistEntry(patterns, responseCode);
+		urlRules.setWhitelist(patterns, responseCode);
 	}
 
 	/**
@@ -1452,6 +1487,15 @@ public class BrowserMobHttpClient {
 		return har;
 	}
 
+	/**
+	 * Gets the traffic monitor.
+	 * 
+	 * @return the traffic monitor
+	 */
+	public TrafficMonitor getTrafficMonitor() {
+		return trafficMonitor;
+	}
+
 	/**
 	 * Sets the capture headers.
 	 * 
@@ -1482,6 +1526,192 @@ public class BrowserMobHttpClient {
 		this.captureBinaryContent = captureBinaryContent;
 	}
 
+	/**
+	 * Sets whether the timings of each entry also carry their nanosecond
+	 * values, in the "_nanos" extension field.
+	 * 
+	 * @param captureNanoTimings
+	 *            the new capture nano timings
+	 */
+	public void setCaptureNanoTimings(boolean captureNanoTimings) {
+		this.captureNanoTimings = captureNanoTimings;
+	}
+
+	/**
+	 * Sets the most content bytes captured for a single entry. Larger
+	 * responses are still relayed to the browser but their content is left
+	 * out of the HAR.
+	 * 
+	 * @param maxEntryContentSize
+	 *            the max entry content size, -1 for no limit
+	 */
+	public void setMaxEntryContentSize(long maxEntryContentSize) {
+		this.maxEntryContentSize = maxEntryContentSize;
+	}
+
+	/**
+	 * Sets the most content bytes captured for the whole HAR. Once the budget
+	 * is spent no more content is captured until a new HAR is started.
+	 * 
+	 * @param maxHarContentSize
+	 *            the max har content size, -1 for no limit
+	 */
+	public void setMaxHarContentSize(long maxHarContentSize) {
+		this.maxHarContentSize = maxHarContentSize;
+	}
+
+	/**
+	 * Gets the number of content bytes captured for the current HAR.
+	 * 
+	 * @return the har content size
+	 */
+	public long getHarContentSize() {
+		return harContentSize.get();
+	}
+
+	/**
+	 * Sets the limits of the upstream connection pool.
+	 * 
+	 * @param maxTotal
+	 *            the most connections in all
+	 * @param maxPerRoute
+	 *            the most connections to one host
+	 */
+	public void setConnectionLimits(int maxTotal, int maxPerRoute) {
+		httpClientConnMgr.setMaxTotal(maxTotal);
+		httpClientConnMgr.setDefaultMaxPerRoute(maxPerRoute);
+	}
+
+	/**
+	 * Lets the upstream connection pool grow when requests wait too long for
+	 * a connection.
+	 * 
+	 * @param thresholdMs
+	 *            the wait that makes the pool grow, -1 to keep its size fixed
+	 * @param maxTotal
+	 *            the size the pool may grow to
+	 */
+	public void setAdaptiveConnectionPool(long thresholdMs, int maxTotal) {
+		httpClientConnMgr.setAdaptive(thresholdMs, maxTotal);
+	}
+
+	/**
+	 * Gets the state of the upstream connection pool.
+	 * 
+	 * @return the connection pool stats
+	 */
+	public ConnectionPoolStats getConnectionPoolStats() {
+		return httpClientConnMgr.getPoolStats();
+	}
+
+	/**
+	 * Gets the capture policy.
+	 * 
+	 * @return the capture policy
+	 */
+	public CapturePolicy getCapturePolicy() {
+		return capturePolicy;
+	}
+
+	/**
+	 * Sets the policy deciding which responses have their content captured
+	 * when content capture is on.
+	 * 
+	 * @param capturePolicy
+	 *            the new capture policy, null to capture everything
+	 */
+	public void setCapturePolicy(CapturePolicy capturePolicy) {
+		this.capturePolicy = capturePolicy != null ? capturePolicy
+				: CapturePolicy.CAPTURE_ALL;
+	}
+
+	/**
+	 * Gets the response cache.
+	 * 
+	 * @return the response cache, null if responses aren't cached
+	 */
+	public ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
+	/**
+	 * Sets the cache fresh upstream responses are served from. Hits are still
+	 * recorded in the HAR, with the state of the cache entry in their cache
+	 * field. The cache is bypassed while any host is remapped or the
+	 * connections are throttled.
+	 * 
+	 * @param responseCache
+	 *            the response cache, which may be shared with other clients,
+	 *            null to stop caching
+	 */
+	public void setResponseCache(ResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	/**
+	 * Sets whether the bandwidth or latency of the connections is limited.
+	 * While it is, responses are neither served from nor stored in the
+	 * response cache.
+	 * 
+	 * @param throttled
+	 *            true, if throttled
+	 */
+	public void setThrottled(boolean throttled) {
+		this.throttled = throttled;
+	}
+
+	/**
+	 * Gets the Content-Type of a response.
+	 * 
+	 * @param response
+	 *            the response
+	 * @return the content type, null if there is none
+	 */
+	private static String contentTypeOf(HttpResponse response) {
+		Header header = response.getFirstHeader("Content-Type");
+		return header != null ? header.getValue() : null;
+	}
+
+	/**
+	 * Gets the charset parameter of a Content-Type header.
+	 * 
+	 * @param contentType
+	 *            the Content-Type header, may be null
+	 * @return the charset, null if there is none
+	 */
+	private static String charsetOf(Header contentType) {
+		if (contentType == null) {
+			return null;
+		}
+
+		HeaderElement[] elements = contentType.getElements();
+		if (elements.length == 0) {
+			return null;
+		}
+
+		NameValuePair nvp = elements[0].getParameterByName("charset");
+		return nvp != null ? nvp.getValue() : null;
+	}
+
+	/**
+	 * Works out how many content bytes the next entry may capture.
+	 * 
+	 * @return the limit, -1 for no limit or 0 if the budget is spent
+	 */
+	private long contentCaptureLimit() {
+		long limit = maxEntryContentSize;
+		long maxSize = capturePolicy.getMaxSize();
+		if (maxSize != -1) {
+			limit = limit == -1 ? maxSize : Math.min(limit, maxSize);
+		}
+		if (maxHarContentSize != -1) {
+			long left = Math.max(0, maxHarContentSize - harContentSize.get());
+			limit = limit == -1 ? left : Math.min(limit, left);
+		}
+
+		return limit;
+	}
+
 	/**
 	 * Sets the http proxy.
 	 * 
@@ -1549,6 +1779,9 @@ public class BrowserMobHttpClient {
 		/** The start. */
 		Date start;
 
+		/** The timeout, null if requests may take as long as they need. */
+		TimingWheel.Timeout timeout;
+
 		/**
 		 * Instantiates a new active request.
 		 * 
@@ -1566,20 +1799,33 @@ public class BrowserMobHttpClient {
 		}
 
 		/**
-		 * Check timeout.
+		 * Schedules the request to be aborted if it has not completed within
+		 * the request timeout.
 		 */
-		void checkTimeout() {
-			if (requestTimeout != -1) {
-				if (request != null
-						&& start != null
-						&& new Date(System.currentTimeMillis() - requestTimeout)
-								.after(start)) {
+		void scheduleTimeout() {
+			final int timeoutMs = requestTimeout;
+			if (timeoutMs == -1) {
+				return;
+			}
+
+			timeout = HttpClientInterrupter.schedule(new Runnable() {
+				@Override
+				public void run() {
 					LOG.info(
 							"Aborting request to %s after it failed to complete in %d ms",
-							request.getURI().toString(), requestTimeout);
+							request.getURI().toString(), timeoutMs);
 
 					abort();
 				}
+			}, timeoutMs);
+		}
+
+		/**
+		 * Cancels the timeout once the request has completed.
+		 */
+		void cancelTimeout() {
+			if (timeout != null) {
+				timeout.cancel();
 			}
 		}
 
@@ -1604,83 +1850,6 @@ public class BrowserMobHttpClient {
 		}
 	}
 
-	/**
-	 * The Class WhitelistEntry.
-	 */
-	private class WhitelistEntry {
-
-		/** The patterns. */
-		private List<Pattern> patterns = new CopyOnWriteArrayList<Pattern>();
-
-		/** The response code. */
-		private int responseCode;
-
-		/**
-		 * Instantiates a new whitelist entry.
-		 * 
-		 * @param patterns
-		 *            the patterns
-		 * @param responseCode
-		 *            the response code
-		 */
-		private WhitelistEntry(String[] patterns, int responseCode) {
-			for (String pattern : patterns) {
-				this.patterns.add(Pattern.compile(pattern));
-			}
-			this.responseCode = responseCode;
-		}
-	}
-
-	/**
-	 * The Class BlacklistEntry.
-	 */
-	private class BlacklistEntry {
-
-		/** The pattern. */
-		private Pattern pattern;
-
-		/** The response code. */
-		private int responseCode;
-
-		/**
-		 * Instantiates a new blacklist entry.
-		 * 
-		 * @param pattern
-		 *            the pattern
-		 * @param responseCode
-		 *            the response code
-		 */
-		private BlacklistEntry(String pattern, int responseCode) {
-			this.pattern = Pattern.compile(pattern);
-			this.responseCode = responseCode;
-		}
-	}
-
-	/**
-	 * The Class RewriteRule.
-	 */
-	private class RewriteRule {
-
-		/** The match. */
-		private Pattern match;
-
-		/** The replace. */
-		private String replace;
-
-		/**
-		 * Instantiates a new rewrite rule.
-		 * 
-		 * @param match
-		 *            the match
-		 * @param replace
-		 *            the replace
-		 */
-		private RewriteRule(String match, String replace) {
-			this.match = Pattern.compile(match);
-			this.replace = replace;
-		}
-	}
-
 	/**
 	 * The Enum AuthType.
 	 */
@@ -1724,30 +1893,82 @@ public class BrowserMobHttpClient {
 	 */
 	public static long copyWithStats(InputStream is, OutputStream os)
 			throws IOException {
-		long bytesCopied = 0;
-		byte[] buffer = new byte[BUFFER];
-		int length;
+		return copyWithStats(is, os, -1);
+	}
 
-		try {
-			// read the first byte
-			int firstByte = is.read();
+	/**
+	 * Copies a body with a pooled buffer sized to it, then closes both
+	 * streams. The output is flushed when the next read may block, so that a
+	 * slow or streaming response reaches the browser as it comes, or once
+	 * enough bytes or time have gone by. A body read in one go is only flushed
+	 * by the close.
+	 * 
+	 * @param is
+	 *            the is
+	 * @param os
+	 *            the os
+	 * @param contentLength
+	 *            the expected length of the body, -1 if unknown
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static long copyWithStats(InputStream is, OutputStream os,
+			long contentLength) throws IOException {
+		return copyWithStats(is, os, contentLength, is);
+	}
 
-			if (firstByte == -1) {
-				return 0;
-			}
+	/**
+	 * Copies a body read through a decoding stream, such as a
+	 * {@link GZIPInputStream}, whose {@link InputStream#available()} says
+	 * nothing about whether the next read may block. That is asked of the
+	 * stream underneath instead.
+	 * 
+	 * @param is
+	 *            the is
+	 * @param os
+	 *            the os
+	 * @param contentLength
+	 *            the expected length of what is reads, -1 if unknown
+	 * @param wire
+	 *            the stream is reads from, in the end
+	 * @return the number of bytes copied
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static long copyWithStats(InputStream is, OutputStream os,
+			long contentLength, InputStream wire) throws IOException {
+		BufferPool pool = contentLength >= 0
+				&& contentLength <= SMALL_BUFFERS.getBufferSize() ? SMALL_BUFFERS
+				: LARGE_BUFFERS;
+		byte[] buffer = pool.take();
+		long bytesCopied = 0;
 
-			os.write(firstByte);
-			bytesCopied++;
+		try {
+			int unflushed = 0;
+			long lastFlush = System.nanoTime();
+			int length;
+			while ((length = is.read(buffer, 0, buffer.length)) != -1) {
+				os.write(buffer, 0, length);
+				bytesCopied += length;
+				unflushed += length;
+
+				if (contentLength >= 0 && bytesCopied >= contentLength) {
+					// that's all of it, the close flushes
+					continue;
+				}
 
-			do {
-				length = is.read(buffer, 0, BUFFER);
-				if (length != -1) {
-					bytesCopied += length;
-					os.write(buffer, 0, length);
+				long now = System.nanoTime();
+				if (unflushed >= FLUSH_SIZE || wire.available() == 0
+						|| now - lastFlush >= FLUSH_INTERVAL_NANOS) {
 					os.flush();
+					unflushed = 0;
+					lastFlush = now;
 				}
-			} while (length != -1);
+			}
 		} finally {
+			pool.give(buffer);
+
 			try {
 				is.close();
 			} catch (IOException e) {
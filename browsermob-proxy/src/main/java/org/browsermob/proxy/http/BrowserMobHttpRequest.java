@@ -45,8 +45,8 @@ public class BrowserMobHttpRequest {
 	/** The expected status code. */
 	private int expectedStatusCode;
 
-	/** The verification text. */
-	private String verificationText;
+	/** The verification texts. */
+	private List<String> verificationTexts = new ArrayList<String>();
 
 	/** The nvps. */
 	private List<NameValuePair> nvps = new ArrayList<NameValuePair>();
@@ -217,20 +217,43 @@ public class BrowserMobHttpRequest {
 	/**
 	 * Gets the verification text.
 	 * 
-	 * @return the verification text
+	 * @return the first verification text, null if there is none
 	 */
 	public String getVerificationText() {
-		return verificationText;
+		return verificationTexts.isEmpty() ? null : verificationTexts.get(0);
 	}
 
 	/**
-	 * Sets the verification text.
+	 * Sets the verification text, replacing any others.
 	 * 
 	 * @param verificationText
-	 *            the new verification text
+	 *            the new verification text, null for none
 	 */
 	public void setVerificationText(String verificationText) {
-		this.verificationText = verificationText;
+		verificationTexts.clear();
+		if (verificationText != null) {
+			verificationTexts.add(verificationText);
+		}
+	}
+
+	/**
+	 * Adds a verification text. The content only matches if the response body
+	 * contains all of them.
+	 * 
+	 * @param verificationText
+	 *            the verification text
+	 */
+	public void addVerificationText(String verificationText) {
+		verificationTexts.add(verificationText);
+	}
+
+	/**
+	 * Gets the verification texts.
+	 * 
+	 * @return the verification texts
+	 */
+	public List<String> getVerificationTexts() {
+		return verificationTexts;
 	}
 
 	/**
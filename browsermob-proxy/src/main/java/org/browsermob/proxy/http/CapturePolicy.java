@@ -0,0 +1,192 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which responses have their content captured in the HAR. The policy
+ * is checked once the response headers are in, before the body is copied, so
+ * responses it rejects are relayed without any capture overhead. A policy is
+ * immutable and can be shared between threads.
+ */
+public class CapturePolicy {
+
+	/** The policy that captures everything. */
+	public static final CapturePolicy CAPTURE_ALL = new CapturePolicy(null,
+			null, -1, 1.0);
+
+	/** The random used for sampling. */
+	private static final Random RANDOM = new Random();
+
+	/** The url pattern, null to match any url. */
+	private final Pattern urlPattern;
+
+	/** The mime types, empty to match any type. */
+	private final Set<String> mimeTypes;
+
+	/** The max size, -1 for no limit. */
+	private final long maxSize;
+
+	/** The sample rate. */
+	private final double sampleRate;
+
+	/**
+	 * Instantiates a new capture policy.
+	 * 
+	 * @param urlPattern
+	 *            a regex that must be found in the url, null for any url
+	 * @param mimeTypes
+	 *            the mime types to capture, such as "application/json" or
+	 *            "text/*", null or empty for any type
+	 * @param maxSize
+	 *            the largest body to capture in bytes, -1 for no limit
+	 * @param sampleRate
+	 *            the fraction of matching responses to capture, between 0 and
+	 *            1
+	 */
+	public CapturePolicy(String urlPattern, Collection<String> mimeTypes,
+			long maxSize, double sampleRate) {
+		if (sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException(
+					"Sample rate must be between 0 and 1: " + sampleRate);
+		}
+
+		this.urlPattern = urlPattern != null ? Pattern.compile(urlPattern)
+				: null;
+
+		Set<String> types = new HashSet<String>();
+		if (mimeTypes != null) {
+			for (String mimeType : mimeTypes) {
+				String type = mimeType.trim().toLowerCase(Locale.ENGLISH);
+				if (type.length() > 0) {
+					types.add(type);
+				}
+			}
+		}
+		this.mimeTypes = Collections.unmodifiableSet(types);
+
+		this.maxSize = maxSize;
+		this.sampleRate = sampleRate;
+	}
+
+	/**
+	 * Checks whether the content of a response should be captured.
+	 * 
+	 * @param url
+	 *            the url
+	 * @param contentType
+	 *            the Content-Type header, may be null
+	 * @param contentLength
+	 *            the Content-Length, -1 if unknown
+	 * @return true, if the content should be captured
+	 */
+	public boolean accepts(String url, String contentType, long contentLength) {
+		if (maxSize != -1 && contentLength > maxSize) {
+			return false;
+		}
+
+		if (!mimeTypes.isEmpty()) {
+			String mimeType = mimeType(contentType);
+			if (mimeType == null
+					|| !mimeTypes.contains(mimeType)
+					&& !mimeTypes.contains(mimeType.substring(0,
+							mimeType.indexOf('/') + 1) + "*")) {
+				return false;
+			}
+		}
+
+		if (urlPattern != null && !urlPattern.matcher(url).find()) {
+			return false;
+		}
+
+		return sampleRate >= 1 || RANDOM.nextDouble() < sampleRate;
+	}
+
+	/**
+	 * Gets the max size.
+	 * 
+	 * @return the max size, -1 for no limit
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Gets the url pattern.
+	 * 
+	 * @return the url pattern, null if any url matches
+	 */
+	public String getUrlPattern() {
+		return urlPattern != null ? urlPattern.pattern() : null;
+	}
+
+	/**
+	 * Gets the mime types.
+	 * 
+	 * @return the mime types, empty if any type matches
+	 */
+	public Set<String> getMimeTypes() {
+		return mimeTypes;
+	}
+
+	/**
+	 * Gets the sample rate.
+	 * 
+	 * @return the sample rate
+	 */
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * Checks whether content of a type is text, which is captured as is,
+	 * rather than binary, which is Base64 encoded.
+	 * 
+	 * @param contentType
+	 *            the Content-Type header, may be null
+	 * @return true, if the content is text
+	 */
+	public static boolean isText(String contentType) {
+		String mimeType = mimeType(contentType);
+		if (mimeType == null) {
+			return false;
+		}
+
+		return mimeType.startsWith("text/")
+				|| mimeType.startsWith("application/x-javascript")
+				|| mimeType.startsWith("application/javascript")
+				|| mimeType.startsWith("application/json")
+				|| mimeType.startsWith("application/xml")
+				|| mimeType.startsWith("application/xhtml+xml");
+	}
+
+	/**
+	 * Strips the parameters from a Content-Type header.
+	 * 
+	 * @param contentType
+	 *            the content type
+	 * @return the lower case mime type, null if there is none
+	 */
+	private static String mimeType(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+
+		int semicolon = contentType.indexOf(';');
+		String mimeType = (semicolon != -1 ? contentType.substring(0,
+				semicolon) : contentType).trim().toLowerCase(Locale.ENGLISH);
+		if (mimeType.indexOf('/') == -1) {
+			return null;
+		}
+
+		return mimeType;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+/**
+ * A snapshot of the upstream connection pool of a proxy.
+ */
+public class ConnectionPoolStats {
+
+	/** The leased. */
+	private final int leased;
+
+	/** The available. */
+	private final int available;
+
+	/** The pending. */
+	private final int pending;
+
+	/** The max total. */
+	private final int maxTotal;
+
+	/** The max per route. */
+	private final int maxPerRoute;
+
+	/** The requests. */
+	private final long requests;
+
+	/** The average wait ms. */
+	private final double averageWaitMs;
+
+	/** The growths. */
+	private final long growths;
+
+	/** The adaptive. */
+	private final boolean adaptive;
+
+	/**
+	 * Instantiates new connection pool stats.
+	 * 
+	 * @param leased
+	 *            the connections in use
+	 * @param available
+	 *            the idle connections kept open
+	 * @param pending
+	 *            the requests waiting for a connection
+	 * @param maxTotal
+	 *            the limit on all connections
+	 * @param maxPerRoute
+	 *            the default limit on connections to one host
+	 * @param requests
+	 *            the connections requested so far
+	 * @param averageWaitMs
+	 *            the average wait for a connection
+	 * @param growths
+	 *            the number of times the pool grew
+	 * @param adaptive
+	 *            whether the pool grows when requests wait too long
+	 */
+	public ConnectionPoolStats(int leased, int available, int pending,
+			int maxTotal, int maxPerRoute, long requests, double averageWaitMs,
+			long growths, boolean adaptive) {
+		this.leased = leased;
+		this.available = available;
+		this.pending = pending;
+		this.maxTotal = maxTotal;
+		this.maxPerRoute = maxPerRoute;
+		this.requests = requests;
+		this.averageWaitMs = averageWaitMs;
+		this.growths = growths;
+		this.adaptive = adaptive;
+	}
+
+	/**
+	 * Gets the leased.
+	 * 
+	 * @return the connections in use
+	 */
+	public int getLeased() {
+		return leased;
+	}
+
+	/**
+	 * Gets the available.
+	 * 
+	 * @return the idle connections kept open
+	 */
+	public int getAvailable() {
+		return available;
+	}
+
+	/**
+	 * Gets the pending.
+	 * 
+	 * @return the requests waiting for a connection
+	 */
+	public int getPending() {
+		return pending;
+	}
+
+	/**
+	 * Gets the max total.
+	 * 
+	 * @return the limit on all connections
+	 */
+	public int getMaxTotal() {
+		return maxTotal;
+	}
+
+	/**
+	 * Gets the max per route.
+	 * 
+	 * @return the default limit on connections to one host
+	 */
+	public int getMaxPerRoute() {
+		return maxPerRoute;
+	}
+
+	/**
+	 * Gets the requests.
+	 * 
+	 * @return the connections requested so far
+	 */
+	public long getRequests() {
+		return requests;
+	}
+
+	/**
+	 * Gets the average wait ms.
+	 * 
+	 * @return the average wait for a connection
+	 */
+	public double getAverageWaitMs() {
+		return averageWaitMs;
+	}
+
+	/**
+	 * Gets the growths.
+	 * 
+	 * @return the number of times the pool grew
+	 */
+	public long getGrowths() {
+		return growths;
+	}
+
+	/**
+	 * Checks if is adaptive.
+	 * 
+	 * @return true, if the pool grows when requests wait too long
+	 */
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import org.apache.http.Header;
+import org.browsermob.core.har.HarNameValuePair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns HttpClient headers into HAR name value pairs. The names of common
+ * headers are replaced with one shared instance, so a HAR holding thousands of
+ * entries does not hold thousands of copies of "Content-Type", and each value
+ * is read from its header only once.
+ */
+public final class HeaderCapture {
+
+	/** The common header names. */
+	private static final String[] COMMON_NAMES = { "Accept",
+			"Accept-Charset", "Accept-Encoding", "Accept-Language",
+			"Accept-Ranges", "Access-Control-Allow-Origin", "Age", "Allow",
+			"Authorization", "Cache-Control", "Connection",
+			"Content-Disposition", "Content-Encoding", "Content-Language",
+			"Content-Length", "Content-Location", "Content-Range",
+			"Content-Type", "Cookie", "Date", "DNT", "ETag", "Expect",
+			"Expires", "Host", "If-Match", "If-Modified-Since",
+			"If-None-Match", "If-Range", "If-Unmodified-Since", "Keep-Alive",
+			"Last-Modified", "Link", "Location", "Origin", "P3P", "Pragma",
+			"Proxy-Authorization", "Proxy-Connection", "Range", "Referer",
+			"Server", "Set-Cookie", "Strict-Transport-Security", "TE",
+			"Transfer-Encoding", "Upgrade", "User-Agent", "Vary", "Via",
+			"WWW-Authenticate", "X-Cache", "X-Content-Type-Options",
+			"X-Forwarded-For", "X-Frame-Options", "X-Powered-By",
+			"X-Requested-With", "X-XSS-Protection" };
+
+	/** The shared instance of each common name, as sent and in lower case. */
+	private static final Map<String, String> NAMES = new HashMap<String, String>();
+
+	static {
+		for (String name : COMMON_NAMES) {
+			NAMES.put(name, name);
+			String lower = name.toLowerCase(Locale.ENGLISH);
+			NAMES.put(lower, lower);
+		}
+	}
+
+	/**
+	 * Not instantiated.
+	 */
+	private HeaderCapture() {
+	}
+
+	/**
+	 * Converts headers to HAR name value pairs.
+	 * 
+	 * @param headers
+	 *            the headers
+	 * @return the pairs, in the same order
+	 */
+	public static List<HarNameValuePair> toHar(Header[] headers) {
+		List<HarNameValuePair> pairs = new ArrayList<HarNameValuePair>(
+				headers.length);
+		for (Header header : headers) {
+			pairs.add(new HarNameValuePair(intern(header.getName()), header
+					.getValue()));
+		}
+
+		return pairs;
+	}
+
+	/**
+	 * Gets the shared instance of a header name.
+	 * 
+	 * @param name
+	 *            the name
+	 * @return the shared instance if it is a common name, else the name itself
+	 */
+	public static String intern(String name) {
+		String shared = NAMES.get(name);
+		return shared != null ? shared : name;
+	}
+}
@@ -3,67 +3,36 @@
  */
 package org.browsermob.proxy.http;
 
-import org.browsermob.proxy.util.Log;
+import org.browsermob.proxy.util.TimingWheel;
 
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
 
 // TODO: Auto-generated Javadoc
 /**
- * The Class HttpClientInterrupter.
+ * The Class HttpClientInterrupter. Aborts requests that fail to complete in
+ * time. Each request schedules its own timeout on a shared timing wheel when
+ * it starts and cancels it when it finishes, so a timeout fires within a tick
+ * of being due and no thread ever has to sweep the active requests.
  */
 public class HttpClientInterrupter {
 
-	/** The Constant LOG. */
-	private static final Log LOG = new Log();
+	/** The tick of the wheel, in ms. */
+	private static final long TICK = 10;
 
-	/** The clients. */
-	private static Set<BrowserMobHttpClient> clients = new CopyOnWriteArraySet<BrowserMobHttpClient>();
-
-	static {
-		Thread thread = new Thread(new Runnable() {
-			@Override
-			public void run() {
-				while (true) {
-					for (BrowserMobHttpClient client : clients) {
-						try {
-							client.checkTimeout();
-						} catch (Exception e) {
-							LOG.severe(
-									"Unexpected problem while checking timeout on a client",
-									e);
-						}
-					}
-
-					try {
-						Thread.sleep(1000);
-					} catch (InterruptedException e) {
-						// this is OK
-					}
-				}
-			}
-		}, "HttpClientInterrupter Thread");
-		thread.setDaemon(true);
-		thread.start();
-	}
-
-	/**
-	 * Watch.
-	 * 
-	 * @param client
-	 *            the client
-	 */
-	public static void watch(BrowserMobHttpClient client) {
-		clients.add(client);
-	}
+	/** The wheel. */
+	private static final TimingWheel WHEEL = new TimingWheel(
+			"HttpClientInterrupter Thread", TICK, TimeUnit.MILLISECONDS, 512);
 
 	/**
-	 * Release.
+	 * Schedules a task, such as aborting a request, to run after a timeout.
 	 * 
-	 * @param client
-	 *            the client
+	 * @param task
+	 *            the task
+	 * @param timeoutMs
+	 *            the timeout in ms
+	 * @return the timeout, to be cancelled if the request completes in time
 	 */
-	public static void release(BrowserMobHttpClient client) {
-		clients.remove(client);
+	public static TimingWheel.Timeout schedule(Runnable task, long timeoutMs) {
+		return WHEEL.schedule(task, timeoutMs, TimeUnit.MILLISECONDS);
 	}
 }
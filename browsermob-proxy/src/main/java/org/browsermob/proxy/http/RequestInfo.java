@@ -4,20 +4,53 @@
 package org.browsermob.proxy.http;
 
 import org.browsermob.core.har.HarEntry;
+import org.browsermob.core.har.HarNanoTimings;
 import org.browsermob.core.har.HarTimings;
 import org.browsermob.proxy.util.Log;
 
+import java.util.Arrays;
 import java.util.Date;
 
-// TODO: Auto-generated Javadoc
 /**
- * The Class RequestInfo.
+ * The timings of the request the current thread is running. Phases are timed
+ * with System.nanoTime(), which is monotonic, and kept as primitive
+ * nanosecond durations, so timing a phase allocates nothing. The wall clock is
+ * only read once per request, as the anchor the start time is worked out from,
+ * and the durations are converted to {@link HarTimings} when the entry is
+ * finished.
  */
 public class RequestInfo {
 
 	/** The Constant LOG. */
 	private static final Log LOG = new Log();
 
+	/** The Constant BLOCKED. */
+	private static final int BLOCKED = 0;
+
+	/** The Constant DNS. */
+	private static final int DNS = 1;
+
+	/** The Constant CONNECT. */
+	private static final int CONNECT = 2;
+
+	/** The Constant SSL. */
+	private static final int SSL = 3;
+
+	/** The Constant SEND. */
+	private static final int SEND = 4;
+
+	/** The Constant WAIT. */
+	private static final int WAIT = 5;
+
+	/** The Constant RECEIVE. */
+	private static final int RECEIVE = 6;
+
+	/** The duration of a phase that was not timed. */
+	private static final long NOT_TIMED = -1;
+
+	/** The nanoseconds in a millisecond. */
+	private static final long NANOS_PER_MILLI = 1000000;
+
 	/** The instance. */
 	private static ThreadLocal<RequestInfo> instance = new ThreadLocal<RequestInfo>() {
 		@Override
@@ -35,6 +68,15 @@ public class RequestInfo {
 		return instance.get();
 	}
 
+	/**
+	 * Reads the clock the phases are timed with.
+	 * 
+	 * @return the current value of System.nanoTime()
+	 */
+	public static long now() {
+		return System.nanoTime();
+	}
+
 	/**
 	 * Clear.
 	 * 
@@ -44,58 +86,40 @@ public class RequestInfo {
 	 *            the entry
 	 */
 	public static void clear(String url, HarEntry entry) {
-		clear();
 		RequestInfo info = get();
+		Arrays.fill(info.durations, NOT_TIMED);
+		info.resolvedAddress = null;
+		info.started = false;
+		info.finished = false;
+		info.anchorMillis = System.currentTimeMillis();
+		info.anchorNanos = now();
 		info.url = url;
 		info.entry = entry;
 	}
 
-	/**
-	 * Clear.
-	 */
-	private static void clear() {
-		RequestInfo info = get();
-		info.blocked = null;
-		info.dns = null;
-		info.connect = null;
-		info.ssl = null;
-		info.send = null;
-		info.wait = null;
-		info.receive = null;
-		info.resolvedAddress = null;
-		info.start = null;
-		info.end = null;
-	}
-
-	/** The blocked. */
-	private Long blocked;
-
-	/** The dns. */
-	private Long dns;
+	/** The nanosecond duration of each phase. */
+	private final long[] durations = new long[RECEIVE + 1];
 
-	/** The connect. */
-	private Long connect;
+	/** The resolved address. */
+	private String resolvedAddress;
 
-	/** The ssl. */
-	private Long ssl;
+	/** The wall clock time of the anchor, in milliseconds. */
+	private long anchorMillis;
 
-	/** The send. */
-	private Long send;
+	/** The nano time of the anchor. */
+	private long anchorNanos;
 
-	/** The wait. */
-	private Long wait;
+	/** Whether the start has been recorded. */
+	private boolean started;
 
-	/** The receive. */
-	private Long receive;
+	/** The nano time the request started. */
+	private long startNanos;
 
-	/** The resolved address. */
-	private String resolvedAddress;
+	/** Whether the request has finished. */
+	private boolean finished;
 
-	/** The start. */
-	private Date start;
-
-	/** The end. */
-	private Date end;
+	/** The nano time the request finished. */
+	private long endNanos;
 
 	/** The url. */
 	private String url;
@@ -104,24 +128,26 @@ public class RequestInfo {
 	private HarEntry entry;
 
 	/**
-	 * Ping.
+	 * Records a phase that counts towards the total time of the request.
 	 * 
+	 * @param phase
+	 *            the phase
 	 * @param start
-	 *            the start
+	 *            the nano time the phase started
 	 * @param end
-	 *            the end
-	 * @return the long
+	 *            the nano time the phase ended
 	 */
-	private Long ping(Date start, Date end) {
-		if (this.start == null) {
-			this.start = start;
-		} else if (this.start.after(start)) {
+	private void ping(int phase, long start, long end) {
+		if (!started) {
+			started = true;
+			startNanos = start;
+		} else if (start - startNanos < 0) {
 			LOG.severe(
 					"Saw a later start time that was before the first start time for URL %s",
 					url);
 		}
 
-		return end.getTime() - start.getTime();
+		durations[phase] = end - start;
 	}
 
 	/**
@@ -142,7 +168,7 @@ public class RequestInfo {
 	 * @return the dns
 	 */
 	public Long getDns() {
-		return dns;
+		return millis(DNS);
 	}
 
 	/**
@@ -151,7 +177,7 @@ public class RequestInfo {
 	 * @return the connect
 	 */
 	public Long getConnect() {
-		return connect;
+		return millis(CONNECT);
 	}
 
 	/**
@@ -160,7 +186,7 @@ public class RequestInfo {
 	 * @return the ssl
 	 */
 	public Long getSsl() {
-		return ssl;
+		return millis(SSL);
 	}
 
 	/**
@@ -169,7 +195,7 @@ public class RequestInfo {
 	 * @return the send
 	 */
 	public Long getSend() {
-		return send;
+		return millis(SEND);
 	}
 
 	/**
@@ -178,7 +204,7 @@ public class RequestInfo {
 	 * @return the wait
 	 */
 	public Long getWait() {
-		return wait;
+		return millis(WAIT);
 	}
 
 	/**
@@ -187,7 +213,7 @@ public class RequestInfo {
 	 * @return the receive
 	 */
 	public Long getReceive() {
-		return receive;
+		return millis(RECEIVE);
 	}
 
 	/**
@@ -203,15 +229,15 @@ public class RequestInfo {
 	 * Blocked.
 	 * 
 	 * @param start
-	 *            the start
+	 *            the nano time waiting for a connection started
 	 * @param end
-	 *            the end
+	 *            the nano time waiting for a connection ended
 	 */
-	public void blocked(Date start, Date end) {
+	public void blocked(long start, long end) {
 		// blocked is special - we don't record this start time as we don't want
 		// it to count towards receive time and
 		// total time
-		blocked = end.getTime() - start.getTime();
+		durations[BLOCKED] = end - start;
 	}
 
 	/**
@@ -224,8 +250,8 @@ public class RequestInfo {
 	 * @param resolvedAddress
 	 *            the resolved address
 	 */
-	public void dns(Date start, Date end, String resolvedAddress) {
-		dns = ping(start, end);
+	public void dns(long start, long end, String resolvedAddress) {
+		ping(DNS, start, end);
 		this.resolvedAddress = resolvedAddress;
 	}
 
@@ -237,8 +263,8 @@ public class RequestInfo {
 	 * @param end
 	 *            the end
 	 */
-	public void connect(Date start, Date end) {
-		connect = ping(start, end);
+	public void connect(long start, long end) {
+		ping(CONNECT, start, end);
 	}
 
 	/**
@@ -249,8 +275,8 @@ public class RequestInfo {
 	 * @param end
 	 *            the end
 	 */
-	public void ssl(Date start, Date end) {
-		ssl = ping(start, end);
+	public void ssl(long start, long end) {
+		ping(SSL, start, end);
 	}
 
 	/**
@@ -261,65 +287,76 @@ public class RequestInfo {
 	 * @param end
 	 *            the end
 	 */
-	public void send(Date start, Date end) {
-		send = ping(start, end);
+	public void send(long start, long end) {
+		ping(SEND, start, end);
 	}
 
 	/**
-	 * Wait.
+	 * Wait phase. Not named wait, so that a call with an int end can't bind
+	 * to Object.wait(long, int).
 	 * 
 	 * @param start
 	 *            the start
 	 * @param end
 	 *            the end
 	 */
-	public void wait(Date start, Date end) {
-		wait = ping(start, end);
+	public void waitPhase(long start, long end) {
+		ping(WAIT, start, end);
 	}
 
 	/**
 	 * Finish.
 	 */
 	public void finish() {
-		end = new Date();
-
-		if (start == null) {
-			start = new Date();
-		}
-
-		long totalTime = end.getTime() - start.getTime();
+		endNanos = now();
+		finished = true;
 
-		receive = totalTime - norm(wait) - norm(send) - norm(ssl)
-				- norm(connect) - norm(dns);
-
-		// as per the Har 1.2 spec (to maintain backwards compatibility with
-		// 1.1) the connect time should actually
-		// include the ssl handshaking time, so doing that here after everything
-		// has been calculated
-		if (norm(ssl) > 0) {
-			connect += ssl;
+		if (!started) {
+			started = true;
+			startNanos = endNanos;
 		}
 
+		long receive = endNanos - startNanos - norm(WAIT) - norm(SEND)
+				- norm(SSL) - norm(CONNECT) - norm(DNS);
 		if (receive < 0) {
 			LOG.severe("Got a negative receiving time (%d) for URL %s",
 					receive, url);
-			receive = 0L;
+			receive = 0;
 		}
+		durations[RECEIVE] = receive;
 	}
 
 	/**
 	 * Norm.
 	 * 
-	 * @param val
-	 *            the val
-	 * @return the long
+	 * @param phase
+	 *            the phase
+	 * @return the duration of the phase in nanoseconds, 0 if it was not timed
 	 */
-	private long norm(Long val) {
-		if (val == null) {
-			return 0;
-		} else {
-			return val;
-		}
+	private long norm(int phase) {
+		return durations[phase] == NOT_TIMED ? 0 : durations[phase];
+	}
+
+	/**
+	 * Gets the duration of a phase in milliseconds.
+	 * 
+	 * @param phase
+	 *            the phase
+	 * @return the duration, null if the phase was not timed
+	 */
+	private Long millis(int phase) {
+		return durations[phase] == NOT_TIMED ? null : toMillis(durations[phase]);
+	}
+
+	/**
+	 * Converts nanoseconds to milliseconds, rounding to the nearest.
+	 * 
+	 * @param nanos
+	 *            the nanos
+	 * @return the millis
+	 */
+	private static long toMillis(long nanos) {
+		return (nanos + NANOS_PER_MILLI / 2) / NANOS_PER_MILLI;
 	}
 
 	/**
@@ -328,7 +365,11 @@ public class RequestInfo {
 	 * @return the start
 	 */
 	public Date getStart() {
-		return start;
+		if (!started) {
+			return null;
+		}
+
+		return new Date(anchorMillis + toMillis(startNanos - anchorNanos));
 	}
 
 	/**
@@ -337,7 +378,11 @@ public class RequestInfo {
 	 * @return the end
 	 */
 	public Date getEnd() {
-		return end;
+		if (!finished) {
+			return null;
+		}
+
+		return new Date(anchorMillis + toMillis(endNanos - anchorNanos));
 	}
 
 	/**
@@ -346,11 +391,11 @@ public class RequestInfo {
 	 * @return the total time
 	 */
 	public long getTotalTime() {
-		if (end == null || start == null) {
+		if (!finished || !started) {
 			return -1;
 		}
 
-		return end.getTime() - start.getTime();
+		return toMillis(endNanos - startNanos);
 	}
 
 	/*
@@ -360,13 +405,11 @@ public class RequestInfo {
 	 */
 	@Override
 	public String toString() {
-		long totalTime = end.getTime() - start.getTime();
-
-		return "RequestInfo{" + "blocked=" + blocked + ", dns=" + dns
-				+ ", connect=" + connect + ", ssl=" + ssl + ", send=" + send
-				+ ", wait=" + wait + ", receive=" + receive + ", total="
-				+ totalTime + ", resolvedAddress='" + resolvedAddress + '\''
-				+ '}';
+		return "RequestInfo{" + "blocked=" + millis(BLOCKED) + ", dns="
+				+ getDns() + ", connect=" + getConnect() + ", ssl=" + getSsl()
+				+ ", send=" + getSend() + ", wait=" + getWait() + ", receive="
+				+ getReceive() + ", total=" + getTotalTime()
+				+ ", resolvedAddress='" + resolvedAddress + '\'' + '}';
 	}
 
 	/**
@@ -375,43 +418,40 @@ public class RequestInfo {
 	 * @return the timings
 	 */
 	public HarTimings getTimings() {
-		long send = 0;
-		if (this.send != null) {
-			send = this.send;
-		}
-
-		long wait = 0;
-		if (this.wait != null) {
-			wait = this.wait;
-		}
-
-		long receive = 0;
-		if (this.receive != null) {
-			receive = this.receive;
-		}
-
 		// We were setting the following to null, however
 		// some HAR viewers (e.g. the HTTP Archive Viewer js widget)
 		// have a problem when these are not set in the json.
 		// Keeping them set to zero for now, until
-		long blocked = 0;
-		if (this.blocked != null) {
-			blocked = this.blocked;
-		}
+		long blocked = toMillis(norm(BLOCKED));
+		long dns = toMillis(norm(DNS));
+		long send = toMillis(norm(SEND));
+		long wait = toMillis(norm(WAIT));
+		long ssl = toMillis(norm(SSL));
 
-		long dns = 0;
-		if (this.dns != null) {
-			dns = this.dns;
-		}
+		// as per the Har 1.2 spec (to maintain backwards compatibility with
+		// 1.1) the connect time should actually
+		// include the ssl handshaking time
+		long connect = toMillis(norm(CONNECT)) + ssl;
 
-		long connect = 0;
-		if (this.connect != null) {
-			connect = this.connect;
-		}
+		// receive takes whatever is left after rounding, so that the timings
+		// still add up to the total time
+		long receive = Math.max(getTotalTime() - dns - connect - send - wait,
+				0);
 
 		return new HarTimings(blocked, dns, connect, send, wait, receive);
 	}
 
+	/**
+	 * Gets the timings in nanoseconds, which unlike the HAR timings keep the
+	 * ssl handshake apart from the connect time.
+	 * 
+	 * @return the nano timings
+	 */
+	public HarNanoTimings getNanoTimings() {
+		return new HarNanoTimings(norm(BLOCKED), norm(DNS), norm(CONNECT),
+				norm(SSL), norm(SEND), norm(WAIT), norm(RECEIVE));
+	}
+
 	/**
 	 * Gets the entry.
 	 * 
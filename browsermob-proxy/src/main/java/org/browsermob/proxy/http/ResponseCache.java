@@ -0,0 +1,989 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpMessage;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.message.BasicHttpResponse;
+import org.browsermob.core.har.HarCache;
+import org.browsermob.core.har.HarCacheStatus;
+import org.browsermob.proxy.util.CaptureBuffer;
+import org.browsermob.proxy.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A shared cache of upstream responses, so that static assets many browser
+ * sessions ask for are fetched once rather than once per session. Only fresh
+ * responses are served: a GET answered with a 200 whose headers give it an
+ * explicit or heuristic freshness lifetime, and which is neither private nor
+ * marked no-store or no-cache, is kept until it expires. Stale entries are
+ * dropped rather than revalidated.
+ * Entries are held in memory in least recently used order up to a size limit.
+ * If a directory is given, entries pushed out of memory are written there in
+ * the background and read back on a later hit, again up to a size limit.
+ * The directory can be reused across restarts. A cache is thread safe and
+ * can be shared by several clients.
+ */
+public class ResponseCache {
+
+	/** The Constant LOG. */
+	private static final Log LOG = new Log();
+
+	/** The marker at the start of every cache file. */
+	private static final int FILE_MAGIC = 0x424d5243;
+
+	/** The extension of cache files. */
+	private static final String FILE_SUFFIX = ".cache";
+
+	/** The fraction of its age a response without expiry info stays fresh. */
+	private static final double HEURISTIC_FRACTION = 0.1;
+
+	/** The longest heuristic freshness lifetime in ms (a day). */
+	private static final long MAX_HEURISTIC_LIFETIME = 24 * 60 * 60 * 1000L;
+
+	/** The bytes an entry is taken to use besides its headers and body. */
+	private static final int ENTRY_OVERHEAD = 256;
+
+	/** The number of files read, to name them while they are read. */
+	private static final AtomicInteger READS = new AtomicInteger();
+
+	/** The thread writing entries pushed out of memory to disk. */
+	private static final ExecutorService WRITER = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "response-cache-writer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+	/** The max memory size. */
+	private final long maxMemorySize;
+
+	/** The largest entry kept, an eighth of the memory size. */
+	private final long maxEntrySize;
+
+	/** The directory, null for no disk tier. */
+	private final File directory;
+
+	/** The max disk size. */
+	private final long maxDiskSize;
+
+	/** The entries in memory by key, least recently used first. */
+	private final LinkedHashMap<String, Entry> memory = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true);
+
+	/** The bytes held in memory. */
+	private long memorySize;
+
+	/** The sizes of the cache files by name, least recently used first. */
+	private final LinkedHashMap<String, Long> files = new LinkedHashMap<String, Long>(
+			16, 0.75f, true);
+
+	/** The bytes held on disk. */
+	private long diskSize;
+
+	/**
+	 * Instantiates a new response cache.
+	 * 
+	 * @param maxMemorySize
+	 *            the most bytes to hold in memory
+	 * @param directory
+	 *            the directory to hold entries pushed out of memory in, null
+	 *            to only cache in memory. Entries already in it are used
+	 * @param maxDiskSize
+	 *            the most bytes to hold on disk
+	 */
+	public ResponseCache(long maxMemorySize, File directory, long maxDiskSize) {
+		this.maxMemorySize = maxMemorySize;
+		this.maxEntrySize = maxMemorySize / 8;
+		this.directory = directory;
+		this.maxDiskSize = maxDiskSize;
+
+		if (directory != null) {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new RuntimeException("Could not create cache directory "
+						+ directory);
+			}
+			loadFiles();
+		}
+	}
+
+	/**
+	 * Gets the max memory size.
+	 * 
+	 * @return the max memory size
+	 */
+	public long getMaxMemorySize() {
+		return maxMemorySize;
+	}
+
+	/**
+	 * Gets the directory.
+	 * 
+	 * @return the directory, null if there is no disk tier
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Gets the max disk size.
+	 * 
+	 * @return the max disk size
+	 */
+	public long getMaxDiskSize() {
+		return maxDiskSize;
+	}
+
+	/**
+	 * Looks up a fresh response to a request.
+	 * 
+	 * @param request
+	 *            the request, with all the headers it will be sent with
+	 * @return the entry, null if the request has to go upstream
+	 */
+	public Entry get(HttpRequestBase request) {
+		if (!isStorable(request)
+				|| hasDirective(request, "Cache-Control", "no-cache")
+				|| hasDirective(request, "Pragma", "no-cache")) {
+			return null;
+		}
+
+		String key = key(request);
+		Entry entry;
+		synchronized (this) {
+			entry = memory.get(key);
+		}
+
+		long now = System.currentTimeMillis();
+		if (entry == null && directory != null) {
+			entry = read(key);
+			if (entry != null && now < entry.expires) {
+				put(entry);
+			}
+		}
+
+		if (entry == null) {
+			return null;
+		}
+
+		if (now >= entry.expires) {
+			remove(entry);
+			return null;
+		}
+
+		// browsers ask for max-age=0 on a reload
+		long maxAge = directiveValue(request, "Cache-Control", "max-age");
+		if (maxAge == 0 || maxAge > 0 && entry.age(now) > maxAge) {
+			return null;
+		}
+
+		return entry.varies(request) ? null : entry;
+	}
+
+	/**
+	 * Starts recording a response to store it once its body has been read.
+	 * 
+	 * @param request
+	 *            the request
+	 * @param response
+	 *            the response, with its body not yet read
+	 * @return the recorder, null if the response can't be cached
+	 */
+	public Recorder record(HttpRequestBase request, HttpResponse response) {
+		if (!isStorable(request)
+				|| response.getStatusLine().getStatusCode() != HttpStatus.SC_OK
+				|| hasDirective(response, "Cache-Control", "no-store")
+				|| hasDirective(response, "Cache-Control", "no-cache")
+				|| hasDirective(response, "Cache-Control", "private")
+				|| hasDirective(response, "Vary", "*")
+				|| response.containsHeader("Set-Cookie")) {
+			return null;
+		}
+
+		long contentLength = response.getEntity() != null ? response
+				.getEntity().getContentLength() : 0;
+		if (contentLength > maxEntrySize) {
+			return null;
+		}
+
+		long now = System.currentTimeMillis();
+		long date = dateOf(response, "Date", now);
+		if (date == 0) {
+			date = now;
+		}
+
+		long lifetime = directiveValue(response, "Cache-Control", "s-maxage");
+		if (lifetime == -1) {
+			lifetime = directiveValue(response, "Cache-Control", "max-age");
+		}
+		if (lifetime != -1) {
+			lifetime *= 1000;
+		} else if (response.containsHeader("Expires")) {
+			// an Expires that doesn't parse means already expired
+			lifetime = dateOf(response, "Expires", date) - date;
+		} else {
+			long lastModified = dateOf(response, "Last-Modified", 0);
+			if (lastModified == 0) {
+				return null;
+			}
+			lifetime = Math.min(
+					(long) ((date - lastModified) * HEURISTIC_FRACTION),
+					MAX_HEURISTIC_LIFETIME);
+		}
+
+		long age = Math.max(directiveValue(response, "Age", null), 0) * 1000;
+		if (lifetime - age <= 0) {
+			return null;
+		}
+
+		// the values of the request headers the response varies on
+		List<String> vary = new ArrayList<String>();
+		for (Header header : response.getHeaders("Vary")) {
+			for (HeaderElement element : header.getElements()) {
+				vary.add(element.getName());
+				vary.add(valuesOf(request, element.getName()));
+			}
+		}
+
+		Entry entry = new Entry(key(request), response.getStatusLine()
+				.getProtocolVersion(), response.getStatusLine()
+				.getReasonPhrase(), response.getAllHeaders(),
+				vary.toArray(new String[vary.size()]), now - age, now - age
+						+ lifetime);
+		return new Recorder(entry, contentLength);
+	}
+
+	/**
+	 * Adds an entry to memory, pushing the least recently used ones out to
+	 * disk if there is no room for it.
+	 * 
+	 * @param entry
+	 *            the entry
+	 */
+	private void put(Entry entry) {
+		List<Entry> evicted = new ArrayList<Entry>();
+		synchronized (this) {
+			Entry previous = memory.put(entry.key, entry);
+			if (previous != null) {
+				memorySize -= previous.size();
+			}
+			memorySize += entry.size();
+
+			Iterator<Entry> eldest = memory.values().iterator();
+			while (memorySize > maxMemorySize && eldest.hasNext()) {
+				Entry evict = eldest.next();
+				eldest.remove();
+				memorySize -= evict.size();
+				evicted.add(evict);
+			}
+		}
+
+		if (directory != null) {
+			for (final Entry evict : evicted) {
+				WRITER.execute(new Runnable() {
+					@Override
+					public void run() {
+						write(evict);
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Drops an entry from memory and disk.
+	 * 
+	 * @param entry
+	 *            the entry
+	 */
+	private void remove(Entry entry) {
+		synchronized (this) {
+			if (memory.get(entry.key) == entry) {
+				memory.remove(entry.key);
+				memorySize -= entry.size();
+			}
+
+			if (directory != null) {
+				deleteFile(fileName(entry.key));
+			}
+		}
+	}
+
+	/**
+	 * Reads an entry back from disk.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return the entry, null if there is none
+	 */
+	private Entry read(String key) {
+		String fileName = fileName(key);
+		File file = new File(directory, fileName + "."
+				+ READS.incrementAndGet() + ".tmp");
+		synchronized (this) {
+			// taken off disk, put() writes it back if it is pushed out of
+			// memory again. Moved aside so a write of the same key can't
+			// race with the read
+			Long size = files.remove(fileName);
+			if (size == null) {
+				return null;
+			}
+			diskSize -= size;
+			if (!new File(directory, fileName).renameTo(file)) {
+				return null;
+			}
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() != FILE_MAGIC || !key.equals(in.readUTF())) {
+				return null;
+			}
+
+			ProtocolVersion protocol = new ProtocolVersion(in.readUTF(),
+					in.readInt(), in.readInt());
+			String reason = in.readUTF();
+			long stored = in.readLong();
+			long expires = in.readLong();
+
+			Header[] headers = new Header[in.readInt()];
+			for (int i = 0; i < headers.length; i++) {
+				headers[i] = new BasicHeader(in.readUTF(), in.readUTF());
+			}
+
+			String[] vary = new String[in.readInt()];
+			for (int i = 0; i < vary.length; i++) {
+				vary[i] = in.readUTF();
+			}
+
+			Entry entry = new Entry(key, protocol, reason, headers, vary,
+					stored, expires);
+			entry.body = new byte[in.readInt()];
+			in.readFully(entry.body);
+			return entry;
+		} catch (IOException e) {
+			LOG.warn("Could not read cache file %s", e, file);
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// this is OK to ignore
+				}
+			}
+			file.delete();
+		}
+	}
+
+	/**
+	 * Writes an entry pushed out of memory to disk, then deletes the least
+	 * recently used files if the disk tier is over its size.
+	 * 
+	 * @param entry
+	 *            the entry
+	 */
+	private void write(Entry entry) {
+		if (System.currentTimeMillis() >= entry.expires
+				|| entry.size() > maxDiskSize) {
+			return;
+		}
+
+		String fileName = fileName(entry.key);
+		File temp = new File(directory, fileName + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temp)));
+			out.writeInt(FILE_MAGIC);
+			out.writeUTF(entry.key);
+			out.writeUTF(entry.protocol.getProtocol());
+			out.writeInt(entry.protocol.getMajor());
+			out.writeInt(entry.protocol.getMinor());
+			out.writeUTF(entry.reason);
+			out.writeLong(entry.stored);
+			out.writeLong(entry.expires);
+			out.writeInt(entry.headers.length);
+			for (Header header : entry.headers) {
+				out.writeUTF(header.getName());
+				out.writeUTF(header.getValue());
+			}
+			out.writeInt(entry.vary.length);
+			for (String value : entry.vary) {
+				out.writeUTF(value);
+			}
+			out.writeInt(entry.body.length);
+			out.write(entry.body);
+			out.close();
+			out = null;
+		} catch (IOException e) {
+			LOG.warn("Could not write cache file %s", e, temp);
+			temp.delete();
+			return;
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					// this is OK to ignore
+				}
+			}
+		}
+
+		synchronized (this) {
+			// renamed under the lock so that readers never see half a file
+			File file = new File(directory, fileName);
+			deleteFile(fileName);
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				return;
+			}
+
+			files.put(fileName, file.length());
+			diskSize += file.length();
+			trimFiles();
+		}
+	}
+
+	/**
+	 * Indexes the cache files already in the directory, oldest first.
+	 */
+	private void loadFiles() {
+		File[] existing = directory.listFiles();
+		if (existing == null) {
+			return;
+		}
+
+		Arrays.sort(existing, new Comparator<File>() {
+			@Override
+			public int compare(File a, File b) {
+				long diff = a.lastModified() - b.lastModified();
+				return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+			}
+		});
+
+		synchronized (this) {
+			for (File file : existing) {
+				if (file.getName().endsWith(FILE_SUFFIX)) {
+					files.put(file.getName(), file.length());
+					diskSize += file.length();
+				} else if (file.getName().endsWith(".tmp")) {
+					file.delete();
+				}
+			}
+			trimFiles();
+		}
+	}
+
+	/**
+	 * Deletes the least recently used files until the disk tier fits its
+	 * size. Must be called holding the lock.
+	 */
+	private void trimFiles() {
+		Iterator<Map.Entry<String, Long>> eldest = files.entrySet().iterator();
+		while (diskSize > maxDiskSize && eldest.hasNext()) {
+			Map.Entry<String, Long> file = eldest.next();
+			eldest.remove();
+			diskSize -= file.getValue();
+			new File(directory, file.getKey()).delete();
+		}
+	}
+
+	/**
+	 * Deletes a cache file if there is one. Must be called holding the lock.
+	 * 
+	 * @param fileName
+	 *            the file name
+	 */
+	private void deleteFile(String fileName) {
+		Long size = files.remove(fileName);
+		if (size != null) {
+			diskSize -= size;
+			new File(directory, fileName).delete();
+		}
+	}
+
+	/**
+	 * Checks whether a request is one whose response may be stored and
+	 * served to other clients.
+	 * 
+	 * @param request
+	 *            the request
+	 * @return true, if the response may be stored
+	 */
+	private static boolean isStorable(HttpRequestBase request) {
+		return "GET".equals(request.getMethod())
+				&& !request.containsHeader("Authorization")
+				&& !request.containsHeader("Range")
+				&& !hasDirective(request, "Cache-Control", "no-store");
+	}
+
+	/**
+	 * Works out the key of a request.
+	 * 
+	 * @param request
+	 *            the request
+	 * @return the key
+	 */
+	private static String key(HttpRequestBase request) {
+		return request.getURI().toString();
+	}
+
+	/**
+	 * Works out the name of the file holding an entry.
+	 * 
+	 * @param key
+	 *            the key
+	 * @return the file name
+	 */
+	private static String fileName(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+					key.getBytes("UTF-8"));
+			StringBuilder name = new StringBuilder(digest.length * 2
+					+ FILE_SUFFIX.length());
+			for (byte b : digest) {
+				name.append(Character.forDigit((b >> 4) & 0xf, 16));
+				name.append(Character.forDigit(b & 0xf, 16));
+			}
+			return name.append(FILE_SUFFIX).toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Checks whether a header carries a directive, such as the no-cache in
+	 * "Cache-Control: public, no-cache".
+	 * 
+	 * @param message
+	 *            the message
+	 * @param name
+	 *            the header name
+	 * @param directive
+	 *            the directive
+	 * @return true, if the directive is there
+	 */
+	private static boolean hasDirective(HttpMessage message, String name,
+			String directive) {
+		for (Header header : message.getHeaders(name)) {
+			for (HeaderElement element : header.getElements()) {
+				if (directive.equalsIgnoreCase(element.getName())) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Gets the number of seconds a directive is set to, such as the max-age in
+	 * "Cache-Control: max-age=3600", or the value of a header holding just a
+	 * number, such as Age, if the directive is null.
+	 * 
+	 * @param message
+	 *            the message
+	 * @param name
+	 *            the header name
+	 * @param directive
+	 *            the directive, null for the header value itself
+	 * @return the value, -1 if it is not there or not a number
+	 */
+	private static long directiveValue(HttpMessage message, String name,
+			String directive) {
+		for (Header header : message.getHeaders(name)) {
+			for (HeaderElement element : header.getElements()) {
+				String value = directive == null ? element.getName()
+						: directive.equalsIgnoreCase(element.getName()) ? element
+								.getValue() : null;
+				if (value != null) {
+					try {
+						return Long.parseLong(value.trim());
+					} catch (NumberFormatException e) {
+						return -1;
+					}
+				}
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Parses a date header.
+	 * 
+	 * @param message
+	 *            the message
+	 * @param name
+	 *            the header name
+	 * @param defaultValue
+	 *            the value if the header is not there
+	 * @return the date in ms, 0 if the header doesn't parse
+	 */
+	private static long dateOf(HttpMessage message, String name,
+			long defaultValue) {
+		Header header = message.getFirstHeader(name);
+		if (header == null) {
+			return defaultValue;
+		}
+
+		try {
+			return DateUtils.parseDate(header.getValue()).getTime();
+		} catch (DateParseException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Gets all the values of a header as one string.
+	 * 
+	 * @param message
+	 *            the message
+	 * @param name
+	 *            the header name
+	 * @return the values, comma separated, empty if there are none
+	 */
+	private static String valuesOf(HttpMessage message, String name) {
+		StringBuilder values = new StringBuilder();
+		for (Header header : message.getHeaders(name)) {
+			if (values.length() > 0) {
+				values.append(',');
+			}
+			values.append(header.getValue());
+		}
+
+		return values.toString();
+	}
+
+	/**
+	 * A cached response.
+	 */
+	public static class Entry {
+
+		/** The key. */
+		private final String key;
+
+		/** The protocol. */
+		private final ProtocolVersion protocol;
+
+		/** The reason phrase. */
+		private final String reason;
+
+		/** The headers. */
+		private final Header[] headers;
+
+		/**
+		 * The names of the request headers the response varies on, each
+		 * followed by the value it was stored for.
+		 */
+		private final String[] vary;
+
+		/** The time the response was generated upstream, in ms. */
+		private final long stored;
+
+		/** The time the response goes stale, in ms. */
+		private final long expires;
+
+		/** The body, as it came off the wire. */
+		private byte[] body;
+
+		/** The hit count. */
+		private final AtomicInteger hitCount = new AtomicInteger();
+
+		/** The time of the last hit, in ms. */
+		private volatile long lastAccess;
+
+		/**
+		 * Instantiates a new entry.
+		 * 
+		 * @param key
+		 *            the key
+		 * @param protocol
+		 *            the protocol
+		 * @param reason
+		 *            the reason
+		 * @param headers
+		 *            the headers
+		 * @param vary
+		 *            the vary
+		 * @param stored
+		 *            the stored
+		 * @param expires
+		 *            the expires
+		 */
+		private Entry(String key, ProtocolVersion protocol, String reason,
+				Header[] headers, String[] vary, long stored, long expires) {
+			this.key = key;
+			this.protocol = protocol;
+			this.reason = reason != null ? reason : "OK";
+			this.headers = headers;
+			this.vary = vary;
+			this.stored = stored;
+			this.expires = expires;
+			this.lastAccess = stored;
+		}
+
+		/**
+		 * Builds the response to a request the entry was looked up for. A
+		 * conditional request the entry satisfies gets a 304 without a body.
+		 * The hit is recorded in the har cache of the request's entry.
+		 * 
+		 * @param request
+		 *            the request
+		 * @param cache
+		 *            the har cache of the request
+		 * @return the response
+		 */
+		public HttpResponse hit(HttpRequestBase request, HarCache cache) {
+			cache.setBeforeRequest(toHarStatus());
+			lastAccess = System.currentTimeMillis();
+			hitCount.incrementAndGet();
+			cache.setAfterRequest(toHarStatus());
+
+			boolean notModified = false;
+			Header eTag = header("ETag");
+			Header lastModified = header("Last-Modified");
+			if (request.containsHeader("If-None-Match")) {
+				notModified = eTag != null
+						&& valuesOf(request, "If-None-Match").contains(
+								eTag.getValue());
+			} else if (request.containsHeader("If-Modified-Since")) {
+				notModified = lastModified != null
+						&& lastModified.getValue().equals(
+								request.getFirstHeader("If-Modified-Since")
+										.getValue());
+			}
+
+			BasicHttpResponse response = notModified ? new BasicHttpResponse(
+					protocol, HttpStatus.SC_NOT_MODIFIED, "Not Modified")
+					: new BasicHttpResponse(protocol, HttpStatus.SC_OK, reason);
+			for (Header header : headers) {
+				String name = header.getName();
+				if (!"Age".equalsIgnoreCase(name)
+						&& !(notModified && ("Content-Length"
+								.equalsIgnoreCase(name)
+								|| "Content-Encoding".equalsIgnoreCase(name) || "Transfer-Encoding"
+									.equalsIgnoreCase(name)))) {
+					response.addHeader(header);
+				}
+			}
+			response.addHeader("Age",
+					Long.toString(age(System.currentTimeMillis())));
+
+			if (!notModified) {
+				response.setEntity(new ByteArrayEntity(body));
+			}
+
+			return response;
+		}
+
+		/**
+		 * Gets the state of the entry as a har cache status.
+		 * 
+		 * @return the har cache status
+		 */
+		public HarCacheStatus toHarStatus() {
+			HarCacheStatus status = new HarCacheStatus();
+			status.setExpires(new Date(expires));
+			status.setLastAccess(new Date(lastAccess));
+			Header eTag = header("ETag");
+			if (eTag != null) {
+				status.seteTag(eTag.getValue());
+			}
+			status.setHitCount(hitCount.get());
+			return status;
+		}
+
+		/**
+		 * Gets the age of the entry.
+		 * 
+		 * @param now
+		 *            the current time in ms
+		 * @return the age in seconds
+		 */
+		private long age(long now) {
+			return Math.max(now - stored, 0) / 1000;
+		}
+
+		/**
+		 * Checks whether a request differs from the one the entry was stored
+		 * for in a header the response varies on.
+		 * 
+		 * @param request
+		 *            the request
+		 * @return true, if the entry can't be used for the request
+		 */
+		private boolean varies(HttpRequestBase request) {
+			for (int i = 0; i < vary.length; i += 2) {
+				if (!vary[i + 1].equals(valuesOf(request, vary[i]))) {
+					return true;
+				}
+			}
+
+			return false;
+		}
+
+		/**
+		 * Gets the first header with a name.
+		 * 
+		 * @param name
+		 *            the name
+		 * @return the header, null if there is none
+		 */
+		private Header header(String name) {
+			for (Header header : headers) {
+				if (name.equalsIgnoreCase(header.getName())) {
+					return header;
+				}
+			}
+
+			return null;
+		}
+
+		/**
+		 * Works out roughly how many bytes the entry takes up.
+		 * 
+		 * @return the size
+		 */
+		private long size() {
+			long size = ENTRY_OVERHEAD + key.length() * 2 + body.length;
+			for (Header header : headers) {
+				size += (header.getName().length() + header.getValue()
+						.length()) * 2;
+			}
+			return size;
+		}
+	}
+
+	/**
+	 * Keeps a copy of a response body as it is read, and stores the response
+	 * once the whole body has been read.
+	 */
+	public class Recorder {
+
+		/** The entry, without its body. */
+		private final Entry entry;
+
+		/** The content length, -1 if unknown. */
+		private final long contentLength;
+
+		/** The body. */
+		private final CaptureBuffer buffer;
+
+		/**
+		 * Instantiates a new recorder.
+		 * 
+		 * @param entry
+		 *            the entry
+		 * @param contentLength
+		 *            the content length
+		 */
+		private Recorder(Entry entry, long contentLength) {
+			this.entry = entry;
+			this.contentLength = contentLength;
+			this.buffer = new CaptureBuffer(maxEntrySize);
+		}
+
+		/**
+		 * Wraps the stream the body is read from so that a copy is kept.
+		 * 
+		 * @param is
+		 *            the stream of the body as it comes off the wire
+		 * @return the stream to read the body from instead
+		 */
+		public InputStream record(InputStream is) {
+			return new FilterInputStream(is) {
+				@Override
+				public int read() throws IOException {
+					int b = super.read();
+					if (b != -1) {
+						buffer.write(b);
+					}
+					return b;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len) throws IOException {
+					int count = super.read(b, off, len);
+					if (count > 0) {
+						buffer.write(b, off, count);
+					}
+					return count;
+				}
+
+				@Override
+				public long skip(long n) throws IOException {
+					// skipped bytes would leave a hole in the copy
+					return 0;
+				}
+			};
+		}
+
+		/**
+		 * Stores the response, once the body has been read to the end.
+		 * 
+		 * @param cache
+		 *            the har cache of the request
+		 */
+		public void store(HarCache cache) {
+			if (buffer.isTruncated() || contentLength != -1
+					&& buffer.size() != contentLength) {
+				return;
+			}
+
+			entry.body = buffer.toByteArray();
+			put(entry);
+			cache.setAfterRequest(entry.toHarStatus());
+		}
+
+		/**
+		 * Frees the copy of the body. Call it whether or not the response was
+		 * stored.
+		 */
+		public void release() {
+			buffer.release();
+		}
+	}
+}
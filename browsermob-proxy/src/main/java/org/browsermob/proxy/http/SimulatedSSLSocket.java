@@ -13,7 +13,6 @@ import java.net.InetAddress;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.nio.channels.SocketChannel;
-import java.util.Date;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -27,8 +26,8 @@ public class SimulatedSSLSocket extends SSLSocket {
 	/** The stream manager. */
 	private StreamManager streamManager;
 
-	/** The handshake start. */
-	private Date handshakeStart;
+	/** The nano time the handshake started. */
+	private long handshakeStart;
 
 	/**
 	 * Instantiates a new simulated ssl socket.
@@ -266,19 +265,16 @@ public class SimulatedSSLSocket extends SSLSocket {
 	 */
 	@Override
 	public void connect(SocketAddress endpoint, int timeout) throws IOException {
-		Date start = new Date();
+		long start = RequestInfo.now();
 		socket.connect(endpoint, timeout);
-		Date end = new Date();
-		RequestInfo.get().connect(start, end);
-		handshakeStart = new Date();
+		RequestInfo.get().connect(start, RequestInfo.now());
+		handshakeStart = RequestInfo.now();
 		startHandshake();
 		this.addHandshakeCompletedListener(new HandshakeCompletedListener() {
 			@Override
 			public void handshakeCompleted(
 					HandshakeCompletedEvent handshakeCompletedEvent) {
-				if (handshakeStart != null) {
-					RequestInfo.get().ssl(handshakeStart, new Date());
-				}
+				RequestInfo.get().ssl(handshakeStart, RequestInfo.now());
 			}
 		});
 	}
@@ -22,7 +22,6 @@ import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketTimeoutException;
-import java.util.Date;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -114,19 +113,17 @@ public class SimulatedSocketFactory implements SchemeSocketFactory {
 		Socket newSocket = new Socket() {
 			@Override
 			public void connect(SocketAddress endpoint) throws IOException {
-				Date start = new Date();
+				long start = RequestInfo.now();
 				super.connect(endpoint);
-				Date end = new Date();
-				RequestInfo.get().connect(start, end);
+				RequestInfo.get().connect(start, RequestInfo.now());
 			}
 
 			@Override
 			public void connect(SocketAddress endpoint, int timeout)
 					throws IOException {
-				Date start = new Date();
+				long start = RequestInfo.now();
 				super.connect(endpoint, timeout);
-				Date end = new Date();
-				RequestInfo.get().connect(start, end);
+				RequestInfo.get().connect(start, RequestInfo.now());
 			}
 
 			@Override
@@ -0,0 +1,150 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps track of the requests going through a {@link BrowserMobHttpClient} so
+ * that callers can wait for the network to become idle without scanning the
+ * HAR. Waiting threads are parked and signalled whenever a request finishes,
+ * instead of polling.
+ */
+public class TrafficMonitor {
+
+	/** The lock. */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signalled when a request finishes. */
+	private final Condition requestFinished = lock.newCondition();
+
+	/** The number of active requests. */
+	private int activeRequests;
+
+	/**
+	 * The System.nanoTime() at which the last request finished, or at which
+	 * monitoring started if no request has finished yet.
+	 */
+	private long lastActivity = System.nanoTime();
+
+	/**
+	 * Records the start of a request.
+	 */
+	public void requestStarted() {
+		lock.lock();
+		try {
+			activeRequests++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Records the end of a request and wakes up any waiting threads.
+	 */
+	public void requestFinished() {
+		lock.lock();
+		try {
+			activeRequests--;
+			lastActivity = System.nanoTime();
+			requestFinished.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Gets the active requests.
+	 * 
+	 * @return the number of active requests
+	 */
+	public int getActiveRequests() {
+		lock.lock();
+		try {
+			return activeRequests;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until no request is active. Returns as soon as the last active
+	 * request finishes.
+	 * 
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the unit of the timeout
+	 * @return true, if no request was active before the timeout
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	public boolean awaitNoActiveRequests(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long remaining = unit.toNanos(timeout);
+
+		lock.lock();
+		try {
+			while (activeRequests > 0) {
+				if (remaining <= 0) {
+					return false;
+				}
+				remaining = requestFinished.awaitNanos(remaining);
+			}
+
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until no request has been active for the quiet period.
+	 * 
+	 * @param quietPeriod
+	 *            the quiet period
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the unit of the quiet period and timeout
+	 * @return true, if the network went quiet before the timeout
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	public boolean awaitQuietPeriod(long quietPeriod, long timeout,
+			TimeUnit unit) throws InterruptedException {
+		long quietNanos = unit.toNanos(quietPeriod);
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+		lock.lock();
+		try {
+			while (true) {
+				long now = System.nanoTime();
+				long remaining = deadline - now;
+				long wait = remaining;
+
+				if (activeRequests == 0) {
+					long idle = now - lastActivity;
+					if (idle >= quietNanos) {
+						return true;
+					}
+
+					// sleep until the quiet period would be over, a request
+					// finishing in the meantime wakes us up to start over
+					wait = Math.min(remaining, quietNanos - idle);
+				}
+
+				if (remaining <= 0) {
+					return false;
+				}
+
+				requestFinished.awaitNanos(wait);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import org.browsermob.proxy.util.AhoCorasick;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A list of URL regexes compiled into a single matcher. Each regex is reduced
+ * to the longest run of literal text any match of it must contain, such as a
+ * host name or a path prefix, and all of those literals are put into one
+ * Aho-Corasick automaton. A single scan of a URL then finds every regex that
+ * can possibly match it, and only those are run. Regexes without a usable
+ * literal are always run.
+ */
+public class UrlPatternSet {
+
+	/** The shortest literal worth indexing. */
+	private static final int MIN_ANCHOR_LENGTH = 3;
+
+	/** The characters that may be escaped to stand for themselves. */
+	private static final String ESCAPABLE = ".\\/-?*+()[]{}|^$:=&#%~@!,;'\"<> ";
+
+	/** The patterns. */
+	private final Pattern[] patterns;
+
+	/** The patterns without a literal, which are always candidates. */
+	private final BitSet unanchored = new BitSet();
+
+	/** The automaton over the literals. */
+	private final AhoCorasick literals;
+
+	/** The pattern each literal belongs to. */
+	private final int[] literalPatterns;
+
+	/**
+	 * Compiles a list of regexes.
+	 * 
+	 * @param patterns
+	 *            the patterns, in the order they should be tried
+	 */
+	public UrlPatternSet(List<Pattern> patterns) {
+		this.patterns = patterns.toArray(new Pattern[patterns.size()]);
+
+		List<String> anchors = new ArrayList<String>();
+		List<Integer> anchored = new ArrayList<Integer>();
+		for (int i = 0; i < this.patterns.length; i++) {
+			// flags would change what the literal text means, leave those
+			// patterns unindexed
+			String anchor = this.patterns[i].flags() == 0 ? anchor(this.patterns[i]
+					.pattern()) : null;
+			if (anchor == null) {
+				unanchored.set(i);
+			} else {
+				anchors.add(anchor);
+				anchored.add(i);
+			}
+		}
+
+		literals = new AhoCorasick(anchors);
+		literalPatterns = new int[anchored.size()];
+		for (int i = 0; i < literalPatterns.length; i++) {
+			literalPatterns[i] = anchored.get(i);
+		}
+	}
+
+	/**
+	 * Gets the number of patterns.
+	 * 
+	 * @return the size
+	 */
+	public int size() {
+		return patterns.length;
+	}
+
+	/**
+	 * Gets a pattern.
+	 * 
+	 * @param index
+	 *            the index
+	 * @return the pattern
+	 */
+	public Pattern getPattern(int index) {
+		return patterns[index];
+	}
+
+	/**
+	 * Finds the patterns that may match a URL in a single scan of it. Any
+	 * pattern that can find a match in the URL is among the candidates.
+	 * 
+	 * @param url
+	 *            the url
+	 * @return the indexes of the candidate patterns
+	 */
+	public BitSet candidates(String url) {
+		BitSet candidates = (BitSet) unanchored.clone();
+
+		int state = AhoCorasick.START;
+		for (int i = 0; i < url.length(); i++) {
+			state = literals.next(state, url.charAt(i));
+			for (int hit : literals.matches(state)) {
+				candidates.set(literalPatterns[hit]);
+			}
+		}
+
+		return candidates;
+	}
+
+	/**
+	 * Finds the first pattern, in list order, that matches the whole URL.
+	 * 
+	 * @param url
+	 *            the url
+	 * @return the index of the pattern, -1 if none matches
+	 */
+	public int firstMatch(String url) {
+		BitSet candidates = candidates(url);
+		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates
+				.nextSetBit(i + 1)) {
+			if (patterns[i].matcher(url).matches()) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Works out the longest run of literal text that every match of a regex
+	 * must contain. The regex is read conservatively: alternation, embedded
+	 * flags, nested character classes and quoting give up on the regex, and
+	 * anything inside groups or character classes ends a run, as does any
+	 * escape other than an escaped punctuation character.
+	 * 
+	 * @param regex
+	 *            the regex
+	 * @return the literal, null if there is none long enough to be useful
+	 */
+	static String anchor(String regex) {
+		if (regex.indexOf('|') != -1 || regex.indexOf("(?") != -1
+				|| regex.indexOf("\\Q") != -1) {
+			return null;
+		}
+
+		String best = "";
+		StringBuilder run = new StringBuilder();
+		int depth = 0;
+		int i = 0;
+		while (i < regex.length()) {
+			char c = regex.charAt(i);
+			char literal = 0;
+
+			if (c == '\\' && i + 1 < regex.length()) {
+				char escaped = regex.charAt(i + 1);
+				i += escapeLength(regex, i);
+				if (depth == 0 && ESCAPABLE.indexOf(escaped) != -1) {
+					literal = escaped;
+				}
+			} else if (c == '[') {
+				// skip the class, allowing for escapes and a leading ]
+				i++;
+				if (i < regex.length() && regex.charAt(i) == '^') {
+					i++;
+				}
+				if (i < regex.length() && regex.charAt(i) == ']') {
+					i++;
+				}
+				while (i < regex.length() && regex.charAt(i) != ']') {
+					if (regex.charAt(i) == '[') {
+						// a union or intersection of classes
+						return null;
+					}
+					i += regex.charAt(i) == '\\' ? escapeLength(regex, i) : 1;
+				}
+				i++;
+			} else if (c == '(') {
+				depth++;
+				i++;
+			} else if (c == ')') {
+				depth--;
+				i++;
+			} else if (c == '*' || c == '?' || c == '{') {
+				// the last character may not be there at all
+				if (run.length() > 0) {
+					run.setLength(run.length() - 1);
+				}
+				if (c == '{') {
+					while (i < regex.length() && regex.charAt(i) != '}') {
+						i++;
+					}
+				}
+				i++;
+			} else if (c == '+') {
+				// the last character is there at least once, but what
+				// follows may be more of it
+				best = longer(best, run);
+				run.setLength(0);
+				i++;
+				continue;
+			} else {
+				i++;
+				if (depth == 0 && c != '.' && c != '^' && c != '$') {
+					literal = c;
+				}
+			}
+
+			if (literal != 0) {
+				run.append(literal);
+			} else {
+				best = longer(best, run);
+				run.setLength(0);
+			}
+		}
+		best = longer(best, run);
+
+		return best.length() >= MIN_ANCHOR_LENGTH ? best : null;
+	}
+
+	/**
+	 * Works out the length of an escape, so that the digits of hex, unicode
+	 * and octal escapes, the letter of a control character, the name of a
+	 * property and the digits of a back reference aren't taken for literal
+	 * text.
+	 * 
+	 * @param regex
+	 *            the regex
+	 * @param start
+	 *            the index of the backslash
+	 * @return the length, backslash included
+	 */
+	static int escapeLength(String regex, int start) {
+		int i = start + 2;
+		switch (regex.charAt(start + 1)) {
+		case 'x':
+		case 'p':
+		case 'P':
+		case 'N':
+			if (i < regex.length() && regex.charAt(i) == '{') {
+				int close = regex.indexOf('}', i);
+				i = close == -1 ? regex.length() : close + 1;
+			} else {
+				i += regex.charAt(start + 1) == 'x' ? 2 : 1;
+			}
+			break;
+		case 'u':
+			i += 4;
+			break;
+		case 'c':
+			i += 1;
+			break;
+		case '0':
+			// \0n, \0nn or \0mnn with m no more than 3
+			int max = i < regex.length() && regex.charAt(i) <= '3' ? 3 : 2;
+			while (i - start - 2 < max && i < regex.length()
+					&& regex.charAt(i) >= '0' && regex.charAt(i) <= '7') {
+				i++;
+			}
+			break;
+		case '1':
+		case '2':
+		case '3':
+		case '4':
+		case '5':
+		case '6':
+		case '7':
+		case '8':
+		case '9':
+			// a back reference takes as many digits as there are groups
+			while (i < regex.length() && Character.isDigit(regex.charAt(i))) {
+				i++;
+			}
+			break;
+		default:
+			break;
+		}
+
+		return Math.min(i - start, regex.length() - start);
+	}
+
+	/**
+	 * Picks the longer of two runs.
+	 * 
+	 * @param best
+	 *            the best so far
+	 * @param run
+	 *            the run
+	 * @return the longer
+	 */
+	private static String longer(String best, StringBuilder run) {
+		return run.length() > best.length() ? run.toString() : best;
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The rewrite, whitelist and blacklist rules of a {@link BrowserMobHttpClient}.
+ * Each kind of rule is compiled into a {@link UrlPatternSet}, so a request
+ * only runs the regexes that can match its URL rather than every rule in
+ * turn. Rules are added under a lock and published as an immutable snapshot,
+ * so requests read them without locking.
+ */
+public class UrlRules {
+
+	/** The rewrite patterns. */
+	private final List<Pattern> rewriteMatches = new ArrayList<Pattern>();
+
+	/** The rewrite replacements. */
+	private final List<String> rewriteReplacements = new ArrayList<String>();
+
+	/** The blacklist patterns. */
+	private final List<Pattern> blacklistPatterns = new ArrayList<Pattern>();
+
+	/** The blacklist response codes. */
+	private final List<Integer> blacklistResponseCodes = new ArrayList<Integer>();
+
+	/** The whitelist patterns, null if there is no whitelist. */
+	private List<Pattern> whitelistPatterns;
+
+	/** The whitelist response code. */
+	private int whitelistResponseCode;
+
+	/** The compiled rules. */
+	private volatile Snapshot snapshot = new Snapshot();
+
+	/**
+	 * Adds a rewrite rule. Rules are applied in the order they were added,
+	 * each one to the result of the ones before.
+	 * 
+	 * @param match
+	 *            the regex to replace
+	 * @param replace
+	 *            the replacement
+	 */
+	public synchronized void addRewriteRule(String match, String replace) {
+		rewriteMatches.add(Pattern.compile(match));
+		rewriteReplacements.add(replace);
+		snapshot = new Snapshot();
+	}
+
+	/**
+	 * Removes all rewrite rules.
+	 */
+	public synchronized void clearRewriteRules() {
+		rewriteMatches.clear();
+		rewriteReplacements.clear();
+		snapshot = new Snapshot();
+	}
+
+	/**
+	 * Adds a blacklist entry. The first entry, in the order they were added,
+	 * matching the whole url decides the response code.
+	 * 
+	 * @param pattern
+	 *            the pattern
+	 * @param responseCode
+	 *            the response code
+	 */
+	public synchronized void addBlacklistEntry(String pattern, int responseCode) {
+		blacklistPatterns.add(Pattern.compile(pattern));
+		blacklistResponseCodes.add(responseCode);
+		snapshot = new Snapshot();
+	}
+
+	/**
+	 * Sets the whitelist, replacing any previous one.
+	 * 
+	 * @param patterns
+	 *            the patterns
+	 * @param responseCode
+	 *            the response code for urls matching none of the patterns
+	 */
+	public synchronized void setWhitelist(String[] patterns, int responseCode) {
+		List<Pattern> compiled = new ArrayList<Pattern>();
+		for (String pattern : patterns) {
+			compiled.add(Pattern.compile(pattern));
+		}
+		whitelistPatterns = compiled;
+		whitelistResponseCode = responseCode;
+		snapshot = new Snapshot();
+	}
+
+	/**
+	 * Applies the rewrite rules to a url.
+	 * 
+	 * @param url
+	 *            the url
+	 * @return the rewritten url, the same instance if no rule changed it
+	 */
+	public String rewrite(String url) {
+		Snapshot current = snapshot;
+		if (current.rewrites.size() == 0) {
+			return url;
+		}
+
+		String result = url;
+		BitSet candidates = current.rewrites.candidates(result);
+		for (int i = candidates.nextSetBit(0); i >= 0; i = candidates
+				.nextSetBit(i + 1)) {
+			Matcher matcher = current.rewrites.getPattern(i).matcher(result);
+			if (!matcher.find()) {
+				continue;
+			}
+
+			String rewritten = matcher.replaceAll(current.replacements[i]);
+			if (!rewritten.equals(result)) {
+				result = rewritten;
+
+				// the rules still to come apply to the rewritten url
+				candidates = current.rewrites.candidates(result);
+				candidates.clear(0, i + 1);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Checks the url against the whitelist and blacklist.
+	 * 
+	 * @param url
+	 *            the url
+	 * @return the response code to mock the response with, -1 if the request
+	 *         should go ahead
+	 */
+	public int getMockResponseCode(String url) {
+		Snapshot current = snapshot;
+		if (current.whitelist == null && current.blacklist.size() == 0) {
+			return -1;
+		}
+
+		int responseCode = -1;
+
+		if (current.whitelist != null && current.whitelist.firstMatch(url) == -1) {
+			responseCode = current.whitelistResponseCode;
+		}
+
+		int blacklisted = current.blacklist.firstMatch(url);
+		if (blacklisted != -1) {
+			responseCode = current.blacklistResponseCodes[blacklisted];
+		}
+
+		return responseCode;
+	}
+
+	/**
+	 * The rules compiled at one point in time.
+	 */
+	private class Snapshot {
+
+		/** The rewrites. */
+		private final UrlPatternSet rewrites;
+
+		/** The replacements. */
+		private final String[] replacements;
+
+		/** The blacklist. */
+		private final UrlPatternSet blacklist;
+
+		/** The blacklist response codes. */
+		private final int[] blacklistResponseCodes;
+
+		/** The whitelist. */
+		private final UrlPatternSet whitelist;
+
+		/** The whitelist response code. */
+		private final int whitelistResponseCode;
+
+		/**
+		 * Compiles the current rules. Must be called holding the lock on the
+		 * enclosing rules.
+		 */
+		private Snapshot() {
+			rewrites = new UrlPatternSet(rewriteMatches);
+			replacements = rewriteReplacements
+					.toArray(new String[rewriteReplacements.size()]);
+
+			blacklist = new UrlPatternSet(blacklistPatterns);
+			blacklistResponseCodes = new int[UrlRules.this.blacklistResponseCodes
+					.size()];
+			for (int i = 0; i < blacklistResponseCodes.length; i++) {
+				blacklistResponseCodes[i] = UrlRules.this.blacklistResponseCodes
+						.get(i);
+			}
+
+			whitelist = whitelistPatterns != null ? new UrlPatternSet(
+					whitelistPatterns) : null;
+			whitelistResponseCode = UrlRules.this.whitelistResponseCode;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import org.browsermob.proxy.util.AhoCorasick;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Looks for verification texts in a response body as it is copied. The bytes
+ * written are decoded a buffer at a time and fed through an Aho-Corasick
+ * automaton, so any number of texts are checked in a single pass over a body
+ * of any size, in constant memory, without the body ever being held as a
+ * String. A character sequence split across writes is decoded correctly. Once
+ * every text has been seen the rest of the body is skipped.
+ */
+public class VerificationMatcher extends OutputStream {
+
+	/** The size of the decoding buffers. */
+	private static final int BUFFER = 4096;
+
+	/** The texts. */
+	private final List<String> texts;
+
+	/** The automaton over the texts. */
+	private final AhoCorasick automaton;
+
+	/** The decoder. */
+	private final CharsetDecoder decoder;
+
+	/** The bytes waiting to be decoded. */
+	private final ByteBuffer in = ByteBuffer.allocate(BUFFER);
+
+	/** The decoded characters. */
+	private final CharBuffer out = CharBuffer.allocate(BUFFER);
+
+	/** The texts seen so far. */
+	private final BitSet found = new BitSet();
+
+	/** The state of the automaton. */
+	private int state = AhoCorasick.START;
+
+	/** Whether the stream was closed. */
+	private boolean closed;
+
+	/**
+	 * Instantiates a new verification matcher.
+	 * 
+	 * @param texts
+	 *            the texts that must all be found
+	 * @param charset
+	 *            the charset of the body, UTF-8 if it is null or unknown
+	 */
+	public VerificationMatcher(Collection<String> texts, String charset) {
+		this.texts = new ArrayList<String>(texts);
+		this.automaton = new AhoCorasick(this.texts);
+		this.decoder = charset(charset).newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		// the empty string is in every body
+		for (int hit : automaton.matches(state)) {
+			found.set(hit);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.OutputStream#write(int)
+	 */
+	@Override
+	public void write(int b) {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) {
+		while (len > 0 && !isMatched()) {
+			int count = Math.min(len, in.remaining());
+			in.put(b, off, count);
+			off += count;
+			len -= count;
+
+			in.flip();
+			decode(false);
+			in.compact();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.OutputStream#close()
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		// whatever is left is an incomplete character, decoded as a
+		// replacement
+		in.flip();
+		decode(true);
+		decoder.flush(out);
+		scan();
+	}
+
+	/**
+	 * Checks whether every text has been found.
+	 * 
+	 * @return true, if matched
+	 */
+	public boolean isMatched() {
+		return found.cardinality() == texts.size();
+	}
+
+	/**
+	 * Gets the texts that have not been found.
+	 * 
+	 * @return the unmatched texts
+	 */
+	public List<String> getUnmatched() {
+		List<String> unmatched = new ArrayList<String>();
+		for (int i = found.nextClearBit(0); i < texts.size(); i = found
+				.nextClearBit(i + 1)) {
+			unmatched.add(texts.get(i));
+		}
+
+		return unmatched;
+	}
+
+	/**
+	 * Decodes the waiting bytes and scans the characters.
+	 * 
+	 * @param endOfInput
+	 *            whether no more bytes will follow
+	 */
+	private void decode(boolean endOfInput) {
+		CoderResult result;
+		do {
+			result = decoder.decode(in, out, endOfInput);
+			scan();
+		} while (result.isOverflow());
+	}
+
+	/**
+	 * Feeds the decoded characters through the automaton.
+	 */
+	private void scan() {
+		out.flip();
+		while (out.hasRemaining()) {
+			state = automaton.next(state, out.get());
+			for (int hit : automaton.matches(state)) {
+				found.set(hit);
+			}
+		}
+		out.clear();
+	}
+
+	/**
+	 * Looks up a charset.
+	 * 
+	 * @param name
+	 *            the name
+	 * @return the charset, UTF-8 if the name is null or unknown
+	 */
+	private static Charset charset(String name) {
+		if (name != null) {
+			try {
+				return Charset.forName(name);
+			} catch (Exception e) {
+				// fall back to UTF-8
+			}
+		}
+
+		return Charset.forName("UTF-8");
+	}
+}
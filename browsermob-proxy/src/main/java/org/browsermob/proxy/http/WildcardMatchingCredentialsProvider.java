@@ -53,6 +53,15 @@ public class WildcardMatchingCredentialsProvider implements CredentialsProvider
 		return null;
 	}
 
+	/**
+	 * Checks if any credentials are set.
+	 * 
+	 * @return true, if there are credentials
+	 */
+	public synchronized boolean hasCredentials() {
+		return !credMap.isEmpty();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -346,6 +346,18 @@ public class SslListener extends SocketListener {
 	 *             the exception
 	 */
 	protected SSLServerSocketFactory createFactory() throws Exception {
+		return createContext().getServerSocketFactory();
+	}
+
+	/* ------------------------------------------------------------ */
+	/**
+	 * Creates the SSL context from the keystore.
+	 * 
+	 * @return the SSL context
+	 * @throws Exception
+	 *             the exception
+	 */
+	protected SSLContext createContext() throws Exception {
 		SSLContext context;
 		if (_provider == null) {
 			context = SSLContext.getInstance(_protocol);
@@ -363,7 +375,7 @@ public class SslListener extends SocketListener {
 		context.init(keyManagerFactory.getKeyManagers(), null,
 				new java.security.SecureRandom());
 
-		return context.getServerSocketFactory();
+		return context;
 	}
 
 	/* ------------------------------------------------------------ */
@@ -7,9 +7,12 @@ import org.bouncycastle.asn1.DEREncodableVector;
 import org.bouncycastle.asn1.DERObjectIdentifier;
 import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.asn1.x509.KeyUsage;
 import org.bouncycastle.asn1.x509.X509Extensions;
 import org.bouncycastle.jce.X509Principal;
+import org.bouncycastle.util.IPAddress;
 import org.bouncycastle.x509.X509V3CertificateGenerator;
 import org.bouncycastle.x509.extension.AuthorityKeyIdentifierStructure;
 import org.bouncycastle.x509.extension.SubjectKeyIdentifierStructure;
@@ -19,6 +22,7 @@ import java.math.BigInteger;
 import java.security.*;
 import java.security.cert.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 // TODO: Auto-generated Javadoc
 /**
@@ -42,16 +46,30 @@ public class CertificateCreator {
 	/** The Constant clientCertDefaultOidsNotToCopy. */
 	private static final HashSet<String> clientCertDefaultOidsNotToCopy = new HashSet<String>();
 
+	/** The serial number of the next server certificate. */
+	private static final AtomicLong nextSerialNumber = new AtomicLong(
+			System.currentTimeMillis());
+
 	/**
 	 * The default key generation algorithm for this package is RSA.
 	 */
 	public static final String KEYGEN_ALGO = "RSA";
 
 	/**
-	 * The default sign algorithm for this package is SHA1 with RSA.
+	 * The sign algorithm certificates used to be signed with. They are now
+	 * signed with SHA-256 and the algorithm of the signing key.
+	 * 
+	 * @deprecated see {@link #getSignatureAlgorithm(PrivateKey)}
 	 */
+	@Deprecated
 	public static final String SIGN_ALGO = "SHA1withRSA";
 
+	/** The sign algorithm for RSA signing keys. */
+	public static final String SIGN_ALGO_RSA = "SHA256withRSA";
+
+	/** The sign algorithm for elliptic curve signing keys. */
+	public static final String SIGN_ALGO_EC = "SHA256withECDSA";
+
 	/**
 	 * X.509 OID for Subject Key Identifier Extension - Replaced when
 	 * duplicating a cert.
@@ -138,7 +156,6 @@ public class CertificateCreator {
 	 * @throws NoSuchProviderException
 	 *             the no such provider exception
 	 */
-	@SuppressWarnings({ "deprecation", "unused" })
 	public static X509Certificate generateStdSSLServerCertificate(
 			final PublicKey newPubKey, final X509Certificate caCert,
 			final PrivateKey caPrivateKey, final String subject)
@@ -146,10 +163,57 @@ public class CertificateCreator {
 			InvalidKeyException, CertificateExpiredException,
 			CertificateNotYetValidException, CertificateException,
 			NoSuchAlgorithmException, NoSuchProviderException {
+		return generateStdSSLServerCertificate(newPubKey, caCert,
+				caPrivateKey, subject, null);
+	}
+
+	/**
+	 * Like generateStdSSLServerCertificate(PublicKey, X509Certificate,
+	 * PrivateKey, String), with the hostname as subject alternative name.
+	 * Browsers that ignore the common name of the subject match the host
+	 * against it.
+	 * 
+	 * @param newPubKey
+	 *            the new pub key
+	 * @param caCert
+	 *            the ca cert
+	 * @param caPrivateKey
+	 *            the ca private key
+	 * @param subject
+	 *            the subject
+	 * @param hostname
+	 *            the hostname or IP address, null for none
+	 * @return the x509 certificate
+	 * @throws CertificateParsingException
+	 *             the certificate parsing exception
+	 * @throws SignatureException
+	 *             the signature exception
+	 * @throws InvalidKeyException
+	 *             the invalid key exception
+	 * @throws CertificateExpiredException
+	 *             the certificate expired exception
+	 * @throws CertificateNotYetValidException
+	 *             the certificate not yet valid exception
+	 * @throws CertificateException
+	 *             the certificate exception
+	 * @throws NoSuchAlgorithmException
+	 *             the no such algorithm exception
+	 * @throws NoSuchProviderException
+	 *             the no such provider exception
+	 */
+	@SuppressWarnings({ "deprecation", "unused" })
+	public static X509Certificate generateStdSSLServerCertificate(
+			final PublicKey newPubKey, final X509Certificate caCert,
+			final PrivateKey caPrivateKey, final String subject,
+			final String hostname) throws CertificateParsingException,
+			SignatureException, InvalidKeyException,
+			CertificateExpiredException, CertificateNotYetValidException,
+			CertificateException, NoSuchAlgorithmException,
+			NoSuchProviderException {
 		X509V3CertificateGenerator v3CertGen = new X509V3CertificateGenerator();
 
 		v3CertGen.setSubjectDN(new X500Principal(subject));
-		v3CertGen.setSignatureAlgorithm(CertificateCreator.SIGN_ALGO);
+		v3CertGen.setSignatureAlgorithm(getSignatureAlgorithm(caPrivateKey));
 		v3CertGen.setPublicKey(newPubKey);
 		v3CertGen.setNotAfter(new Date(System.currentTimeMillis() + 30L * 60
 				* 60 * 24 * 30 * 12));
@@ -160,9 +224,10 @@ public class CertificateCreator {
 		// Firefox actually tracks serial numbers within a CA and refuses to
 		// validate if it sees duplicates
 		// This is not a secure serial number generator, (duh!) but it's good
-		// enough for our purposes.
-		v3CertGen.setSerialNumber(new BigInteger(Long.toString(System
-				.currentTimeMillis())));
+		// enough for our purposes. It counts up from the time the class was
+		// loaded, as certificates may be issued in the same millisecond.
+		v3CertGen.setSerialNumber(BigInteger.valueOf(nextSerialNumber
+				.getAndIncrement()));
 
 		v3CertGen.addExtension(X509Extensions.BasicConstraints, true,
 				new BasicConstraints(false));
@@ -195,6 +260,11 @@ public class CertificateCreator {
 		v3CertGen.addExtension(X509Extensions.ExtendedKeyUsage, false,
 				new DERSequence(typicalSSLServerExtendedKeyUsages));
 
+		if (hostname != null) {
+			v3CertGen.addExtension(X509Extensions.SubjectAlternativeName,
+					false, new GeneralNames(getGeneralName(hostname)));
+		}
+
 		// Disabled by default. Left in comments in case this is desired.
 		//
 		// v3CertGen.addExtension(
@@ -285,18 +355,8 @@ public class CertificateCreator {
 		X509V3CertificateGenerator v3CertGen = new X509V3CertificateGenerator();
 
 		v3CertGen.setSubjectDN(originalCert.getSubjectX500Principal());
-		v3CertGen.setSignatureAlgorithm(CertificateCreator.SIGN_ALGO); // needs
-																		// to be
-																		// the
-																		// same
-																		// as
-																		// the
-																		// signing
-																		// cert,
-																		// not
-																		// the
-																		// copied
-																		// cert
+		// needs to be the same as the signing cert, not the copied cert
+		v3CertGen.setSignatureAlgorithm(getSignatureAlgorithm(caPrivateKey));
 		v3CertGen.setPublicKey(newPubKey);
 		v3CertGen.setNotAfter(originalCert.getNotAfter());
 		v3CertGen.setNotBefore(originalCert.getNotBefore());
@@ -432,7 +492,8 @@ public class CertificateCreator {
 
 		// Set signature algorithm & public key
 		v3CertGen.setPublicKey(keyPair.getPublic());
-		v3CertGen.setSignatureAlgorithm(CertificateCreator.SIGN_ALGO);
+		v3CertGen.setSignatureAlgorithm(getSignatureAlgorithm(keyPair
+				.getPrivate()));
 
 		// Add typical extensions for signing cert
 		v3CertGen.addExtension(X509Extensions.SubjectKeyIdentifier, false,
@@ -465,4 +526,39 @@ public class CertificateCreator {
 		return cert;
 	}
 
+	/**
+	 * Gets the algorithm to sign certificates with a key with.
+	 * 
+	 * @param signingKey
+	 *            the signing key
+	 * @return SHA-256 with ECDSA for elliptic curve keys, with RSA otherwise
+	 */
+	public static String getSignatureAlgorithm(PrivateKey signingKey) {
+		String algorithm = signingKey.getAlgorithm();
+		if ("EC".equals(algorithm) || "ECDSA".equals(algorithm)) {
+			return SIGN_ALGO_EC;
+		}
+		return SIGN_ALGO_RSA;
+	}
+
+	/**
+	 * Gets the subject alternative name for a host. Anything that isn't a
+	 * valid IPv4 or IPv6 address, such as 1.2.3, is taken for a name.
+	 * 
+	 * @param hostname
+	 *            the hostname or IP address, IPv6 addresses with or without
+	 *            the brackets of a URL
+	 * @return the general name
+	 */
+	private static GeneralName getGeneralName(String hostname) {
+		String host = hostname;
+		if (host.startsWith("[") && host.endsWith("]")) {
+			host = host.substring(1, host.length() - 1);
+		}
+
+		if (IPAddress.isValid(host)) {
+			return new GeneralName(GeneralName.iPAddress, host);
+		}
+		return new GeneralName(GeneralName.dNSName, hostname);
+	}
 }
@@ -0,0 +1,156 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.selenium;
+
+import org.apache.commons.logging.Log;
+import org.browsermob.proxy.jetty.log.LogFactory;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SecureRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Key pairs of one algorithm and size generated ahead of time. A thread of
+ * low priority keeps the pool topped up, so that issuing a certificate
+ * usually only has to sign it. When the pool has run dry, a key pair is
+ * generated on the spot.
+ */
+public class KeyPairPool {
+
+	/** The log. */
+	static Log log = LogFactory.getLog(KeyPairPool.class);
+
+	/** The algorithm. */
+	private final String algorithm;
+
+	/** The key size. */
+	private final int keySize;
+
+	/** The source of randomness. */
+	private final SecureRandom random;
+
+	/** The most key pairs kept ready. */
+	private final int size;
+
+	/** The key pairs ready to be taken. */
+	private final BlockingQueue<KeyPair> ready;
+
+	/** Whether the pool is being topped up. */
+	private final AtomicBoolean filling = new AtomicBoolean();
+
+	/** The thread topping up the pool, which goes away when idle. */
+	private final ThreadPoolExecutor filler;
+
+	/**
+	 * Instantiates a new key pair pool and starts filling it.
+	 * 
+	 * @param algorithm
+	 *            the algorithm
+	 * @param keySize
+	 *            the key size
+	 * @param random
+	 *            the source of randomness
+	 * @param size
+	 *            the most key pairs to keep ready, 0 for none
+	 */
+	public KeyPairPool(final String algorithm, int keySize,
+			SecureRandom random, int size) {
+		this.algorithm = algorithm;
+		this.keySize = keySize;
+		this.random = random;
+		this.size = size;
+		this.ready = new ArrayBlockingQueue<KeyPair>(Math.max(size, 1));
+
+		filler = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "key-pair-pool-"
+								+ algorithm);
+						thread.setDaemon(true);
+						thread.setPriority(Thread.MIN_PRIORITY);
+						return thread;
+					}
+				});
+		filler.allowCoreThreadTimeOut(true);
+
+		fill();
+	}
+
+	/**
+	 * Takes a key pair from the pool, or generates one if none is ready.
+	 * 
+	 * @return the key pair
+	 */
+	public KeyPair take() {
+		KeyPair kp = ready.poll();
+		if (kp == null) {
+			kp = generate();
+		}
+
+		fill();
+		return kp;
+	}
+
+	/**
+	 * Gets the number of key pairs ready.
+	 * 
+	 * @return the number available
+	 */
+	public int available() {
+		return ready.size();
+	}
+
+	/**
+	 * Tops up the pool in the background, unless that is already happening.
+	 */
+	private void fill() {
+		if (size == 0 || ready.remainingCapacity() == 0
+				|| !filling.compareAndSet(false, true)) {
+			return;
+		}
+
+		filler.execute(new Runnable() {
+			public void run() {
+				try {
+					while (ready.remainingCapacity() > 0) {
+						ready.offer(generate());
+					}
+				} catch (RuntimeException e) {
+					log.warn("Unable to generate " + algorithm + " key pairs",
+							e);
+					filling.set(false);
+					return;
+				}
+
+				filling.set(false);
+				// a key pair may have been taken after the loop ended
+				fill();
+			}
+		});
+	}
+
+	/**
+	 * Generates a key pair. Each call gets its own generator, so callers
+	 * don't wait on each other.
+	 * 
+	 * @return the key pair
+	 */
+	private KeyPair generate() {
+		try {
+			KeyPairGenerator kpg = KeyPairGenerator.getInstance(algorithm);
+			kpg.initialize(keySize, random);
+			return kpg.generateKeyPair();
+		} catch (GeneralSecurityException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
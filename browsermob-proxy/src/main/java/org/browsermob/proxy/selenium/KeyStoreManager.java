@@ -104,6 +104,18 @@ public class KeyStoreManager {
 	/** The _sr. */
 	private SecureRandom _sr;
 
+	/** The key pairs of each type kept ready by default. */
+	public static final int DEFAULT_KEY_PAIR_POOL_SIZE = 32;
+
+	/** The key pairs of each type to keep ready. */
+	private final int _keyPairPoolSize;
+
+	/** The RSA key pairs generated ahead of time. */
+	private final KeyPairPool _rsaKeyPairs;
+
+	/** The EC key pairs generated ahead of time, once first asked for. */
+	private volatile KeyPairPool _ecKeyPairs;
+
 	/** The persist immediately. */
 	private boolean persistImmediately = true;
 
@@ -116,13 +128,30 @@ public class KeyStoreManager {
 	 * @param root
 	 *            the root
 	 */
-	@SuppressWarnings("unchecked")
 	public KeyStoreManager(File root) {
+		this(root, DEFAULT_KEY_PAIR_POOL_SIZE);
+	}
+
+	/**
+	 * Instantiates a new key store manager that keeps key pairs ready. EC key
+	 * pairs are only generated ahead of time once one has been asked for.
+	 * 
+	 * @param root
+	 *            the root
+	 * @param keyPairPoolSize
+	 *            the key pairs of each type to generate ahead of time, 0 for
+	 *            none
+	 */
+	@SuppressWarnings("unchecked")
+	public KeyStoreManager(File root, int keyPairPoolSize) {
 		this.root = root;
 
 		Security.insertProviderAt(new BouncyCastleProvider(), 2);
 
 		_sr = new SecureRandom();
+		_keyPairPoolSize = keyPairPoolSize;
+		_rsaKeyPairs = new KeyPairPool(KeyType.RSA.getAlgorithm(),
+				KeyType.RSA.getKeySize(), _sr, keyPairPoolSize);
 
 		try {
 			_rsaKpg = KeyPairGenerator.getInstance(RSA_KEYGEN_ALGO);
@@ -650,7 +679,8 @@ public class KeyStoreManager {
 
 			X509Certificate newCert = CertificateCreator
 					.generateStdSSLServerCertificate(kp.getPublic(),
-							getSigningCert(), getSigningPrivateKey(), subject);
+							getSigningCert(), getSigningPrivateKey(), subject,
+							hostname);
 
 			addCertAndPrivateKey(hostname, newCert, kp.getPrivate());
 
@@ -669,6 +699,75 @@ public class KeyStoreManager {
 
 	}
 
+	/**
+	 * Issues a "standard" SSL server certificate for a hostname with a new key
+	 * pair, like getMappedCertificateForHostname(), but neither is stored in
+	 * the keystore or remembered, so this needs no lock and never writes to
+	 * disk. It is meant for callers that keep the certificates themselves.
+	 * 
+	 * @param hostname
+	 *            the hostname
+	 * @return the private key entry, with the CA certificate in its chain
+	 * @throws GeneralSecurityException
+	 *             the general security exception
+	 */
+	public KeyStore.PrivateKeyEntry createCertificateForHostname(
+			String hostname) throws GeneralSecurityException {
+		return createCertificateForHostname(hostname, KeyType.RSA);
+	}
+
+	/**
+	 * Like createCertificateForHostname(String), with a key of the given
+	 * type. The certificate is signed with SHA-256 whatever the type.
+	 * 
+	 * @param hostname
+	 *            the hostname
+	 * @param keyType
+	 *            the key type
+	 * @return the private key entry, with the CA certificate in its chain
+	 * @throws GeneralSecurityException
+	 *             the general security exception
+	 */
+	public KeyStore.PrivateKeyEntry createCertificateForHostname(
+			String hostname, KeyType keyType) throws GeneralSecurityException {
+		KeyPair kp = getKeyPairPool(keyType).take();
+
+		X509Certificate caCert = getSigningCert();
+		X509Certificate newCert = CertificateCreator
+				.generateStdSSLServerCertificate(kp.getPublic(), caCert,
+						getSigningPrivateKey(),
+						getSubjectForHostname(hostname), hostname);
+
+		return new KeyStore.PrivateKeyEntry(kp.getPrivate(),
+				new java.security.cert.Certificate[] { newCert, caCert });
+	}
+
+	/**
+	 * Gets the pool of key pairs of a type, creating it the first time.
+	 * 
+	 * @param keyType
+	 *            the key type
+	 * @return the key pair pool
+	 */
+	private KeyPairPool getKeyPairPool(KeyType keyType) {
+		if (keyType == KeyType.RSA) {
+			return _rsaKeyPairs;
+		}
+
+		KeyPairPool pool = _ecKeyPairs;
+		if (pool == null) {
+			synchronized (_rsaKeyPairs) {
+				pool = _ecKeyPairs;
+				if (pool == null) {
+					pool = new KeyPairPool(keyType.getAlgorithm(),
+							keyType.getKeySize(), _sr, _keyPairPoolSize);
+					_ecKeyPairs = pool;
+				}
+			}
+		}
+		return pool;
+	}
+
 	/**
 	 * Gets the subject for hostname.
 	 * 
@@ -750,12 +849,12 @@ public class KeyStoreManager {
 	}
 
 	/**
-	 * Generate an RSA Key Pair.
+	 * Generate an RSA Key Pair, or take one generated ahead of time.
 	 * 
 	 * @return the rSA key pair
 	 */
 	public KeyPair getRSAKeyPair() {
-		KeyPair kp = _rsaKpg.generateKeyPair();
+		KeyPair kp = _rsaKeyPairs.take();
 		rememberKeyPair(kp);
 		return kp;
 
@@ -0,0 +1,59 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.selenium;
+
+/**
+ * The type of key in the certificates the proxy issues for the hosts it
+ * intercepts TLS for.
+ */
+public enum KeyType {
+
+	/** 1024 bit RSA keys, which every client supports. */
+	RSA("RSA", 1024),
+
+	/**
+	 * Elliptic curve keys on P-256. They take a fraction of the time of RSA
+	 * keys to generate and make handshakes cheaper on both ends, but the JVM
+	 * running the proxy needs ECDSA support in its TLS, which came with
+	 * Java 7.
+	 */
+	EC("EC", 256);
+
+	/** The key pair generator algorithm. */
+	private final String algorithm;
+
+	/** The key size. */
+	private final int keySize;
+
+	/**
+	 * Instantiates a new key type.
+	 * 
+	 * @param algorithm
+	 *            the key pair generator algorithm
+	 * @param keySize
+	 *            the key size
+	 */
+	private KeyType(String algorithm, int keySize) {
+		this.algorithm = algorithm;
+		this.keySize = keySize;
+	}
+
+	/**
+	 * Gets the key pair generator algorithm.
+	 * 
+	 * @return the algorithm
+	 */
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Gets the key size.
+	 * 
+	 * @return the key size
+	 */
+	public int getKeySize() {
+		return keySize;
+	}
+}
@@ -9,14 +9,22 @@ import org.browsermob.proxy.jetty.util.IO;
 import org.browsermob.proxy.jetty.util.InetAddrPort;
 import org.browsermob.proxy.jetty.util.StringMap;
 import org.browsermob.proxy.jetty.util.URI;
-import org.browsermob.proxy.util.ResourceExtractor;
 import org.browsermob.proxy.util.TrustEverythingSSLTrustManager;
 
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLHandshakeException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,8 +62,17 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 	/** The _chained. */
 	private transient boolean _chained = false;
 
-	/** The _ssl map. */
-	private final Map<String, SslRelay> _sslMap = new LinkedHashMap<String, SslRelay>();
+	/** The relays kept by default. */
+	public static final int DEFAULT_MAX_SSL_RELAYS = 1000;
+
+	/**
+	 * The _ssl map. A relay is set up once per host and port, by the first
+	 * CONNECT for it; later ones wait for that without holding up others.
+	 */
+	private final ConcurrentMap<String, Future<SslRelay>> _sslMap = new ConcurrentHashMap<String, Future<SslRelay>>();
+
+	/** The most relays kept before the longest idle ones are dropped. */
+	private volatile int maxSslRelays = DEFAULT_MAX_SSL_RELAYS;
 
 	/** The ssl keystore path. */
 	@SuppressWarnings("unused")
@@ -82,6 +99,9 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 	/** The fake certs generated. */
 	private boolean fakeCertsGenerated;
 
+	/** The type of key in the certificates issued for intercepted hosts. */
+	private volatile KeyType certificateKeyType = KeyType.RSA;
+
 	// see docs for the lock object on SeleniumServer for information on this
 	// and why it is IMPORTANT!
 	/** The shutdown lock. */
@@ -624,36 +644,20 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 				SslRelay listener = getSslRelayOrCreateNew(uri, addrPort,
 						server);
 
-				int port = listener.getPort();
-
-				// Get the timeout
-				int timeoutMs = 30000;
 				Object maybesocket = http_connection.getConnection();
 				if (maybesocket instanceof Socket) {
-					Socket s = (Socket) maybesocket;
-					timeoutMs = s.getSoTimeout();
-				}
-
-				// Create the tunnel
-				HttpTunnel tunnel = newHttpTunnel(request, response,
-						InetAddress.getByName(null), port, timeoutMs);
-
-				if (tunnel != null) {
-					// TODO - need to setup semi-busy loop for IE.
-					if (_tunnelTimeoutMs > 0) {
-						tunnel.getSocket().setSoTimeout(_tunnelTimeoutMs);
-						if (maybesocket instanceof Socket) {
-							Socket s = (Socket) maybesocket;
-							s.setSoTimeout(_tunnelTimeoutMs);
-						}
-					}
-					tunnel.setTimeoutMs(timeoutMs);
-
+					Socket socket = (Socket) maybesocket;
 					customizeConnection(pathInContext, pathParams, request,
-							tunnel.getSocket());
-					request.getHttpConnection().setHttpTunnel(tunnel);
+							socket);
+
+					// once the 200 has gone out the relay takes over the
+					// socket, terminates TLS on it and serves the decrypted
+					// requests on this thread
+					http_connection.setHttpTunnel(listener.newTunnel(socket));
 					response.setStatus(HttpResponse.__200_OK);
 					response.setContentLength(0);
+				} else {
+					response.sendError(HttpResponse.__400_Bad_Request);
 				}
 				request.setHandled(true);
 			}
@@ -665,7 +669,10 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 	}
 
 	/**
-	 * Gets the ssl relay or create new.
+	 * Gets the ssl relay or create new. The relay is created once, by the
+	 * first caller for a host and port, while callers for other hosts go
+	 * ahead and those for hosts with a relay don't wait at all. If creating it
+	 * fails, the next caller tries again.
 	 * 
 	 * @param uri
 	 *            the uri
@@ -677,45 +684,192 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 	 * @throws Exception
 	 *             the exception
 	 */
-	protected SslRelay getSslRelayOrCreateNew(URI uri, InetAddrPort addrPort,
+	protected SslRelay getSslRelayOrCreateNew(final URI uri,
+			final InetAddrPort addrPort, final HttpServer server)
+			throws Exception {
+		String key = uri.toString();
+		Future<SslRelay> future = _sslMap.get(key);
+		if (future == null) {
+			FutureTask<SslRelay> task = new FutureTask<SslRelay>(
+					new Callable<SslRelay>() {
+						public SslRelay call() throws Exception {
+							return createSslRelay(uri, addrPort, server);
+						}
+					});
+			future = _sslMap.putIfAbsent(key, task);
+			if (future == null) {
+				future = task;
+				task.run();
+				evictIdleSslRelays();
+			}
+		}
+
+		try {
+			SslRelay listener = future.get();
+			listener.lastUsed = System.currentTimeMillis();
+			return listener;
+		} catch (ExecutionException e) {
+			_sslMap.remove(key, future);
+			if (e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Creates and starts the relay for a host and port.
+	 * 
+	 * @param uri
+	 *            the uri
+	 * @param addrPort
+	 *            the addr port
+	 * @param server
+	 *            the server
+	 * @return the ssl relay
+	 * @throws Exception
+	 *             the exception
+	 */
+	protected SslRelay createSslRelay(URI uri, InetAddrPort addrPort,
 			HttpServer server) throws Exception {
-		SslRelay listener;
-		synchronized (_sslMap) {
-			listener = _sslMap.get(uri.toString());
-			if (listener == null) {
-				// we do this because the URI above doesn't actually have the
-				// host broken up (it returns null on getHost())
-				String host = new URL("https://" + uri.toString()).getHost();
-
-				listener = new SslRelay(addrPort);
-
-				if (useCyberVillains) {
-					wireUpSslWithCyberVilliansCA(host, listener);
+		// we do this because the URI above doesn't actually have the
+		// host broken up (it returns null on getHost())
+		String host = new URL("https://" + uri.toString()).getHost();
+
+		SslRelay listener = new SslRelay(addrPort);
+
+		if (useCyberVillains) {
+			wireUpSslWithCyberVilliansCA(host, listener);
+		} else {
+			wireUpSslWithRemoteService(host, listener);
+		}
+
+		listener.setPassword("password");
+		listener.setKeyPassword("password");
+		listener.setHttpServer(server);
+
+		synchronized (shutdownLock) {
+			try {
+				if (server.isStarted()) {
+					listener.start();
 				} else {
-					wireUpSslWithRemoteService(host, listener);
+					throw new RuntimeException(
+							"Can't start SslRelay: server is not started (perhaps it was just shut down?)");
 				}
+			} catch (Exception e) {
+				e.printStackTrace();
+				throw e;
+			}
+		}
+		return listener;
+	}
 
-				listener.setPassword("password");
-				listener.setKeyPassword("password");
-				server.addListener(listener);
+	/**
+	 * Drops the relays idle the longest while there are more than the most
+	 * kept. They aren't stopped, so connections still using them carry on,
+	 * and the next CONNECT to their host sets up a new one.
+	 */
+	private void evictIdleSslRelays() {
+		while (_sslMap.size() > maxSslRelays) {
+			String idlest = null;
+			long idlestLastUsed = Long.MAX_VALUE;
+			for (Map.Entry<String, Future<SslRelay>> entry : _sslMap
+					.entrySet()) {
+				SslRelay relay = getIfCreated(entry.getValue());
+				if (relay != null && relay.lastUsed < idlestLastUsed) {
+					idlest = entry.getKey();
+					idlestLastUsed = relay.lastUsed;
+				}
+			}
 
-				synchronized (shutdownLock) {
-					try {
-						if (server.isStarted()) {
-							listener.start();
-						} else {
-							throw new RuntimeException(
-									"Can't start SslRelay: server is not started (perhaps it was just shut down?)");
-						}
-					} catch (Exception e) {
-						e.printStackTrace();
-						throw e;
-					}
+			if (idlest == null) {
+				// all of them are still being set up
+				return;
+			}
+			_sslMap.remove(idlest);
+		}
+	}
+
+	/**
+	 * Gets the relays that have been set up.
+	 * 
+	 * @return the ssl relays
+	 */
+	protected List<SslRelay> getSslRelays() {
+		List<SslRelay> relays = new ArrayList<SslRelay>();
+		for (Future<SslRelay> future : _sslMap.values()) {
+			SslRelay relay = getIfCreated(future);
+			if (relay != null) {
+				relays.add(relay);
+			}
+		}
+		return relays;
+	}
+
+	/**
+	 * Stops and drops all relays. The next CONNECT to a host sets up a new
+	 * one.
+	 */
+	protected void stopSslRelays() {
+		for (String key : _sslMap.keySet()) {
+			Future<SslRelay> future = _sslMap.remove(key);
+			SslRelay relay = future != null ? getIfCreated(future) : null;
+			if (relay != null) {
+				try {
+					relay.stop();
+				} catch (InterruptedException e) {
+					log.log(Level.WARNING, "Unable to stop SslRelay", e);
 				}
-				_sslMap.put(uri.toString(), listener);
 			}
 		}
-		return listener;
+	}
+
+	/**
+	 * Gets the relay of a future if it has been created.
+	 * 
+	 * @param future
+	 *            the future
+	 * @return the relay, null if it is being set up or failed
+	 */
+	private static SslRelay getIfCreated(Future<SslRelay> future) {
+		if (!future.isDone()) {
+			return null;
+		}
+		try {
+			return future.get();
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the number of relays, including those being set up.
+	 * 
+	 * @return the ssl relay count
+	 */
+	public int getSslRelayCount() {
+		return _sslMap.size();
+	}
+
+	/**
+	 * Gets the most relays kept.
+	 * 
+	 * @return the max ssl relays
+	 */
+	public int getMaxSslRelays() {
+		return maxSslRelays;
+	}
+
+	/**
+	 * Sets the most relays kept. When a new host takes the count over it, the
+	 * relays idle the longest are dropped.
+	 * 
+	 * @param maxSslRelays
+	 *            the new max ssl relays
+	 */
+	public void setMaxSslRelays(int maxSslRelays) {
+		this.maxSslRelays = maxSslRelays;
+		evictIdleSslRelays();
 	}
 
 	/**
@@ -767,65 +921,15 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 	 *            the listener
 	 */
 	protected void wireUpSslWithCyberVilliansCA(String host, SslRelay listener) {
-		try {
-			File root = File.createTempFile("seleniumSslSupport", host);
-			root.delete();
-			root.mkdirs();
-
-			ResourceExtractor.extractResourcePath(getClass(), "/sslSupport",
-					root);
-
-			KeyStoreManager mgr = new KeyStoreManager(root);
-			mgr.getCertificateByHostname(host);
-			mgr.getKeyStore().deleteEntry(KeyStoreManager._caPrivKeyAlias);
-			mgr.persist();
-
-			listener.setKeystore(new File(root, "cybervillainsCA.jks")
-					.getAbsolutePath());
-			listener.setNukeDirOrFile(root);
-		} catch (Exception e) {
-			throw new RuntimeException(e);
-		}
-	}
-
-	/* ------------------------------------------------------------ */
-	/**
-	 * New http tunnel.
-	 * 
-	 * @param request
-	 *            the request
-	 * @param response
-	 *            the response
-	 * @param iaddr
-	 *            the iaddr
-	 * @param port
-	 *            the port
-	 * @param timeoutMS
-	 *            the timeout ms
-	 * @return the http tunnel
-	 * @throws IOException
-	 *             Signals that an I/O exception has occurred.
-	 */
-	protected HttpTunnel newHttpTunnel(HttpRequest request,
-			HttpResponse response, InetAddress iaddr, int port, int timeoutMS)
-			throws IOException {
-		try {
-			Socket socket = new Socket(iaddr, port);
-			socket.setSoTimeout(timeoutMS);
-			socket.setTcpNoDelay(true);
-			return new HttpTunnel(socket, null, null);
-		} catch (IOException e) {
-			log.log(Level.FINE, "Exception thrown", e);
-			response.sendError(HttpResponse.__400_Bad_Request);
-			return null;
-		}
+		listener.setSslContext(SslContextCache.getInstance().getContext(host,
+				certificateKeyType));
 	}
 
 	/* ------------------------------------------------------------ */
 
 	/**
 	 * Customize proxy Socket connection for CONNECT. Method to allow derived
-	 * handlers to customize the tunnel sockets.
+	 * handlers to customize the client sockets that TLS is intercepted on.
 	 * 
 	 * @param pathInContext
 	 *            the path in context
@@ -1006,6 +1110,27 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 		this.sslKeystorePath = sslKeystorePath;
 	}
 
+	/**
+	 * Gets the certificate key type.
+	 * 
+	 * @return the type of key in the certificates issued for intercepted
+	 *         hosts
+	 */
+	public KeyType getCertificateKeyType() {
+		return certificateKeyType;
+	}
+
+	/**
+	 * Sets the type of key in the certificates issued for intercepted hosts.
+	 * Hosts already intercepted keep the certificate they have.
+	 * 
+	 * @param certificateKeyType
+	 *            the new certificate key type
+	 */
+	public void setCertificateKeyType(KeyType certificateKeyType) {
+		this.certificateKeyType = certificateKeyType;
+	}
+
 	/**
 	 * Sets the shutdown lock.
 	 * 
@@ -1018,7 +1143,11 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 	}
 
 	/**
-	 * The Class SslRelay.
+	 * The Class SslRelay. Intercepts TLS for one CONNECT host and port. It
+	 * doesn't listen on a port of its own: the handshake is done on the socket
+	 * the browser sent the CONNECT on, with a certificate for the host, and
+	 * the decrypted requests are handed to the server like those of any other
+	 * listener.
 	 */
 	public static class SslRelay extends SslListener {
 
@@ -1028,6 +1157,18 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 		/** The nuke dir or file. */
 		File nukeDirOrFile;
 
+		/** The socket factory, set up from the keystore on start. */
+		private volatile SSLSocketFactory socketFactory;
+
+		/** The SSL context, if not loaded from the keystore. */
+		private SSLContext sslContext;
+
+		/** The started. */
+		private volatile boolean started;
+
+		/** When a CONNECT last got this relay. */
+		private volatile long lastUsed = System.currentTimeMillis();
+
 		/**
 		 * Instantiates a new ssl relay.
 		 * 
@@ -1048,6 +1189,28 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 			this.nukeDirOrFile = nukeDirOrFile;
 		}
 
+		/**
+		 * Sets the SSL context to intercept TLS with instead of loading one
+		 * from the keystore.
+		 * 
+		 * @param sslContext
+		 *            the new SSL context
+		 */
+		public void setSslContext(SSLContext sslContext) {
+			this.sslContext = sslContext;
+		}
+
+		/**
+		 * Creates the tunnel that intercepts TLS on the socket of a CONNECT.
+		 * 
+		 * @param socket
+		 *            the socket
+		 * @return the http tunnel
+		 */
+		public HttpTunnel newTunnel(Socket socket) {
+			return new Interception(socket);
+		}
+
 		/*
 		 * (non-Javadoc)
 		 * 
@@ -1073,20 +1236,115 @@ public class SeleniumProxyHandler extends AbstractHttpHandler {
 					+ _addr.getPort() + uri.toString()));
 		}
 
+		/**
+		 * Loads the keystore, which isn't needed on disk afterwards, unless an
+		 * SSL context has been set. No server socket is opened.
+		 * 
+		 * @throws Exception
+		 *             the exception
+		 */
+		public void start() throws Exception {
+			if (socketFactory == null) {
+				SSLContext context = sslContext != null ? sslContext
+						: createContext();
+				socketFactory = context.getSocketFactory();
+				nuke();
+			}
+			started = true;
+		}
+
 		/*
 		 * (non-Javadoc)
 		 * 
 		 * @see org.browsermob.proxy.jetty.http.SocketListener#stop()
 		 */
 		public void stop() throws InterruptedException {
-			super.stop();
+			started = false;
+			nuke();
+		}
 
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see org.browsermob.proxy.jetty.util.ThreadPool#isStarted()
+		 */
+		public boolean isStarted() {
+			HttpServer server = getHttpServer();
+			return started && server != null && server.isStarted();
+		}
+
+		/**
+		 * Deletes the keystore.
+		 */
+		private void nuke() {
 			if (nukeDirOrFile != null) {
 				if (nukeDirOrFile.isDirectory()) {
 					LauncherUtils.recursivelyDeleteDir(nukeDirOrFile);
 				} else {
 					nukeDirOrFile.delete();
 				}
+				nukeDirOrFile = null;
+			}
+		}
+
+		/**
+		 * Does the server side of the TLS handshake on the socket of a CONNECT
+		 * and then handles the connection like an accepted one.
+		 */
+		private class Interception extends HttpTunnel {
+
+			/** The socket. */
+			private final Socket socket;
+
+			/**
+			 * Instantiates a new interception.
+			 * 
+			 * @param socket
+			 *            the socket
+			 */
+			private Interception(Socket socket) {
+				this.socket = socket;
+			}
+
+			/*
+			 * (non-Javadoc)
+			 * 
+			 * @see
+			 * org.browsermob.proxy.jetty.http.HttpTunnel#handle(java.io.
+			 * InputStream, java.io.OutputStream)
+			 */
+			public void handle(InputStream in, OutputStream out) {
+				Socket connection = socket;
+				try {
+					if (!isStarted()) {
+						return;
+					}
+
+					SSLSocket sslSocket = (SSLSocket) socketFactory
+							.createSocket(socket, _addr.getHost(),
+									_addr.getPort(), true);
+					connection = sslSocket;
+					sslSocket.setUseClientMode(false);
+					String[] cipherSuites = getCipherSuites();
+					if (cipherSuites != null && cipherSuites.length > 0) {
+						sslSocket.setEnabledCipherSuites(cipherSuites);
+					}
+					if (getMaxIdleTimeMs() > 0) {
+						sslSocket.setSoTimeout(getMaxIdleTimeMs());
+					}
+					sslSocket.startHandshake();
+
+					handleConnection(sslSocket);
+				} catch (IOException e) {
+					log.log(Level.FINE, "Could not intercept TLS for " + _addr,
+							e);
+				} finally {
+					try {
+						connection.close();
+					} catch (IOException e) {
+						log.log(Level.FINE, "Exception thrown", e);
+					}
+				}
 			}
 		}
 	}
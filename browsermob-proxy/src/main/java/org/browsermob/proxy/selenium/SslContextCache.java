@@ -0,0 +1,215 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.selenium;
+
+import org.browsermob.proxy.util.ResourceExtractor;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.io.IOException;
+import java.security.KeyStore;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The SSL contexts the proxy intercepts TLS with, one per host, with
+ * certificates issued by the Cybervillains CA. The CA is loaded once per
+ * process and kept in memory, and the contexts of the hosts used most
+ * recently are kept, so a host seen before needs no new key pair or
+ * certificate and nothing is read from or written to disk for a new one.
+ */
+public class SslContextCache {
+
+	/** The most contexts the shared cache keeps. */
+	private static final int MAX_CONTEXTS = 1000;
+
+	/** The password of the in-memory keystores. */
+	private static final char[] PASSWORD = "password".toCharArray();
+
+	/** The shared cache. */
+	private static SslContextCache instance;
+
+	/** Whether the shared cache is being loaded in the background. */
+	private static boolean prewarming;
+
+	/** The CA. */
+	private final KeyStoreManager keyStoreManager;
+
+	/** The contexts by key type and host, least recently used first. */
+	private final Map<String, SSLContext> contexts;
+
+	/**
+	 * Instantiates a new SSL context cache.
+	 * 
+	 * @param keyStoreManager
+	 *            the CA
+	 * @param maxContexts
+	 *            the most contexts to keep
+	 */
+	SslContextCache(KeyStoreManager keyStoreManager, final int maxContexts) {
+		this.keyStoreManager = keyStoreManager;
+		this.contexts = new LinkedHashMap<String, SSLContext>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, SSLContext> eldest) {
+				return size() > maxContexts;
+			}
+		};
+	}
+
+	/**
+	 * Gets the cache shared by all proxies, loading the CA if that hasn't
+	 * happened yet.
+	 * 
+	 * @return the shared cache
+	 */
+	public static synchronized SslContextCache getInstance() {
+		if (instance == null) {
+			instance = new SslContextCache(loadCertificateAuthority(),
+					MAX_CONTEXTS);
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Loads the shared cache in the background, so that the first CONNECT
+	 * doesn't have to wait for the CA.
+	 */
+	public static void prewarm() {
+		synchronized (SslContextCache.class) {
+			if (instance != null || prewarming) {
+				return;
+			}
+			prewarming = true;
+		}
+
+		Thread thread = new Thread(new Runnable() {
+			public void run() {
+				getInstance();
+			}
+		}, "ssl-context-cache-prewarm");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Gets the context with an RSA key for a host, creating it if the host
+	 * hasn't been seen or its context has been evicted.
+	 * 
+	 * @param hostname
+	 *            the hostname
+	 * @return the SSL context
+	 */
+	public SSLContext getContext(String hostname) {
+		return getContext(hostname, KeyType.RSA);
+	}
+
+	/**
+	 * Gets the context with a key of the given type for a host, creating it
+	 * if the host hasn't been seen with that type or its context has been
+	 * evicted.
+	 * 
+	 * @param hostname
+	 *            the hostname
+	 * @param keyType
+	 *            the key type
+	 * @return the SSL context
+	 */
+	public SSLContext getContext(String hostname, KeyType keyType) {
+		String key = keyType + " " + hostname;
+		SSLContext context;
+		synchronized (this) {
+			context = contexts.get(key);
+		}
+		if (context != null) {
+			return context;
+		}
+
+		// the key pair is generated outside the lock, so hosts don't wait on
+		// each other
+		context = createContext(hostname, keyType);
+
+		synchronized (this) {
+			SSLContext raced = contexts.get(key);
+			if (raced != null) {
+				return raced;
+			}
+			contexts.put(key, context);
+		}
+		return context;
+	}
+
+	/**
+	 * Gets the number of contexts kept.
+	 * 
+	 * @return the size
+	 */
+	public synchronized int size() {
+		return contexts.size();
+	}
+
+	/**
+	 * Creates a context with a new certificate for a host.
+	 * 
+	 * @param hostname
+	 *            the hostname
+	 * @param keyType
+	 *            the key type
+	 * @return the SSL context
+	 */
+	private SSLContext createContext(String hostname, KeyType keyType) {
+		try {
+			KeyStore keyStore = KeyStore.getInstance("JKS");
+			keyStore.load(null, PASSWORD);
+			keyStore.setEntry(hostname,
+					keyStoreManager.createCertificateForHostname(hostname,
+							keyType),
+					new KeyStore.PasswordProtection(PASSWORD));
+
+			KeyManagerFactory keyManagerFactory = KeyManagerFactory
+					.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+			keyManagerFactory.init(keyStore, PASSWORD);
+
+			SSLContext context = SSLContext.getInstance("TLS");
+			context.init(keyManagerFactory.getKeyManagers(), null, null);
+			return context;
+		} catch (Exception e) {
+			throw new RuntimeException("Unable to create an SSL context for "
+					+ hostname, e);
+		}
+	}
+
+	/**
+	 * Loads the CA from the classpath. The keystore manager reads it from a
+	 * directory, so it is extracted to a temporary one that is deleted again
+	 * once loaded.
+	 * 
+	 * @return the key store manager
+	 */
+	private static KeyStoreManager loadCertificateAuthority() {
+		File root = null;
+		try {
+			root = File.createTempFile("seleniumSslSupport", "ca");
+			root.delete();
+			root.mkdirs();
+
+			ResourceExtractor.extractResourcePath(SslContextCache.class,
+					"/sslSupport", root);
+
+			KeyStoreManager mgr = new KeyStoreManager(root);
+			mgr.setPersistImmediately(false);
+			return mgr;
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			if (root != null) {
+				LauncherUtils.recursivelyDeleteDir(root);
+			}
+		}
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.util;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton over a list of words. Text is fed to it one
+ * character at a time, in a single pass and without looking back, and each
+ * state tells which words end at the current character. The automaton itself
+ * is immutable and can be shared between threads; the state is just an int
+ * kept by whoever is scanning, starting at {@link #START}.
+ */
+public class AhoCorasick {
+
+	/** The state scanning starts in. */
+	public static final int START = 0;
+
+	/** The transition characters of each state, sorted. */
+	private final char[][] keys;
+
+	/** The target states matching the keys. */
+	private final int[][] targets;
+
+	/** The failure link of each state. */
+	private final int[] fail;
+
+	/** The words ending at each state. */
+	private final int[][] outputs;
+
+	/**
+	 * Builds the automaton.
+	 * 
+	 * @param words
+	 *            the words, identified by their index in the list
+	 */
+	public AhoCorasick(List<String> words) {
+		List<Map<Character, Integer>> children = new ArrayList<Map<Character, Integer>>();
+		List<List<Integer>> output = new ArrayList<List<Integer>>();
+		children.add(new TreeMap<Character, Integer>());
+		output.add(new ArrayList<Integer>());
+
+		for (int i = 0; i < words.size(); i++) {
+			String word = words.get(i);
+			int state = START;
+			for (int j = 0; j < word.length(); j++) {
+				Integer next = children.get(state).get(word.charAt(j));
+				if (next == null) {
+					next = children.size();
+					children.get(state).put(word.charAt(j), next);
+					children.add(new TreeMap<Character, Integer>());
+					output.add(new ArrayList<Integer>());
+				}
+				state = next;
+			}
+			output.get(state).add(i);
+		}
+
+		int states = children.size();
+		keys = new char[states][];
+		targets = new int[states][];
+		fail = new int[states];
+		outputs = new int[states][];
+
+		for (int state = 0; state < states; state++) {
+			Map<Character, Integer> map = children.get(state);
+			keys[state] = new char[map.size()];
+			targets[state] = new int[map.size()];
+			int k = 0;
+			for (Map.Entry<Character, Integer> entry : map.entrySet()) {
+				keys[state][k] = entry.getKey();
+				targets[state][k] = entry.getValue();
+				k++;
+			}
+		}
+
+		// breadth first, so the failure state of a parent is known before
+		// its children are linked, and its outputs already merged
+		Queue<Integer> queue = new LinkedList<Integer>();
+		outputs[START] = toArray(output.get(START));
+		for (int child : targets[START]) {
+			fail[child] = START;
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.remove();
+			List<Integer> merged = output.get(state);
+			for (int hit : outputs[fail[state]]) {
+				merged.add(hit);
+			}
+			outputs[state] = toArray(merged);
+
+			for (int k = 0; k < keys[state].length; k++) {
+				int child = targets[state][k];
+				int f = fail[state];
+				int next;
+				while ((next = transition(f, keys[state][k])) == -1
+						&& f != START) {
+					f = fail[f];
+				}
+				fail[child] = next != -1 ? next : START;
+				queue.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Moves to the state after the next character of the text.
+	 * 
+	 * @param state
+	 *            the current state
+	 * @param c
+	 *            the character
+	 * @return the next state
+	 */
+	public int next(int state, char c) {
+		int next;
+		while ((next = transition(state, c)) == -1 && state != START) {
+			state = fail[state];
+		}
+
+		return next != -1 ? next : START;
+	}
+
+	/**
+	 * Gets the words that end at a state.
+	 * 
+	 * @param state
+	 *            the state
+	 * @return the indexes of the words, not to be modified
+	 */
+	public int[] matches(int state) {
+		return outputs[state];
+	}
+
+	/**
+	 * Follows a transition out of a state.
+	 * 
+	 * @param state
+	 *            the state
+	 * @param c
+	 *            the character
+	 * @return the next state, -1 if there is no transition
+	 */
+	private int transition(int state, char c) {
+		char[] k = keys[state];
+		int low = 0;
+		int high = k.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (k[mid] < c) {
+				low = mid + 1;
+			} else if (k[mid] > c) {
+				high = mid - 1;
+			} else {
+				return targets[state][mid];
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Converts a list of indexes to an array.
+	 * 
+	 * @param list
+	 *            the list
+	 * @return the array
+	 */
+	private static int[] toArray(List<Integer> list) {
+		int[] array = new int[list.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = list.get(i);
+		}
+
+		return array;
+	}
+}
@@ -3,6 +3,9 @@
  */
 package org.browsermob.proxy.util;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 // TODO: Auto-generated Javadoc
 /**
  * The Class Base64.
@@ -21,6 +24,78 @@ public class Base64 {
 		return byteArrayToBase64(a, false);
 	}
 
+	/**
+	 * Translates the bytes of a stream into a Base64 string without reading
+	 * the stream into a byte array first. The stream is not closed.
+	 * 
+	 * @param in
+	 *            the stream
+	 * @param sizeHint
+	 *            the expected number of bytes, used to size the result
+	 * @return the string
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	public static String streamToBase64(InputStream in, long sizeHint)
+			throws IOException {
+		StringBuilder result = new StringBuilder((int) Math.min(
+				4 * ((sizeHint + 2) / 3), Integer.MAX_VALUE));
+		// a multiple of 3 so that only the final read ends in a partial group
+		byte[] buffer = new byte[3 * 1365];
+		int filled = 0;
+		int length;
+		while ((length = in.read(buffer, filled, buffer.length - filled)) != -1) {
+			filled += length;
+			if (filled == buffer.length) {
+				appendGroups(buffer, filled, result);
+				filled = 0;
+			}
+		}
+		appendGroups(buffer, filled, result);
+
+		return result.toString();
+	}
+
+	/**
+	 * Appends the Base64 translation of the first bytes of an array.
+	 * 
+	 * @param a
+	 *            the a
+	 * @param aLen
+	 *            the number of bytes to translate
+	 * @param result
+	 *            the result
+	 */
+	private static void appendGroups(byte[] a, int aLen, StringBuilder result) {
+		int numFullGroups = aLen / 3;
+		int numBytesInPartialGroup = aLen - 3 * numFullGroups;
+
+		int inCursor = 0;
+		for (int i = 0; i < numFullGroups; i++) {
+			int byte0 = a[inCursor++] & 0xff;
+			int byte1 = a[inCursor++] & 0xff;
+			int byte2 = a[inCursor++] & 0xff;
+			result.append(intToBase64[byte0 >> 2]);
+			result.append(intToBase64[(byte0 << 4) & 0x3f | (byte1 >> 4)]);
+			result.append(intToBase64[(byte1 << 2) & 0x3f | (byte2 >> 6)]);
+			result.append(intToBase64[byte2 & 0x3f]);
+		}
+
+		if (numBytesInPartialGroup != 0) {
+			int byte0 = a[inCursor++] & 0xff;
+			result.append(intToBase64[byte0 >> 2]);
+			if (numBytesInPartialGroup == 1) {
+				result.append(intToBase64[(byte0 << 4) & 0x3f]);
+				result.append("==");
+			} else {
+				int byte1 = a[inCursor++] & 0xff;
+				result.append(intToBase64[(byte0 << 4) & 0x3f | (byte1 >> 4)]);
+				result.append(intToBase64[(byte1 << 2) & 0x3f]);
+				result.append('=');
+			}
+		}
+	}
+
 	/**
 	 * Translates the specified byte array into an "alternate representation"
 	 * Base64 string. This non-standard variant uses an alphabet that does not
@@ -0,0 +1,83 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of byte arrays of one size, so that copying a response body doesn't
+ * allocate a new buffer every time. Buffers given back beyond the most the
+ * pool keeps are left to the garbage collector.
+ */
+public class BufferPool {
+
+	/** The buffer size. */
+	private final int bufferSize;
+
+	/** The most buffers kept in the pool. */
+	private final int maxPooled;
+
+	/** The free buffers. */
+	private final Queue<byte[]> pool = new ConcurrentLinkedQueue<byte[]>();
+
+	/** The number of buffers in the pool. */
+	private final AtomicInteger pooled = new AtomicInteger();
+
+	/**
+	 * Instantiates a new buffer pool.
+	 * 
+	 * @param bufferSize
+	 *            the buffer size
+	 * @param maxPooled
+	 *            the most buffers to keep
+	 */
+	public BufferPool(int bufferSize, int maxPooled) {
+		this.bufferSize = bufferSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * Gets the buffer size.
+	 * 
+	 * @return the buffer size
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * Takes a buffer from the pool, or allocates one if the pool is empty.
+	 * 
+	 * @return the buffer
+	 */
+	public byte[] take() {
+		byte[] buffer = pool.poll();
+		if (buffer == null) {
+			return new byte[bufferSize];
+		}
+
+		pooled.decrementAndGet();
+		return buffer;
+	}
+
+	/**
+	 * Gives a buffer back to the pool. It must not be used afterwards.
+	 * 
+	 * @param buffer
+	 *            the buffer
+	 */
+	public void give(byte[] buffer) {
+		if (buffer.length != bufferSize) {
+			return;
+		}
+
+		if (pooled.incrementAndGet() <= maxPooled) {
+			pool.offer(buffer);
+		} else {
+			pooled.decrementAndGet();
+		}
+	}
+}
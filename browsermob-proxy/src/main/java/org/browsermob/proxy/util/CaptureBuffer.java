@@ -0,0 +1,187 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.util;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds a copy of captured content in fixed size chunks taken from a shared
+ * pool. Unlike a ByteArrayOutputStream the buffer never has to grow and copy
+ * what it holds, so the only copy made of the content is the final one into
+ * an array of the exact size.
+ * Bytes beyond the limit given at construction are dropped and the buffer is
+ * marked as truncated. Call {@link #release()} once the content has been
+ * consumed so the chunks can be reused.
+ */
+public class CaptureBuffer extends OutputStream {
+
+	/** The Constant CHUNK_SIZE. */
+	public static final int CHUNK_SIZE = 8192;
+
+	/** The most chunks kept in the pool (8 MB). */
+	private static final int MAX_POOLED_CHUNKS = 1024;
+
+	/** The pool of free chunks. */
+	private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<byte[]>();
+
+	/** The number of chunks in the pool. */
+	private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+	/** The chunks. */
+	private final List<byte[]> chunks = new ArrayList<byte[]>();
+
+	/** The max bytes, -1 for no limit. */
+	private final long maxBytes;
+
+	/** The size. */
+	private long size;
+
+	/** The position in the last chunk. */
+	private int position = CHUNK_SIZE;
+
+	/** The truncated. */
+	private boolean truncated;
+
+	/**
+	 * Instantiates a new capture buffer.
+	 * 
+	 * @param maxBytes
+	 *            the most bytes to keep, -1 for no limit
+	 */
+	public CaptureBuffer(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.OutputStream#write(int)
+	 */
+	@Override
+	public void write(int b) {
+		if (!hasRoom(1)) {
+			return;
+		}
+
+		if (position == CHUNK_SIZE) {
+			nextChunk();
+		}
+		chunks.get(chunks.size() - 1)[position++] = (byte) b;
+		size++;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.io.OutputStream#write(byte[], int, int)
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) {
+		if (maxBytes != -1 && size + len > maxBytes) {
+			truncated = true;
+			len = (int) (maxBytes - size);
+		}
+
+		while (len > 0) {
+			if (position == CHUNK_SIZE) {
+				nextChunk();
+			}
+
+			int count = Math.min(len, CHUNK_SIZE - position);
+			System.arraycopy(b, off, chunks.get(chunks.size() - 1), position,
+					count);
+			position += count;
+			size += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * Gets the size.
+	 * 
+	 * @return the number of bytes held
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Checks if bytes were dropped because of the limit.
+	 * 
+	 * @return true, if is truncated
+	 */
+	public boolean isTruncated() {
+		return truncated;
+	}
+
+	/**
+	 * Copies the bytes held into a single array.
+	 * 
+	 * @return the bytes
+	 */
+	public byte[] toByteArray() {
+		byte[] bytes = new byte[(int) size];
+		int offset = 0;
+		for (byte[] chunk : chunks) {
+			int count = (int) Math.min(CHUNK_SIZE, size - offset);
+			System.arraycopy(chunk, 0, bytes, offset, count);
+			offset += count;
+		}
+
+		return bytes;
+	}
+
+	/**
+	 * Returns the chunks to the pool. The buffer is empty afterwards.
+	 */
+	public void release() {
+		for (byte[] chunk : chunks) {
+			if (POOL_SIZE.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+				POOL.offer(chunk);
+			} else {
+				POOL_SIZE.decrementAndGet();
+			}
+		}
+		chunks.clear();
+		position = CHUNK_SIZE;
+		size = 0;
+	}
+
+	/**
+	 * Checks there is room for more bytes.
+	 * 
+	 * @param len
+	 *            the len
+	 * @return true, if successful
+	 */
+	private boolean hasRoom(int len) {
+		if (maxBytes != -1 && size + len > maxBytes) {
+			truncated = true;
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Takes a chunk from the pool, or allocates one if the pool is empty.
+	 */
+	private void nextChunk() {
+		byte[] chunk = POOL.poll();
+		if (chunk != null) {
+			POOL_SIZE.decrementAndGet();
+		} else {
+			chunk = new byte[CHUNK_SIZE];
+		}
+
+		chunks.add(chunk);
+		position = 0;
+	}
+}
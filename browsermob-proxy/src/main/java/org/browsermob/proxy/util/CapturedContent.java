@@ -0,0 +1,110 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.util;
+
+import org.browsermob.core.har.HarContentSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Response content as it came off the wire, still gzipped if the server sent
+ * it that way. The bytes are only gunzipped and decoded, or Base64 encoded,
+ * when the text is read, so the request thread never pays for it and HARs
+ * that are never downloaded never pay for it at all.
+ */
+public class CapturedContent implements HarContentSource {
+
+	/** The Constant LOG. */
+	private static final Log LOG = new Log();
+
+	/** The bytes. */
+	private final byte[] bytes;
+
+	/** Whether the bytes are gzipped. */
+	private final boolean gzipped;
+
+	/** The charset to decode with, or null to Base64 encode. */
+	private final String charset;
+
+	/**
+	 * Instantiates new captured content.
+	 * 
+	 * @param bytes
+	 *            the bytes
+	 * @param gzipped
+	 *            whether the bytes are gzipped
+	 * @param charset
+	 *            the charset to decode the bytes with, or null for binary
+	 *            content to be Base64 encoded
+	 */
+	public CapturedContent(byte[] bytes, boolean gzipped, String charset) {
+		this.bytes = bytes;
+		this.gzipped = gzipped;
+		this.charset = charset;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.browsermob.core.har.HarContentSource#read()
+	 */
+	@Override
+	public String read() {
+		try {
+			InputStream in = new ByteArrayInputStream(bytes);
+			if (gzipped) {
+				in = new GZIPInputStream(in);
+			}
+
+			if (charset == null) {
+				return Base64.streamToBase64(in, bytes.length);
+			}
+
+			return decode(in, charset, bytes.length);
+		} catch (IOException e) {
+			LOG.warn("Could not decode captured content", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Decodes a stream of text.
+	 * 
+	 * @param in
+	 *            the in
+	 * @param charset
+	 *            the charset, the default charset is used if it is unknown
+	 * @param sizeHint
+	 *            the expected number of bytes
+	 * @return the string
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static String decode(InputStream in, String charset, int sizeHint)
+			throws IOException {
+		Charset cs;
+		try {
+			cs = Charset.forName(charset);
+		} catch (IllegalArgumentException e) {
+			// servers send all sorts of charset names, fall back on the default
+			cs = Charset.defaultCharset();
+		}
+
+		Reader reader = new InputStreamReader(in, cs);
+		StringBuilder sb = new StringBuilder(sizeHint);
+		char[] buffer = new char[4096];
+		int length;
+		while ((length = reader.read(buffer)) != -1) {
+			sb.append(buffer, 0, length);
+		}
+
+		return sb.toString();
+	}
+}
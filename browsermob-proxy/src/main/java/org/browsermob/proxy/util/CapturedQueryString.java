@@ -0,0 +1,83 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.util;
+
+import org.browsermob.core.har.HarNameValuePair;
+import org.browsermob.core.har.HarQueryStringSource;
+import org.eclipse.jetty.util.MultiMap;
+import org.eclipse.jetty.util.UrlEncoded;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The raw query string of a request, decoded into parameters only when they
+ * are read. A query that can't be decoded is read as its raw parameters.
+ */
+public class CapturedQueryString implements HarQueryStringSource {
+
+	/** The raw query. */
+	private final String query;
+
+	/**
+	 * Instantiates a new captured query string.
+	 * 
+	 * @param query
+	 *            the raw query, without the leading '?'
+	 */
+	public CapturedQueryString(String query) {
+		this.query = query;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.browsermob.core.har.HarQueryStringSource#read()
+	 */
+	@Override
+	public List<HarNameValuePair> read() {
+		MultiMap<String> params = new MultiMap<String>();
+		try {
+			UrlEncoded.decodeTo(query, params, "UTF-8");
+		} catch (RuntimeException e) {
+			// a malformed escape or bytes that aren't UTF-8, such as a
+			// Latin-1 %E9, mustn't keep the rest of the har from being
+			// written
+			return rawPairs();
+		}
+
+		List<HarNameValuePair> pairs = new ArrayList<HarNameValuePair>();
+		for (String k : params.keySet()) {
+			for (Object v : params.getValues(k)) {
+				pairs.add(new HarNameValuePair(k, (String) v));
+			}
+		}
+
+		return pairs;
+	}
+
+	/**
+	 * Splits the query into parameters without decoding them.
+	 * 
+	 * @return the parameters, as they were sent
+	 */
+	private List<HarNameValuePair> rawPairs() {
+		List<HarNameValuePair> pairs = new ArrayList<HarNameValuePair>();
+		for (String param : query.split("&")) {
+			if (param.length() == 0) {
+				continue;
+			}
+
+			int eq = param.indexOf('=');
+			if (eq == -1) {
+				pairs.add(new HarNameValuePair(param, ""));
+			} else {
+				pairs.add(new HarNameValuePair(param.substring(0, eq), param
+						.substring(eq + 1)));
+			}
+		}
+
+		return pairs;
+	}
+}
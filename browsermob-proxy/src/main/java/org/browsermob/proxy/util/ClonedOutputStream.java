@@ -18,7 +18,7 @@ public class ClonedOutputStream extends OutputStream {
 	private OutputStream os;
 
 	/** The copy. */
-	private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+	private OutputStream copy;
 
 	/**
 	 * Instantiates a new cloned output stream.
@@ -27,7 +27,21 @@ public class ClonedOutputStream extends OutputStream {
 	 *            the os
 	 */
 	public ClonedOutputStream(OutputStream os) {
+		this(os, new ByteArrayOutputStream());
+	}
+
+	/**
+	 * Instantiates a new cloned output stream writing its copy to the given
+	 * stream.
+	 * 
+	 * @param os
+	 *            the os
+	 * @param copy
+	 *            the copy
+	 */
+	public ClonedOutputStream(OutputStream os, OutputStream copy) {
 		this.os = os;
+		this.copy = copy;
 	}
 
 	/*
@@ -88,9 +102,22 @@ public class ClonedOutputStream extends OutputStream {
 	/**
 	 * Gets the output.
 	 * 
-	 * @return the output
+	 * @return the output, or null if the copy is not a ByteArrayOutputStream
 	 */
 	public ByteArrayOutputStream getOutput() {
+		if (copy instanceof ByteArrayOutputStream) {
+			return (ByteArrayOutputStream) copy;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Gets the copy.
+	 * 
+	 * @return the copy
+	 */
+	public OutputStream getCopy() {
 		return copy;
 	}
 }
@@ -0,0 +1,334 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.util;
+
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A hashed timing wheel. Timeouts are hashed into a ring of buckets by the
+ * tick they expire on, so scheduling and cancelling take constant time no
+ * matter how many timeouts are pending, and each tick only looks at the one
+ * bucket that is due. Tasks run on the wheel's own daemon thread and should
+ * be short. The thread sleeps without ticking while no timeout is pending.
+ */
+public class TimingWheel {
+
+	/** The Constant LOG. */
+	private static final Log LOG = new Log();
+
+	/** The tick duration in nanoseconds. */
+	private final long tickNanos;
+
+	/** The buckets. */
+	private final Bucket[] wheel;
+
+	/** The mask to hash a tick to its bucket. */
+	private final int mask;
+
+	/** Timeouts scheduled but not yet put in their bucket. */
+	private final BlockingQueue<Timeout> scheduled = new LinkedBlockingQueue<Timeout>();
+
+	/** Timeouts cancelled but not yet taken out of their bucket. */
+	private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<Timeout>();
+
+	/** The System.nanoTime() the ticks are counted from. */
+	private final long startTime = System.nanoTime();
+
+	/** The timeouts in the buckets, only touched by the wheel thread. */
+	private int pending;
+
+	/** The next tick to process, only touched by the wheel thread. */
+	private long tick;
+
+	/**
+	 * Instantiates a new timing wheel and starts its thread.
+	 * 
+	 * @param name
+	 *            the name of the thread
+	 * @param tickDuration
+	 *            the tick duration, which is how precisely timeouts fire
+	 * @param unit
+	 *            the unit of the tick duration
+	 * @param ticksPerWheel
+	 *            the number of buckets, rounded up to a power of two
+	 */
+	public TimingWheel(String name, long tickDuration, TimeUnit unit,
+			int ticksPerWheel) {
+		if (unit.toNanos(tickDuration) <= 0) {
+			throw new IllegalArgumentException("Tick duration must be positive");
+		}
+		if (ticksPerWheel < 1 || ticksPerWheel > 1 << 30) {
+			throw new IllegalArgumentException(
+					"Ticks per wheel must be between 1 and 2^30: "
+							+ ticksPerWheel);
+		}
+
+		int size = ticksPerWheel == 1 ? 1
+				: Integer.highestOneBit(ticksPerWheel - 1) << 1;
+		this.tickNanos = unit.toNanos(tickDuration);
+		this.wheel = new Bucket[size];
+		for (int i = 0; i < size; i++) {
+			wheel[i] = new Bucket();
+		}
+		this.mask = size - 1;
+
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (true) {
+					try {
+						turn();
+					} catch (InterruptedException e) {
+						// this is OK
+					} catch (Exception e) {
+						LOG.severe("Unexpected problem in the timing wheel", e);
+					}
+				}
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Schedules a task.
+	 * 
+	 * @param task
+	 *            the task
+	 * @param delay
+	 *            the delay
+	 * @param unit
+	 *            the unit of the delay
+	 * @return the timeout, which can be cancelled
+	 */
+	public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		Timeout timeout = new Timeout(task, System.nanoTime() - startTime
+				+ unit.toNanos(delay));
+		scheduled.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Waits for the next tick and processes it.
+	 * 
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	private void turn() throws InterruptedException {
+		if (pending == 0) {
+			// nothing to tick for, sleep until something is scheduled and
+			// catch the tick count up with the clock
+			Timeout timeout = scheduled.take();
+			scheduled.add(timeout);
+			tick = (System.nanoTime() - startTime) / tickNanos;
+		}
+
+		long deadline = (tick + 1) * tickNanos;
+		long sleep = deadline - (System.nanoTime() - startTime);
+		if (sleep > 0) {
+			TimeUnit.NANOSECONDS.sleep(sleep);
+		}
+
+		removeCancelled();
+		addScheduled();
+		wheel[(int) (tick & mask)].expire(deadline);
+		tick++;
+	}
+
+	/**
+	 * Puts the newly scheduled timeouts in their buckets.
+	 */
+	private void addScheduled() {
+		Timeout timeout;
+		while ((timeout = scheduled.poll()) != null) {
+			if (timeout.state.get() == Timeout.CANCELLED) {
+				continue;
+			}
+
+			// the tick at whose end the deadline has passed
+			long expiry = Math.max((timeout.deadline + tickNanos - 1)
+					/ tickNanos - 1, tick);
+			timeout.remainingRounds = (expiry - tick) / wheel.length;
+			wheel[(int) (expiry & mask)].add(timeout);
+		}
+	}
+
+	/**
+	 * Takes the cancelled timeouts out of their buckets.
+	 */
+	private void removeCancelled() {
+		Timeout timeout;
+		while ((timeout = cancelled.poll()) != null) {
+			if (timeout.bucket != null) {
+				timeout.bucket.remove(timeout);
+			}
+		}
+	}
+
+	/**
+	 * A scheduled task.
+	 */
+	public class Timeout {
+
+		/** The Constant WAITING. */
+		private static final int WAITING = 0;
+
+		/** The Constant CANCELLED. */
+		private static final int CANCELLED = 1;
+
+		/** The Constant EXPIRED. */
+		private static final int EXPIRED = 2;
+
+		/** The task. */
+		private final Runnable task;
+
+		/** The deadline, in nanoseconds after the wheel started. */
+		private final long deadline;
+
+		/** The state. */
+		private final AtomicInteger state = new AtomicInteger(WAITING);
+
+		/** The rounds of the wheel left before the timeout expires. */
+		private long remainingRounds;
+
+		/** The bucket the timeout is in, null if it is in none. */
+		private Bucket bucket;
+
+		/** The next timeout in the bucket. */
+		private Timeout next;
+
+		/** The previous timeout in the bucket. */
+		private Timeout prev;
+
+		/**
+		 * Instantiates a new timeout.
+		 * 
+		 * @param task
+		 *            the task
+		 * @param deadline
+		 *            the deadline
+		 */
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the timeout so that its task will not run.
+		 * 
+		 * @return true, if the task had not run yet
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(WAITING, CANCELLED)) {
+				return false;
+			}
+
+			cancelled.add(this);
+			return true;
+		}
+
+		/**
+		 * Runs the task unless the timeout was cancelled.
+		 */
+		private void expire() {
+			if (!state.compareAndSet(WAITING, EXPIRED)) {
+				return;
+			}
+
+			try {
+				task.run();
+			} catch (Exception e) {
+				LOG.warn("Timeout task failed", e);
+			}
+		}
+	}
+
+	/**
+	 * The timeouts hashed to one slot of the wheel, kept in a doubly linked
+	 * list so that any of them can be removed in constant time. Only touched
+	 * by the wheel thread.
+	 */
+	private class Bucket {
+
+		/** The head. */
+		private Timeout head;
+
+		/** The tail. */
+		private Timeout tail;
+
+		/**
+		 * Adds a timeout.
+		 * 
+		 * @param timeout
+		 *            the timeout
+		 */
+		private void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = timeout;
+				tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+			pending++;
+		}
+
+		/**
+		 * Removes a timeout.
+		 * 
+		 * @param timeout
+		 *            the timeout
+		 * @return the timeout that followed it
+		 */
+		private Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (next != null) {
+				next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				head = next;
+			}
+			if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+			pending--;
+
+			return next;
+		}
+
+		/**
+		 * Runs the timeouts due by the deadline and counts down the rounds of
+		 * the others.
+		 * 
+		 * @param deadline
+		 *            the deadline
+		 */
+		private void expire(long deadline) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+					Timeout next = remove(timeout);
+					timeout.expire();
+					timeout = next;
+				} else {
+					timeout.remainingRounds--;
+					timeout = timeout.next;
+				}
+			}
+		}
+	}
+}
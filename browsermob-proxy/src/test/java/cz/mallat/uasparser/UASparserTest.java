@@ -0,0 +1,226 @@
+/*
+ * 
+ */
+package cz.mallat.uasparser;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The Class UASparserTest.
+ */
+public class UASparserTest {
+
+	/** The googlebot user agent, listed in the robots section. */
+	private static final String GOOGLEBOT = "Googlebot/2.1 (+http://www.google.com/bot.html)";
+
+	/** A firefox user agent, whose os is found by the os regexes. */
+	private static final String FIREFOX = "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:15.0) Gecko/20100101 Firefox/15.0.1";
+
+	/** An android user agent, whose browser has its os mapped. */
+	private static final String ANDROID = "Mozilla/5.0 (Linux; U; Android 4.0.3; en-us) AppleWebKit/534.30 (KHTML, like Gecko) Version/4.0 Mobile Safari/534.30";
+
+	/**
+	 * A small definition file. The parser joins lines with the same key even
+	 * across sections, so no section starts with the key the one before it
+	 * ends with.
+	 */
+	private static final String DEFINITIONS = lines(
+			"; test data",
+			"[robots]",
+			"9[] = \"" + GOOGLEBOT + "\"",
+			"9[] = \"Googlebot\"",
+			"9[] = \"Googlebot/2.1\"",
+			"9[] = \"http://www.google.com/bot.html\"",
+			"9[] = \"Google Inc.\"",
+			"9[] = \"http://www.google.com/\"",
+			"9[] = \"bot_googlebot.png\"",
+			"9[] = \"\"",
+			"9[] = \"/list-of-ua/bot-detail?bot=Googlebot\"",
+			"[os]",
+			"1[] = \"Windows\"",
+			"1[] = \"Windows 7\"",
+			"1[] = \"http://en.wikipedia.org/wiki/Windows_7\"",
+			"1[] = \"Microsoft Corporation.\"",
+			"1[] = \"http://www.microsoft.com/\"",
+			"1[] = \"win-2.png\"",
+			"2[] = \"Android\"",
+			"2[] = \"Android\"",
+			"2[] = \"http://en.wikipedia.org/wiki/Android\"",
+			"2[] = \"Google, Inc.\"",
+			"2[] = \"http://www.google.com/\"",
+			"2[] = \"android.png\"",
+			"[browser]",
+			"1[] = \"0\"",
+			"1[] = \"Firefox\"",
+			"1[] = \"http://www.firefox.com/\"",
+			"1[] = \"Mozilla Foundation\"",
+			"1[] = \"http://www.mozilla.org/\"",
+			"1[] = \"firefox.png\"",
+			"1[] = \"/list-of-ua/browser-detail?browser=Firefox\"",
+			"2[] = \"1\"",
+			"2[] = \"Android Webkit\"",
+			"2[] = \"http://developer.android.com/\"",
+			"2[] = \"Google Inc.\"",
+			"2[] = \"http://www.google.com/\"",
+			"2[] = \"androidWebkit.png\"",
+			"2[] = \"/list-of-ua/browser-detail?browser=Android Webkit\"",
+			"[browser_type]",
+			"0[] = \"Browser\"",
+			"1[] = \"Mobile Browser\"",
+			"[browser_reg]",
+			"2[] = \"/android.*applewebkit/si\"",
+			"2[] = \"2\"",
+			"3[] = \"/firefox\\/([0-9a-z\\+\\-\\.]+).*/si\"",
+			"3[] = \"1\"",
+			"[browser_os]",
+			"2[] = \"2\"",
+			"[os_reg]",
+			"1[] = \"/windows nt 6\\.1/si\"",
+			"1[] = \"1\"");
+
+	/**
+	 * Test that a user agent in the robots section is a robot.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testRobot() throws Exception {
+		UserAgentInfo info = parser().parse(GOOGLEBOT);
+
+		Assert.assertEquals("Robot", info.getTyp());
+		Assert.assertEquals("Googlebot", info.getUaFamily());
+		Assert.assertEquals("Googlebot/2.1", info.getUaName());
+		Assert.assertEquals("Google Inc.", info.getUaCompany());
+		Assert.assertEquals(UASparser.INFO_URL
+				+ "/list-of-ua/bot-detail?bot=Googlebot", info.getUaInfoUrl());
+	}
+
+	/**
+	 * Test that a browser regex match sets the browser, its type and the
+	 * version from the first group, and that the os is then found by the os
+	 * regexes.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testBrowserAndOsRegex() throws Exception {
+		UserAgentInfo info = parser().parse(FIREFOX);
+
+		Assert.assertEquals("Browser", info.getTyp());
+		Assert.assertEquals("Firefox", info.getUaFamily());
+		Assert.assertEquals("Firefox 15.0.1", info.getUaName());
+		Assert.assertEquals("Mozilla Foundation", info.getUaCompany());
+		Assert.assertEquals("Windows", info.getOsFamily());
+		Assert.assertEquals("Windows 7", info.getOsName());
+	}
+
+	/**
+	 * Test that the os mapped to a browser is used, rather than the os
+	 * regexes.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testBrowserOs() throws Exception {
+		UserAgentInfo info = parser().parse(ANDROID);
+
+		Assert.assertEquals("Mobile Browser", info.getTyp());
+		Assert.assertEquals("Android Webkit", info.getUaFamily());
+		Assert.assertEquals("Android Webkit", info.getUaName());
+		Assert.assertEquals("Android", info.getOsFamily());
+		Assert.assertEquals("http://en.wikipedia.org/wiki/Android",
+				info.getOsUrl());
+	}
+
+	/**
+	 * Test that a user agent matching nothing is unknown.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testUnknown() throws Exception {
+		UserAgentInfo info = parser().parse("curl/7.21.0");
+
+		Assert.assertEquals("unknown", info.getTyp());
+		Assert.assertEquals("unknown", info.getUaName());
+		Assert.assertEquals("unknown", info.getOsName());
+	}
+
+	/**
+	 * Test that loading new data drops the cached results, and keeps the
+	 * sections the new data leaves out.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testReloadReplacesCachedResults() throws Exception {
+		UASparser parser = parser();
+		UserAgentInfo before = parser.parse(FIREFOX);
+		Assert.assertSame(before, parser.parse(FIREFOX));
+
+		parser.loadDataFromFile(stream(lines("[browser]",
+				"1[] = \"0\"",
+				"1[] = \"Iceweasel\"",
+				"1[] = \"http://www.geticeweasel.org/\"",
+				"1[] = \"Debian\"",
+				"1[] = \"http://www.debian.org/\"",
+				"1[] = \"iceweasel.png\"",
+				"1[] = \"/list-of-ua/browser-detail?browser=Iceweasel\"")));
+
+		UserAgentInfo after = parser.parse(FIREFOX);
+		Assert.assertNotSame(before, after);
+		Assert.assertEquals("Firefox 15.0.1", before.getUaName());
+		Assert.assertEquals("Iceweasel 15.0.1", after.getUaName());
+		Assert.assertEquals("Browser", after.getTyp());
+		Assert.assertEquals("Windows 7", after.getOsName());
+	}
+
+	/**
+	 * Creates a parser of the test definitions.
+	 * 
+	 * @return the parser
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static UASparser parser() throws IOException {
+		return new UASparser(stream(DEFINITIONS));
+	}
+
+	/**
+	 * Streams a definition file.
+	 * 
+	 * @param definitions
+	 *            the definitions
+	 * @return the input stream
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static InputStream stream(String definitions) throws IOException {
+		return new ByteArrayInputStream(definitions.getBytes("UTF-8"));
+	}
+
+	/**
+	 * Joins lines.
+	 * 
+	 * @param lines
+	 *            the lines
+	 * @return the text
+	 */
+	private static String lines(String... lines) {
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines) {
+			sb.append(line).append('\n');
+		}
+		return sb.toString();
+	}
+}
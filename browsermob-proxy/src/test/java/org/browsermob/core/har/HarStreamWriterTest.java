@@ -0,0 +1,203 @@
+/*
+ * 
+ */
+package org.browsermob.core.har;
+
+import junit.framework.Assert;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The Class HarStreamWriterTest.
+ */
+public class HarStreamWriterTest {
+
+	/** The mapper. */
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	/** The file. */
+	private File file;
+
+	/** The log. */
+	private HarLog log;
+
+	/** The writer. */
+	private HarStreamWriter writer;
+
+	/**
+	 * Creates the writer.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Before
+	public void createWriter() throws Exception {
+		file = File.createTempFile("har", ".json");
+		log = new HarLog(new HarNameVersion("test", "1.0"));
+		writer = new HarStreamWriter(file, log);
+		log.setStreamWriter(writer);
+	}
+
+	/**
+	 * Deletes the file.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@After
+	public void deleteFile() throws Exception {
+		writer.close();
+		file.delete();
+	}
+
+	/**
+	 * Test that snapshots taken while another thread appends entries are
+	 * valid JSON, with the entries in the order they were added.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testSnapshotWhileAppending() throws Exception {
+		final int count = 500;
+		final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+		Thread appender = new Thread() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < count; i++) {
+						HarEntry entry = new HarEntry("entry-" + i);
+						log.addEntry(entry);
+						log.completeEntry(entry);
+					}
+				} catch (Exception e) {
+					failure.set(e);
+				}
+			}
+		};
+		appender.start();
+
+		int snapshots = 0;
+		int previous = 0;
+		while (appender.isAlive() || snapshots == 0) {
+			JsonNode entries = entriesOf(writer.openSnapshot());
+			Assert.assertTrue(entries.size() >= previous);
+			assertPagerefs(entries, entries.size());
+			previous = entries.size();
+			snapshots++;
+		}
+		appender.join();
+
+		Assert.assertNull(failure.get());
+		assertPagerefs(entriesOf(writer.openSnapshot()), count);
+	}
+
+	/**
+	 * Test that a snapshot taken once entries have been spilled to disk holds
+	 * those entries, followed by the ones still in flight.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testSnapshotAfterSpill() throws Exception {
+		Har har = new Har(log);
+		log.addPage(new HarPage("page"));
+		for (int i = 0; i < 3; i++) {
+			log.addEntry(new HarEntry("entry-" + i));
+		}
+		for (HarEntry entry : writer.getInFlightEntries().subList(0, 2)) {
+			log.completeEntry(entry);
+		}
+
+		Assert.assertEquals(2, writer.getWrittenCount());
+		Assert.assertEquals(1, writer.getInFlightEntries().size());
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		har.writeTo(os);
+		JsonNode root = mapper.readTree(new ByteArrayInputStream(os
+				.toByteArray()));
+		assertPagerefs(root.get("log").get("entries"), 3);
+		Assert.assertEquals("page", root.get("log").get("pages").get(0)
+				.get("id").getTextValue());
+
+		// taking a snapshot leaves the file open for more entries
+		log.completeEntry(writer.getInFlightEntries().get(0));
+		assertPagerefs(entriesOf(har.openStream()), 3);
+		Assert.assertTrue(writer.getInFlightEntries().isEmpty());
+	}
+
+	/**
+	 * Test that closing writes out the entries still in flight, and that an
+	 * entry completing afterwards is not written and stays in memory.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testWriteAfterClose() throws Exception {
+		HarEntry written = new HarEntry("entry-0");
+		log.addEntry(written);
+		log.completeEntry(written);
+		log.addEntry(new HarEntry("entry-1"));
+
+		writer.close();
+		Assert.assertTrue(writer.isClosed());
+		long length = file.length();
+
+		HarEntry late = new HarEntry("entry-2");
+		log.addEntry(late);
+		Assert.assertFalse(writer.write(late));
+
+		Assert.assertEquals(length, file.length());
+		Assert.assertEquals(2, writer.getWrittenCount());
+		Assert.assertEquals(1, writer.getInFlightEntries().size());
+		Assert.assertSame(late, writer.getInFlightEntries().get(0));
+		assertPagerefs(entriesOf(new FileInputStream(file)), 2);
+		assertPagerefs(entriesOf(writer.openSnapshot()), 2);
+	}
+
+	/**
+	 * Parses a HAR document and gets its entries.
+	 * 
+	 * @param in
+	 *            the document, which is closed
+	 * @return the entries
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private JsonNode entriesOf(InputStream in) throws IOException {
+		try {
+			return mapper.readTree(in).get("log").get("entries");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Asserts the entries are entry-0 to entry-(count - 1), in that order.
+	 * 
+	 * @param entries
+	 *            the entries
+	 * @param count
+	 *            the count
+	 */
+	private static void assertPagerefs(JsonNode entries, int count) {
+		Assert.assertEquals(count, entries.size());
+		for (int i = 0; i < count; i++) {
+			Assert.assertEquals("entry-" + i, entries.get(i).get("pageref")
+					.getTextValue());
+		}
+	}
+}
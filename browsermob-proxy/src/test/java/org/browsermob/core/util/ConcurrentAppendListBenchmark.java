@@ -0,0 +1,152 @@
+/*
+ * 
+ */
+package org.browsermob.core.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares appending HAR entries to a CopyOnWriteArrayList, which is what
+ * HarLog used to hold them in, with a ConcurrentAppendList while other threads
+ * take snapshots of the list, the way getHar() and
+ * waitForNetworkTrafficToStop do. Run the main method; the threads simulate
+ * proxy worker threads.
+ */
+public class ConcurrentAppendListBenchmark {
+
+	/** The appends per thread. */
+	private static final int APPENDS_PER_THREAD = 2000;
+
+	/** The snapshot threads. */
+	private static final int SNAPSHOT_THREADS = 2;
+
+	/** Keeps the snapshot loops from being optimized away. */
+	static volatile int sink;
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the arguments
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int[] threadCounts = { 8, 16, 32, 64 };
+
+		// warm up
+		run(new CopyOnWriteArrayList<Object>(), 8);
+		run(new ConcurrentAppendList<Object>(), 8);
+
+		for (int threads : threadCounts) {
+			report("CopyOnWriteArrayList", threads,
+					run(new CopyOnWriteArrayList<Object>(), threads));
+			report("ConcurrentAppendList", threads,
+					run(new ConcurrentAppendList<Object>(), threads));
+		}
+	}
+
+	/**
+	 * Runs one round and returns the elapsed nanoseconds and the number of
+	 * snapshots taken.
+	 * 
+	 * @param list
+	 *            the list
+	 * @param threads
+	 *            the threads
+	 * @return the elapsed time and snapshot count
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	private static long[] run(final List<Object> list, int threads)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch appendersDone = new CountDownLatch(threads);
+		final long[] snapshots = new long[SNAPSHOT_THREADS];
+		final Object entry = new Object();
+
+		for (int t = 0; t < threads; t++) {
+			new Thread() {
+				@Override
+				public void run() {
+					await(start);
+					for (int i = 0; i < APPENDS_PER_THREAD; i++) {
+						list.add(entry);
+					}
+					appendersDone.countDown();
+				}
+			}.start();
+		}
+
+		Thread[] readers = new Thread[SNAPSHOT_THREADS];
+		for (int t = 0; t < SNAPSHOT_THREADS; t++) {
+			final int reader = t;
+			readers[t] = new Thread() {
+				@Override
+				public void run() {
+					await(start);
+					while (appendersDone.getCount() > 0) {
+						int seen = 0;
+						for (Object o : list) {
+							if (o != null) {
+								seen++;
+							}
+						}
+						sink = seen;
+						snapshots[reader]++;
+					}
+				}
+			};
+			readers[t].start();
+		}
+
+		long begin = System.nanoTime();
+		start.countDown();
+		appendersDone.await();
+		long elapsed = System.nanoTime() - begin;
+		for (Thread reader : readers) {
+			reader.join();
+		}
+
+		long totalSnapshots = 0;
+		for (long count : snapshots) {
+			totalSnapshots += count;
+		}
+
+		return new long[] { elapsed, totalSnapshots };
+	}
+
+	/**
+	 * Prints the results of a round.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param threads
+	 *            the threads
+	 * @param result
+	 *            the result
+	 */
+	private static void report(String name, int threads, long[] result) {
+		double seconds = result[0] / 1e9;
+		long appends = (long) threads * APPENDS_PER_THREAD;
+		System.out.println(String.format(
+				"%-22s threads=%-3d appends/s=%,12.0f snapshots/s=%,10.0f",
+				name, threads, appends / seconds, result[1] / seconds));
+	}
+
+	/**
+	 * Await.
+	 * 
+	 * @param latch
+	 *            the latch
+	 */
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
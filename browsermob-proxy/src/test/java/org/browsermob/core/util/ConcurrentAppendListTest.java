@@ -0,0 +1,109 @@
+/*
+ * 
+ */
+package org.browsermob.core.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The Class ConcurrentAppendListTest.
+ */
+public class ConcurrentAppendListTest {
+
+	/**
+	 * Test that elements span segments.
+	 */
+	@Test
+	public void testThatElementsSpanSegments() {
+		List<Integer> list = new ConcurrentAppendList<Integer>();
+		for (int i = 0; i < 10000; i++) {
+			list.add(i);
+		}
+
+		Assert.assertEquals(10000, list.size());
+		for (int i = 0; i < 10000; i++) {
+			Assert.assertEquals(Integer.valueOf(i), list.get(i));
+		}
+	}
+
+	/**
+	 * Test that iterator is a snapshot.
+	 */
+	@Test
+	public void testThatIteratorIsASnapshot() {
+		List<String> list = new ConcurrentAppendList<String>();
+		list.add("a");
+		list.add("b");
+
+		Iterator<String> iterator = list.iterator();
+		list.add("c");
+
+		List<String> seen = new ArrayList<String>();
+		while (iterator.hasNext()) {
+			seen.add(iterator.next());
+		}
+
+		Assert.assertEquals(2, seen.size());
+		Assert.assertEquals(3, list.size());
+	}
+
+	/**
+	 * Test concurrent appends. The workers check what they read themselves,
+	 * so their failures are collected through their futures.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testConcurrentAppends() throws Exception {
+		final List<Integer> list = new ConcurrentAppendList<Integer>();
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		List<Future<Void>> workers = new ArrayList<Future<Void>>();
+		try {
+			for (int t = 0; t < 16; t++) {
+				workers.add(executor.submit(new Callable<Void>() {
+					public Void call() {
+						for (int i = 0; i < 5000; i++) {
+							list.add(i);
+							// reading while others append must never see a
+							// gap
+							Assert.assertNotNull(list.get(list.size() - 1));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> worker : workers) {
+				try {
+					worker.get();
+				} catch (ExecutionException e) {
+					// fails the test with the worker's own assertion
+					if (e.getCause() instanceof Error) {
+						throw (Error) e.getCause();
+					}
+					throw e;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		Assert.assertEquals(16 * 5000, list.size());
+		int count = 0;
+		for (Integer i : list) {
+			Assert.assertNotNull(i);
+			count++;
+		}
+		Assert.assertEquals(16 * 5000, count);
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * 
+ */
+package org.browsermob.proxy;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Asks for basic authorization, and sends a response a shared cache may keep
+ * once it has it.
+ */
+public class AuthServlet extends HttpServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 3950637105318844211L;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * javax.servlet.http.HttpServlet#service(javax.servlet.http.HttpServletRequest
+	 * , javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void service(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String authorization = req.getHeader("Authorization");
+		if (authorization == null) {
+			resp.setHeader("WWW-Authenticate", "Basic realm=\"test\"");
+			resp.setStatus(401);
+			return;
+		}
+
+		resp.setStatus(200);
+		resp.setContentType("text/plain");
+		resp.setHeader("Cache-Control", "public, max-age=60");
+		resp.getWriter().println("Authorization: " + authorization);
+		resp.getWriter().close();
+	}
+}
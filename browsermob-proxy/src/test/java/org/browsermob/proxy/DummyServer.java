@@ -52,6 +52,8 @@ public class DummyServer {
 		addServlet("/jsonrpc/", JsonServlet.class);
 		addServlet("/cookie/", SetCookieServlet.class);
 		addServlet("/echo/", EchoServlet.class);
+		addServlet("/redirect/", RedirectServlet.class);
+		addServlet("/auth/", AuthServlet.class);
 
 		HttpContext context = new HttpContext();
 		context.setContextPath("/");
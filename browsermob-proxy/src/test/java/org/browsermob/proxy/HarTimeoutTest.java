@@ -0,0 +1,143 @@
+/*
+ * 
+ */
+package org.browsermob.proxy;
+
+import junit.framework.Assert;
+import org.apache.http.client.methods.HttpGet;
+import org.browsermob.core.har.Har;
+import org.browsermob.proxy.http.BrowserMobHttpRequest;
+import org.browsermob.proxy.http.RequestInterceptor;
+import org.browsermob.proxy.util.IOUtils;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests that getHar(timeout) waits for the requests in flight, and no
+ * longer than it has to.
+ */
+public class HarTimeoutTest extends DummyServerTest {
+
+	/** Counted down once the request is in the proxy. */
+	private final CountDownLatch requestStarted = new CountDownLatch(1);
+
+	/** Holds the request in the proxy until counted down. */
+	private final CountDownLatch releaseRequest = new CountDownLatch(1);
+
+	/**
+	 * Test that the har is returned as soon as the last active request
+	 * finishes.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatHarIsReturnedWhenLastRequestFinishes()
+			throws Exception {
+		holdRequests();
+		Thread request = requestInBackground();
+		Assert.assertTrue(requestStarted.await(10, TimeUnit.SECONDS));
+
+		releaseLater(300);
+		long begin = System.nanoTime();
+		Har har = proxy.getHar(10000);
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+		Assert.assertTrue("returned after " + millis + " ms", millis >= 250);
+		Assert.assertTrue("returned after " + millis + " ms", millis < 5000);
+		Assert.assertEquals(1, har.getLog().getEntries().size());
+		request.join();
+	}
+
+	/**
+	 * Test that the har is returned once the timeout runs out while a
+	 * request stays open.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatHarIsReturnedOnTimeout() throws Exception {
+		holdRequests();
+		Thread request = requestInBackground();
+		Assert.assertTrue(requestStarted.await(10, TimeUnit.SECONDS));
+
+		try {
+			long begin = System.nanoTime();
+			Har har = proxy.getHar(300);
+			long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+					- begin);
+
+			Assert.assertNotNull(har);
+			Assert.assertTrue("returned after " + millis + " ms",
+					millis >= 300);
+			Assert.assertTrue("returned after " + millis + " ms",
+					millis < 5000);
+		} finally {
+			releaseRequest.countDown();
+			request.join();
+		}
+	}
+
+	/**
+	 * Starts a har and holds every request in the proxy until released.
+	 */
+	private void holdRequests() {
+		proxy.newHar("page");
+		proxy.addRequestInterceptor(new RequestInterceptor() {
+			@Override
+			public void process(BrowserMobHttpRequest request) {
+				requestStarted.countDown();
+				try {
+					releaseRequest.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Makes a request through the proxy on another thread.
+	 * 
+	 * @return the thread
+	 */
+	private Thread requestInBackground() {
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					IOUtils.readFully(client.execute(
+							new HttpGet("http://127.0.0.1:8080/a.txt"))
+							.getEntity().getContent());
+				} catch (Exception e) {
+					// the test fails on the har or the timing
+				}
+			}
+		};
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Releases the held request after a delay.
+	 * 
+	 * @param delayMs
+	 *            the delay
+	 */
+	private void releaseLater(final long delayMs) {
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(delayMs);
+				} catch (InterruptedException e) {
+					// release early
+				}
+				releaseRequest.countDown();
+			}
+		}.start();
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * 
+ */
+package org.browsermob.proxy;
+
+/**
+ * Measures how long it takes to start a proxy. The first start includes
+ * loading the client classes, which used to read and parse the cached
+ * User-Agent database before any proxy could be created. Later starts show the
+ * cost of a proxy on its own. Run the main method in a fresh JVM, with and
+ * without a userAgentString.txt in java.io.tmpdir.
+ */
+public class ProxyServerStartupBenchmark {
+
+	/** The later starts measured. */
+	private static final int STARTS = 20;
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		long begin = System.nanoTime();
+		ProxyServer first = new ProxyServer(0);
+		first.start();
+		long firstStart = System.nanoTime() - begin;
+		first.stop();
+
+		long total = 0;
+		for (int i = 0; i < STARTS; i++) {
+			ProxyServer server = new ProxyServer(0);
+			begin = System.nanoTime();
+			server.start();
+			total += System.nanoTime() - begin;
+			server.stop();
+		}
+
+		System.out.println(String.format("first start: %,.1f ms",
+				firstStart / 1e6));
+		System.out.println(String.format("later starts: %,.1f ms on average",
+				total / 1e6 / STARTS));
+	}
+}
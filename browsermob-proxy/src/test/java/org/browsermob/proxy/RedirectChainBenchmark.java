@@ -0,0 +1,86 @@
+/*
+ * 
+ */
+package org.browsermob.proxy;
+
+import org.browsermob.core.har.Har;
+import org.browsermob.core.har.HarEntry;
+import org.browsermob.core.har.HarLog;
+import org.browsermob.core.har.HarNameVersion;
+import org.browsermob.proxy.http.BrowserMobHttpClient;
+import org.browsermob.proxy.jetty.http.HttpRequest;
+import org.java_bandwidthlimiter.BandwidthLimiter;
+import org.java_bandwidthlimiter.StreamManager;
+
+/**
+ * Measures following a redirect chain shaped like the Mifos login, where the
+ * community app, the login page and the authentication call each redirect
+ * before the home page is served, through a client that follows redirects
+ * and records every hop in a HAR. The chain is served by a local
+ * {@link DummyServer}, so the numbers are mostly the client's own overhead
+ * per hop. Run the main method before and after a change to compare.
+ */
+public class RedirectChainBenchmark {
+
+	/** The port of the dummy server. */
+	private static final int PORT = 8089;
+
+	/** The redirects in the chain. */
+	private static final int HOPS = 3;
+
+	/** The chains followed per round. */
+	private static final int CHAINS = 2000;
+
+	/** The rounds. */
+	private static final int ROUNDS = 5;
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		DummyServer server = new DummyServer(PORT);
+		server.start();
+
+		BrowserMobHttpClient client = new BrowserMobHttpClient(
+				new StreamManager(100 * BandwidthLimiter.OneMbps));
+		String url = "http://127.0.0.1:" + PORT + "/redirect/" + HOPS;
+		try {
+			for (int round = 0; round < ROUNDS; round++) {
+				Har har = new Har(new HarLog(new HarNameVersion("benchmark",
+						"1.0")));
+				client.setHar(har);
+				client.setHarPageRef("login");
+
+				long begin = System.nanoTime();
+				for (int i = 0; i < CHAINS; i++) {
+					client.newGet(url, new HttpRequest()).execute();
+				}
+				long nanos = System.nanoTime() - begin;
+
+				System.out.println(String.format(
+						"%d chains of %d redirects: %,.1f us per chain, %,.1f us per hop, %d har entries",
+						CHAINS, HOPS, nanos / 1e3 / CHAINS, nanos / 1e3
+								/ CHAINS / (HOPS + 1), har.getLog()
+								.getEntries().size()));
+
+				if (round == 0) {
+					for (int i = 0; i <= HOPS; i++) {
+						HarEntry entry = har.getLog().getEntries().get(i);
+						System.out.println(String.format("  %s %d -> %s",
+								entry.getRequest().getUrl(), entry
+										.getResponse().getStatus(), entry
+										.getResponse().getRedirectURL()));
+					}
+				}
+			}
+		} finally {
+			client.shutdown();
+			server.stop();
+		}
+	}
+}
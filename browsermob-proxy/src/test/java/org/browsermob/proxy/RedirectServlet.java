@@ -0,0 +1,44 @@
+/*
+ * 
+ */
+package org.browsermob.proxy;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Answers /redirect/N with a redirect to /redirect/N-1, and /redirect/0 with a
+ * small page, so a request to /redirect/N goes through a chain of N
+ * redirects.
+ */
+public class RedirectServlet extends HttpServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 2785147465204405118L;
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * javax.servlet.http.HttpServlet#service(javax.servlet.http.HttpServletRequest
+	 * , javax.servlet.http.HttpServletResponse)
+	 */
+	@Override
+	protected void service(HttpServletRequest req, HttpServletResponse resp)
+			throws ServletException, IOException {
+		String uri = req.getRequestURI();
+		int hops = Integer.parseInt(uri.substring(uri.lastIndexOf('/') + 1));
+		if (hops > 0) {
+			resp.setStatus(302);
+			resp.setHeader("Location", "/redirect/" + (hops - 1));
+			return;
+		}
+
+		resp.setStatus(200);
+		resp.setContentType("text/html");
+		resp.getWriter().print("<html><body>Welcome to Mifos</body></html>");
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * 
+ */
+package org.browsermob.proxy;
+
+import junit.framework.Assert;
+import org.apache.http.client.methods.HttpGet;
+import org.browsermob.proxy.http.BrowserMobHttpClient;
+import org.browsermob.proxy.http.BrowserMobHttpResponse;
+import org.browsermob.proxy.http.ResponseCache;
+import org.browsermob.proxy.jetty.http.HttpRequest;
+import org.java_bandwidthlimiter.BandwidthLimiter;
+import org.java_bandwidthlimiter.StreamManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that what one client fetched with its auto authorization credentials
+ * is not served from a shared cache to another client.
+ */
+public class SharedCacheAuthTest {
+
+	/** The url, which needs basic authorization. */
+	private static final String URL = "http://127.0.0.1:8080/auth/";
+
+	/** The dummy. */
+	private DummyServer dummy = new DummyServer(8080);
+
+	/** The cache shared by the clients. */
+	private ResponseCache cache = new ResponseCache(1024 * 1024, null, 0);
+
+	/** The client with the credentials. */
+	private BrowserMobHttpClient authorized = newClient();
+
+	/** The client without. */
+	private BrowserMobHttpClient other = newClient();
+
+	/**
+	 * Start server.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Before
+	public void startServer() throws Exception {
+		dummy.start();
+	}
+
+	/**
+	 * Stop server.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@After
+	public void stopServer() throws Exception {
+		authorized.shutdown();
+		other.shutdown();
+		dummy.stop();
+	}
+
+	/**
+	 * Test that a response fetched under autoBasicAuthorization misses for
+	 * another client.
+	 */
+	@Test
+	public void testThatAuthorizedResponseIsNotShared() {
+		authorized.autoBasicAuthorization("127.0.0.1", "user", "secret");
+
+		BrowserMobHttpResponse response = authorized.newGet(URL,
+				new HttpRequest()).execute();
+		Assert.assertEquals(200, response.getRawResponse().getStatusLine()
+				.getStatusCode());
+		Assert.assertNull(cache.get(new HttpGet(URL)));
+
+		response = other.newGet(URL, new HttpRequest()).execute();
+		Assert.assertEquals(401, response.getRawResponse().getStatusLine()
+				.getStatusCode());
+	}
+
+	/**
+	 * New client sharing the cache.
+	 * 
+	 * @return the client
+	 */
+	private BrowserMobHttpClient newClient() {
+		BrowserMobHttpClient client = new BrowserMobHttpClient(
+				new StreamManager(100 * BandwidthLimiter.OneMbps));
+		client.setResponseCache(cache);
+		return client;
+	}
+}
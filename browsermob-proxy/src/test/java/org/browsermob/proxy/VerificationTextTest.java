@@ -0,0 +1,98 @@
+/*
+ * 
+ */
+package org.browsermob.proxy;
+
+import junit.framework.Assert;
+import org.browsermob.core.har.Har;
+import org.browsermob.core.har.HarLog;
+import org.browsermob.core.har.HarNameVersion;
+import org.browsermob.proxy.http.BrowserMobHttpClient;
+import org.browsermob.proxy.http.BrowserMobHttpRequest;
+import org.browsermob.proxy.http.BrowserMobHttpResponse;
+import org.browsermob.proxy.jetty.http.HttpRequest;
+import org.java_bandwidthlimiter.BandwidthLimiter;
+import org.java_bandwidthlimiter.StreamManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that the response body is kept when the body is also matched against
+ * verification texts.
+ */
+public class VerificationTextTest {
+
+	/** The dummy. */
+	private DummyServer dummy = new DummyServer(8080);
+
+	/** The client. */
+	private BrowserMobHttpClient client = new BrowserMobHttpClient(
+			new StreamManager(100 * BandwidthLimiter.OneMbps));
+
+	/**
+	 * Start server.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Before
+	public void startServer() throws Exception {
+		dummy.start();
+	}
+
+	/**
+	 * Stop server.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@After
+	public void stopServer() throws Exception {
+		client.shutdown();
+		dummy.stop();
+	}
+
+	/**
+	 * Test that the body is there with a verification text set.
+	 */
+	@Test
+	public void testBodyWithVerificationText() {
+		BrowserMobHttpResponse response = get("this is");
+
+		Assert.assertTrue(response.isContentMatched());
+		Assert.assertNotNull(response.getBody());
+		Assert.assertTrue(response.getBody().startsWith("this is a.txt"));
+	}
+
+	/**
+	 * Test that the body is there with a verification text set while the
+	 * content is also captured for the har.
+	 */
+	@Test
+	public void testBodyWithVerificationTextAndCapture() {
+		client.setHar(new Har(new HarLog(new HarNameVersion("test", "1.0"))));
+		client.setHarPageRef("page");
+		client.setCaptureContent(true);
+
+		BrowserMobHttpResponse response = get("not in the body");
+
+		Assert.assertFalse(response.isContentMatched());
+		Assert.assertNotNull(response.getBody());
+		Assert.assertTrue(response.getBody().startsWith("this is a.txt"));
+	}
+
+	/**
+	 * Gets a.txt from the dummy server.
+	 * 
+	 * @param verificationText
+	 *            the verification text
+	 * @return the response
+	 */
+	private BrowserMobHttpResponse get(String verificationText) {
+		BrowserMobHttpRequest request = client.newGet(
+				"http://127.0.0.1:8080/a.txt", new HttpRequest());
+		request.setVerificationText(verificationText);
+		return request.execute();
+	}
+}
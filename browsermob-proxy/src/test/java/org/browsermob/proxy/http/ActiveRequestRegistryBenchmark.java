@@ -0,0 +1,234 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares registering and unregistering active requests in a HashSet
+ * guarded by its monitor, which is what BrowserMobHttpClient used to do, with
+ * the lock striped set it uses now, while another thread walks the set the way
+ * abortActiveRequests() does. Run the main method; the threads simulate proxy
+ * worker threads, each adding a request when it starts and removing it when
+ * it finishes.
+ */
+public class ActiveRequestRegistryBenchmark {
+
+	/** The requests per thread. */
+	private static final int REQUESTS_PER_THREAD = 100000;
+
+	/** Keeps the loops from being optimized away. */
+	static volatile int sink;
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the arguments
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int[] threadCounts = { 8, 16, 32, 64, 128 };
+
+		// warm up
+		run(new SynchronizedRegistry(), 8);
+		run(new ConcurrentRegistry(), 8);
+
+		for (int threads : threadCounts) {
+			report("synchronized HashSet", threads,
+					run(new SynchronizedRegistry(), threads));
+			report("concurrent set", threads,
+					run(new ConcurrentRegistry(), threads));
+		}
+	}
+
+	/**
+	 * Runs one round and returns the elapsed nanoseconds.
+	 * 
+	 * @param registry
+	 *            the registry
+	 * @param threads
+	 *            the threads
+	 * @return the elapsed time
+	 * @throws InterruptedException
+	 *             the interrupted exception
+	 */
+	private static long run(final Registry registry, int threads)
+			throws InterruptedException {
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch workersDone = new CountDownLatch(threads);
+
+		for (int t = 0; t < threads; t++) {
+			new Thread() {
+				@Override
+				public void run() {
+					await(start);
+					for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+						Object request = new Object();
+						registry.add(request);
+						registry.remove(request);
+					}
+					workersDone.countDown();
+				}
+			}.start();
+		}
+
+		Thread sweeper = new Thread() {
+			@Override
+			public void run() {
+				await(start);
+				while (workersDone.getCount() > 0) {
+					sink = registry.walk();
+					try {
+						Thread.sleep(1);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		};
+		sweeper.start();
+
+		long begin = System.nanoTime();
+		start.countDown();
+		workersDone.await();
+		long elapsed = System.nanoTime() - begin;
+		sweeper.join();
+
+		return elapsed;
+	}
+
+	/**
+	 * Prints the results of a round.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param threads
+	 *            the threads
+	 * @param elapsed
+	 *            the elapsed nanoseconds
+	 */
+	private static void report(String name, int threads, long elapsed) {
+		double seconds = elapsed / 1e9;
+		long requests = (long) threads * REQUESTS_PER_THREAD;
+		System.out.println(String.format(
+				"%-20s threads=%-3d requests/s=%,14.0f", name, threads,
+				requests / seconds));
+	}
+
+	/**
+	 * Await.
+	 * 
+	 * @param latch
+	 *            the latch
+	 */
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * A registry of active requests.
+	 */
+	private interface Registry {
+
+		/**
+		 * Adds a request.
+		 * 
+		 * @param request
+		 *            the request
+		 */
+		void add(Object request);
+
+		/**
+		 * Removes a request.
+		 * 
+		 * @param request
+		 *            the request
+		 */
+		void remove(Object request);
+
+		/**
+		 * Walks the requests.
+		 * 
+		 * @return the number of requests seen
+		 */
+		int walk();
+	}
+
+	/**
+	 * The old registry.
+	 */
+	private static class SynchronizedRegistry implements Registry {
+
+		/** The requests. */
+		private final Set<Object> requests = new HashSet<Object>();
+
+		@Override
+		public void add(Object request) {
+			synchronized (requests) {
+				requests.add(request);
+			}
+		}
+
+		@Override
+		public void remove(Object request) {
+			synchronized (requests) {
+				requests.remove(request);
+			}
+		}
+
+		@Override
+		public int walk() {
+			int seen = 0;
+			synchronized (requests) {
+				for (Object request : requests) {
+					if (request != null) {
+						seen++;
+					}
+				}
+			}
+			return seen;
+		}
+	}
+
+	/**
+	 * The new registry.
+	 */
+	private static class ConcurrentRegistry implements Registry {
+
+		/** The requests. */
+		private final Set<Object> requests = Collections
+				.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+
+		@Override
+		public void add(Object request) {
+			requests.add(request);
+		}
+
+		@Override
+		public void remove(Object request) {
+			requests.remove(request);
+		}
+
+		@Override
+		public int walk() {
+			int seen = 0;
+			for (Object request : requests) {
+				if (request != null) {
+					seen++;
+				}
+			}
+			return seen;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * The Class CapturePolicyTest.
+ */
+public class CapturePolicyTest {
+
+	/**
+	 * Test that only api json is captured.
+	 */
+	@Test
+	public void testThatOnlyApiJsonIsCaptured() {
+		CapturePolicy policy = new CapturePolicy("/fineract-provider/api",
+				Arrays.asList("application/json"), -1, 1.0);
+
+		Assert.assertTrue(policy.accepts(
+				"https://localhost:8443/fineract-provider/api/v1/clients",
+				"application/json; charset=UTF-8", 1024));
+		Assert.assertFalse(policy.accepts(
+				"https://localhost:8443/fineract-provider/api/v1/clients",
+				"text/html", 1024));
+		Assert.assertFalse(policy.accepts(
+				"https://localhost:8443/community-app/scripts/app.js",
+				"application/json", 1024));
+		Assert.assertFalse(policy.accepts(
+				"https://localhost:8443/fineract-provider/api/v1/clients",
+				null, 1024));
+	}
+
+	/**
+	 * Test that wildcard mime types match.
+	 */
+	@Test
+	public void testThatWildcardMimeTypesMatch() {
+		CapturePolicy policy = new CapturePolicy(null, Arrays.asList("text/*",
+				" image/PNG "), -1, 1.0);
+
+		Assert.assertTrue(policy.accepts("http://a/", "text/css", -1));
+		Assert.assertTrue(policy.accepts("http://a/", "image/png", -1));
+		Assert.assertFalse(policy.accepts("http://a/", "image/gif", -1));
+	}
+
+	/**
+	 * Test that large bodies are skipped.
+	 */
+	@Test
+	public void testThatLargeBodiesAreSkipped() {
+		CapturePolicy policy = new CapturePolicy(null, null, 1000, 1.0);
+
+		Assert.assertTrue(policy.accepts("http://a/", "text/html", 1000));
+		Assert.assertFalse(policy.accepts("http://a/", "text/html", 1001));
+		Assert.assertTrue(policy.accepts("http://a/", "text/html", -1));
+	}
+
+	/**
+	 * Test that a zero sample rate captures nothing.
+	 */
+	@Test
+	public void testThatAZeroSampleRateCapturesNothing() {
+		CapturePolicy policy = new CapturePolicy(null, null, -1, 0);
+
+		for (int i = 0; i < 100; i++) {
+			Assert.assertFalse(policy.accepts("http://a/", "text/html", -1));
+		}
+	}
+
+	/**
+	 * Test text types.
+	 */
+	@Test
+	public void testTextTypes() {
+		Assert.assertTrue(CapturePolicy.isText("text/html; charset=UTF-8"));
+		Assert.assertTrue(CapturePolicy.isText("Application/JSON"));
+		Assert.assertFalse(CapturePolicy.isText("image/png"));
+		Assert.assertFalse(CapturePolicy.isText(null));
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compares copying a response body the way BrowserMobHttpClient used to, with
+ * a new 4 KB buffer per body and a flush after every read, with
+ * {@link BrowserMobHttpClient#copyWithStats(InputStream, OutputStream, long)}
+ * for 10 KB, 1 MB and 100 MB bodies. The body arrives in 16 KB segments, like
+ * reads off a socket, and is written to a stream that buffers 8 KB like the
+ * proxy's jetty output and writes a chunk to /dev/null, one system call each,
+ * whenever it is flushed or full. Run the main method.
+ */
+public class CopyWithStatsBenchmark {
+
+	/** The body sizes. */
+	private static final int[] SIZES = { 10 * 1024, 1024 * 1024,
+			100 * 1024 * 1024 };
+
+	/** The bytes copied per size and round. */
+	private static final long BYTES_PER_ROUND = 200L * 1024 * 1024;
+
+	/** The rounds. */
+	private static final int ROUNDS = 5;
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		ChunkedSink.devNull = new FileOutputStream("/dev/null");
+		for (int size : SIZES) {
+			int bodies = (int) Math.max(BYTES_PER_ROUND / size, 1);
+			for (int round = 0; round < ROUNDS; round++) {
+				ChunkedSink legacy = new ChunkedSink();
+				long legacyNanos = System.nanoTime();
+				for (int i = 0; i < bodies; i++) {
+					legacyCopy(new SegmentedBody(size), legacy);
+				}
+				legacyNanos = System.nanoTime() - legacyNanos;
+
+				ChunkedSink pooled = new ChunkedSink();
+				long pooledNanos = System.nanoTime();
+				for (int i = 0; i < bodies; i++) {
+					BrowserMobHttpClient.copyWithStats(new SegmentedBody(size),
+							pooled, size);
+				}
+				pooledNanos = System.nanoTime() - pooledNanos;
+
+				System.out.println(String.format(
+						"%9d byte bodies x %5d: legacy %7.1f MB/s %8d chunks,"
+								+ " pooled %7.1f MB/s %8d chunks", size,
+						bodies, throughput(size, bodies, legacyNanos),
+						legacy.chunks, throughput(size, bodies, pooledNanos),
+						pooled.chunks));
+			}
+		}
+	}
+
+	/**
+	 * Works out the throughput.
+	 * 
+	 * @param size
+	 *            the size
+	 * @param bodies
+	 *            the bodies
+	 * @param nanos
+	 *            the nanos
+	 * @return the MB per second
+	 */
+	private static double throughput(int size, int bodies, long nanos) {
+		return (double) size * bodies / (1024 * 1024) / (nanos / 1e9);
+	}
+
+	/**
+	 * The copy loop BrowserMobHttpClient used to have.
+	 * 
+	 * @param is
+	 *            the is
+	 * @param os
+	 *            the os
+	 * @return the bytes copied
+	 * @throws IOException
+	 *             Signals that an I/O exception has occurred.
+	 */
+	private static long legacyCopy(InputStream is, OutputStream os)
+			throws IOException {
+		long bytesCopied = 0;
+		byte[] buffer = new byte[4096];
+		int length;
+
+		int firstByte = is.read();
+		if (firstByte == -1) {
+			return 0;
+		}
+		os.write(firstByte);
+		bytesCopied++;
+
+		do {
+			length = is.read(buffer, 0, 4096);
+			if (length != -1) {
+				bytesCopied += length;
+				os.write(buffer, 0, length);
+				os.flush();
+			}
+		} while (length != -1);
+
+		is.close();
+		os.close();
+		return bytesCopied;
+	}
+
+	/**
+	 * A body that arrives in 16 KB segments. Reads never cross a segment and
+	 * available() only counts what is left of the current one.
+	 */
+	private static class SegmentedBody extends InputStream {
+
+		/** The Constant SEGMENT. */
+		private static final int SEGMENT = 16 * 1024;
+
+		/** The bytes left. */
+		private long remaining;
+
+		/** The bytes left in the current segment. */
+		private int segment;
+
+		/**
+		 * Instantiates a new segmented body.
+		 * 
+		 * @param size
+		 *            the size
+		 */
+		private SegmentedBody(long size) {
+			this.remaining = size;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.InputStream#read()
+		 */
+		@Override
+		public int read() {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.InputStream#read(byte[], int, int)
+		 */
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (remaining == 0) {
+				return -1;
+			}
+			if (segment == 0) {
+				segment = (int) Math.min(SEGMENT, remaining);
+			}
+
+			// what is in the buffer doesn't matter, only how much
+			int count = Math.min(len, segment);
+			segment -= count;
+			remaining -= count;
+			return count;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.InputStream#available()
+		 */
+		@Override
+		public int available() {
+			return segment;
+		}
+	}
+
+	/**
+	 * Buffers 8 KB like the jetty output of the proxy and writes a chunk
+	 * whenever it is flushed or full.
+	 */
+	private static class ChunkedSink extends OutputStream {
+
+		/** Where the chunks go. */
+		private static OutputStream devNull;
+
+		/** The buffer. */
+		private final byte[] buffer = new byte[8192];
+
+		/** The bytes in the buffer. */
+		private int count;
+
+		/** The chunks written. */
+		private long chunks;
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.OutputStream#write(int)
+		 */
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buffer.length) {
+				flush();
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.OutputStream#write(byte[], int, int)
+		 */
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (count == buffer.length) {
+					flush();
+				}
+				int n = Math.min(len, buffer.length - count);
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.OutputStream#flush()
+		 */
+		@Override
+		public void flush() throws IOException {
+			if (count > 0) {
+				devNull.write(buffer, 0, count);
+				chunks++;
+				count = 0;
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see java.io.OutputStream#close()
+		 */
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,213 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import junit.framework.Assert;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.browsermob.core.har.HarCache;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+
+/**
+ * The Class ResponseCacheTest.
+ */
+public class ResponseCacheTest {
+
+	/**
+	 * Test that a fresh response is served from the cache.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatFreshResponseIsServed() throws Exception {
+		ResponseCache cache = new ResponseCache(1024 * 1024, null, 0);
+		HttpGet request = new HttpGet("http://example.com/app.js");
+		store(cache, request, "var app = {};", "Cache-Control",
+				"public, max-age=3600");
+
+		ResponseCache.Entry entry = cache.get(new HttpGet(
+				"http://example.com/app.js"));
+		Assert.assertNotNull(entry);
+
+		HarCache har = new HarCache();
+		HttpResponse response = entry.hit(request, har);
+		Assert.assertEquals(200, response.getStatusLine().getStatusCode());
+		Assert.assertEquals("var app = {};",
+				EntityUtils.toString(response.getEntity()));
+		Assert.assertEquals(0, har.getBeforeRequest().getHitCount());
+		Assert.assertEquals(1, har.getAfterRequest().getHitCount());
+
+		Assert.assertNull(cache.get(new HttpGet("http://example.com/other.js")));
+	}
+
+	/**
+	 * Test that responses the origin doesn't allow to be shared are not
+	 * stored.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatUncacheableResponsesAreNotStored() throws Exception {
+		ResponseCache cache = new ResponseCache(1024 * 1024, null, 0);
+		HttpGet request = new HttpGet("http://example.com/a");
+
+		Assert.assertNull(cache.record(request,
+				response("x", "Cache-Control", "private, max-age=3600")));
+		Assert.assertNull(cache.record(request,
+				response("x", "Cache-Control", "no-store")));
+		Assert.assertNull(cache.record(request, response("x")));
+
+		HttpGet authorized = new HttpGet("http://example.com/a");
+		authorized.addHeader("Authorization", "Basic Zm9vOmJhcg==");
+		Assert.assertNull(cache.record(authorized,
+				response("x", "Cache-Control", "max-age=3600")));
+	}
+
+	/**
+	 * Test that a reload or a different varied header goes upstream.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatReloadAndVaryBypassTheCache() throws Exception {
+		ResponseCache cache = new ResponseCache(1024 * 1024, null, 0);
+		HttpGet request = new HttpGet("http://example.com/app.css");
+		request.addHeader("Accept-Encoding", "gzip");
+		store(cache, request, "body {}", "Cache-Control", "max-age=3600",
+				"Vary", "Accept-Encoding");
+
+		HttpGet same = new HttpGet("http://example.com/app.css");
+		same.addHeader("Accept-Encoding", "gzip");
+		Assert.assertNotNull(cache.get(same));
+
+		HttpGet identity = new HttpGet("http://example.com/app.css");
+		Assert.assertNull(cache.get(identity));
+
+		same.addHeader("Cache-Control", "max-age=0");
+		Assert.assertNull(cache.get(same));
+	}
+
+	/**
+	 * Test that a conditional request gets a 304.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatConditionalRequestGetsNotModified() throws Exception {
+		ResponseCache cache = new ResponseCache(1024 * 1024, null, 0);
+		HttpGet request = new HttpGet("http://example.com/logo.png");
+		store(cache, request, "png", "Cache-Control", "max-age=3600", "ETag",
+				"\"v1\"");
+
+		HttpGet conditional = new HttpGet("http://example.com/logo.png");
+		conditional.addHeader("If-None-Match", "\"v1\"");
+		HttpResponse response = cache.get(conditional).hit(conditional,
+				new HarCache());
+		Assert.assertEquals(304, response.getStatusLine().getStatusCode());
+		Assert.assertNull(response.getEntity());
+	}
+
+	/**
+	 * Test that entries pushed out of memory are read back from disk.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatEvictedEntriesAreReadFromDisk() throws Exception {
+		File directory = File.createTempFile("response-cache", "");
+		directory.delete();
+		try {
+			// room for one entry in memory
+			ResponseCache cache = new ResponseCache(800, directory, 1024 * 1024);
+			String body = new String(new char[100]).replace('\0', 'a');
+			HttpGet first = new HttpGet("http://example.com/1.js");
+			store(cache, first, body, "Cache-Control", "max-age=3600");
+			store(cache, new HttpGet("http://example.com/2.js"), body,
+					"Cache-Control", "max-age=3600");
+
+			// the write to disk happens in the background
+			ResponseCache.Entry entry = null;
+			for (int i = 0; i < 100 && entry == null; i++) {
+				Thread.sleep(10);
+				entry = cache.get(first);
+			}
+
+			Assert.assertNotNull(entry);
+			Assert.assertEquals(body, EntityUtils.toString(entry.hit(first,
+					new HarCache()).getEntity()));
+		} finally {
+			for (File file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	/**
+	 * Records and stores a response.
+	 * 
+	 * @param cache
+	 *            the cache
+	 * @param request
+	 *            the request
+	 * @param body
+	 *            the body
+	 * @param headers
+	 *            the header names and values
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static void store(ResponseCache cache, HttpGet request,
+			String body, String... headers) throws Exception {
+		HttpResponse response = response(body, headers);
+		ResponseCache.Recorder recorder = cache.record(request, response);
+		Assert.assertNotNull(recorder);
+
+		InputStream is = recorder.record(response.getEntity().getContent());
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		int count;
+		while ((count = is.read(buffer)) != -1) {
+			os.write(buffer, 0, count);
+		}
+
+		recorder.store(new HarCache());
+		recorder.release();
+	}
+
+	/**
+	 * Builds a 200 response.
+	 * 
+	 * @param body
+	 *            the body
+	 * @param headers
+	 *            the header names and values
+	 * @return the response
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static HttpResponse response(String body, String... headers)
+			throws Exception {
+		BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+				200, "OK");
+		for (int i = 0; i < headers.length; i += 2) {
+			response.addHeader(headers[i], headers[i + 1]);
+		}
+		response.setEntity(new ByteArrayEntity(body.getBytes("UTF-8")));
+		return response;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Class TrafficMonitorTest.
+ */
+public class TrafficMonitorTest {
+
+	/**
+	 * Test that waiting for no active requests times out while a request is
+	 * still active.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testTimeoutWithRequestStillActive() throws Exception {
+		TrafficMonitor monitor = new TrafficMonitor();
+		monitor.requestStarted();
+
+		long begin = System.nanoTime();
+		Assert.assertFalse(monitor.awaitNoActiveRequests(200,
+				TimeUnit.MILLISECONDS));
+		Assert.assertTrue(millisSince(begin) >= 200);
+		Assert.assertEquals(1, monitor.getActiveRequests());
+	}
+
+	/**
+	 * Test that a waiting thread wakes up when the last active request
+	 * finishes, not when the timeout runs out.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testWakeUpOnLastCompletion() throws Exception {
+		TrafficMonitor monitor = new TrafficMonitor();
+		monitor.requestStarted();
+		monitor.requestStarted();
+		finishLater(monitor, 100);
+		finishLater(monitor, 300);
+
+		long begin = System.nanoTime();
+		Assert.assertTrue(monitor.awaitNoActiveRequests(10,
+				TimeUnit.SECONDS));
+		long millis = millisSince(begin);
+		Assert.assertTrue("woke up after " + millis + " ms", millis >= 250);
+		Assert.assertTrue("woke up after " + millis + " ms", millis < 5000);
+		Assert.assertEquals(0, monitor.getActiveRequests());
+	}
+
+	/**
+	 * Test that a request made during the quiet period starts it over once
+	 * that request finishes.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testQuietPeriodRestartedByNewRequest() throws Exception {
+		final TrafficMonitor monitor = new TrafficMonitor();
+		monitor.requestStarted();
+		finishLater(monitor, 100);
+
+		// starts during the first quiet period and finishes at about 500 ms
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(250);
+					monitor.requestStarted();
+					Thread.sleep(250);
+					monitor.requestFinished();
+				} catch (InterruptedException e) {
+					// the test fails on the timing
+				}
+			}
+		}.start();
+
+		long begin = System.nanoTime();
+		Assert.assertTrue(monitor.awaitQuietPeriod(300, 10000,
+				TimeUnit.MILLISECONDS));
+		long millis = millisSince(begin);
+		Assert.assertTrue("quiet after " + millis + " ms", millis >= 750);
+		Assert.assertTrue("quiet after " + millis + " ms", millis < 5000);
+	}
+
+	/**
+	 * Test that waiting for a quiet period times out while a request is
+	 * still active.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testQuietPeriodTimesOut() throws Exception {
+		TrafficMonitor monitor = new TrafficMonitor();
+		monitor.requestStarted();
+
+		long begin = System.nanoTime();
+		Assert.assertFalse(monitor.awaitQuietPeriod(50, 200,
+				TimeUnit.MILLISECONDS));
+		Assert.assertTrue(millisSince(begin) >= 200);
+	}
+
+	/**
+	 * Finishes a request on another thread after a delay.
+	 * 
+	 * @param monitor
+	 *            the monitor
+	 * @param delayMs
+	 *            the delay
+	 */
+	private static void finishLater(final TrafficMonitor monitor,
+			final long delayMs) {
+		new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(delayMs);
+				} catch (InterruptedException e) {
+					// finish early
+				}
+				monitor.requestFinished();
+			}
+		}.start();
+	}
+
+	/**
+	 * Gets the milliseconds since a System.nanoTime().
+	 * 
+	 * @param begin
+	 *            the begin
+	 * @return the millis
+	 */
+	private static long millisSince(long begin) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+	}
+}
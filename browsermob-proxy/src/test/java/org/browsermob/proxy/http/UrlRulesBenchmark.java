@@ -0,0 +1,153 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Compares checking URLs against 1000 blacklist entries and a handful of
+ * rewrite rules the way BrowserMobHttpClient used to, one regex after the
+ * other with a new URI built for every request, with {@link UrlRules}. The
+ * rules are shaped like a typical ad and tracker block list: a host, a host
+ * and path prefix, or a keyword anywhere in the url. Run the main method.
+ */
+public class UrlRulesBenchmark {
+
+	/** The number of blacklist entries. */
+	private static final int RULES = 1000;
+
+	/** The number of distinct urls checked. */
+	private static final int URLS = 10000;
+
+	/** The rounds. */
+	private static final int ROUNDS = 5;
+
+	/** Keeps the loops from being optimized away. */
+	static volatile int sink;
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		Random random = new Random(42);
+		List<String> blacklist = new ArrayList<String>();
+		for (int i = 0; i < RULES; i++) {
+			switch (i % 3) {
+			case 0:
+				blacklist.add("https?://ads" + i + "\\.example\\.com/.*");
+				break;
+			case 1:
+				blacklist.add("https?://cdn\\.example\\.net/track/v" + i
+						+ "/.*");
+				break;
+			default:
+				blacklist.add(".*beacon" + i + ".*");
+			}
+		}
+
+		String[][] rewrites = {
+				{ "http://staging\\.mifos\\.org/", "http://qa.mifos.org/" },
+				{ "/fineract-provider/api/v1/", "/fineract-provider/api/v2/" },
+				{ "\\?tenantIdentifier=test", "?tenantIdentifier=default" } };
+
+		String[] urls = new String[URLS];
+		for (int i = 0; i < URLS; i++) {
+			switch (random.nextInt(4)) {
+			case 0:
+				urls[i] = "http://ads" + random.nextInt(RULES * 2)
+						+ ".example.com/banner.gif";
+				break;
+			case 1:
+				urls[i] = "https://staging.mifos.org/fineract-provider/api/v1/clients/"
+						+ i + "?tenantIdentifier=test";
+				break;
+			case 2:
+				urls[i] = "https://cdn.example.net/track/v"
+						+ random.nextInt(RULES * 2) + "/pixel.png";
+				break;
+			default:
+				urls[i] = "https://www.mifos.org/static/app-" + i + ".js";
+			}
+		}
+
+		List<Pattern> blacklistPatterns = new ArrayList<Pattern>();
+		for (String pattern : blacklist) {
+			blacklistPatterns.add(Pattern.compile(pattern));
+		}
+		List<Pattern> rewritePatterns = new ArrayList<Pattern>();
+		for (String[] rewrite : rewrites) {
+			rewritePatterns.add(Pattern.compile(rewrite[0]));
+		}
+
+		UrlRules rules = new UrlRules();
+		for (String pattern : blacklist) {
+			rules.addBlacklistEntry(pattern, 404);
+		}
+		for (String[] rewrite : rewrites) {
+			rules.addRewriteRule(rewrite[0], rewrite[1]);
+		}
+
+		for (int round = 0; round < ROUNDS; round++) {
+			long begin = System.nanoTime();
+			int blocked = 0;
+			for (String url : urls) {
+				String newUrl = url;
+				for (int i = 0; i < rewrites.length; i++) {
+					newUrl = rewritePatterns.get(i).matcher(newUrl)
+							.replaceAll(rewrites[i][1]);
+				}
+				sink = new URI(newUrl).hashCode();
+				for (Pattern pattern : blacklistPatterns) {
+					if (pattern.matcher(newUrl).matches()) {
+						blocked++;
+						break;
+					}
+				}
+			}
+			report("sequential", round, System.nanoTime() - begin, blocked);
+
+			begin = System.nanoTime();
+			blocked = 0;
+			for (String url : urls) {
+				String newUrl = rules.rewrite(url);
+				if (!newUrl.equals(url)) {
+					sink = new URI(newUrl).hashCode();
+				}
+				if (rules.getMockResponseCode(newUrl) != -1) {
+					blocked++;
+				}
+			}
+			report("UrlRules", round, System.nanoTime() - begin, blocked);
+		}
+	}
+
+	/**
+	 * Prints the results of a round.
+	 * 
+	 * @param name
+	 *            the name
+	 * @param round
+	 *            the round
+	 * @param elapsed
+	 *            the elapsed nanoseconds
+	 * @param blocked
+	 *            the number of blocked urls, which should be the same for
+	 *            both
+	 */
+	private static void report(String name, int round, long elapsed,
+			int blocked) {
+		System.out.println(String.format(
+				"%-10s round=%d urls/s=%,12.0f us/url=%8.2f blocked=%d", name,
+				round, URLS / (elapsed / 1e9), elapsed / 1e3 / URLS, blocked));
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+/**
+ * The Class UrlRulesTest.
+ */
+public class UrlRulesTest {
+
+	/**
+	 * Test anchors.
+	 */
+	@Test
+	public void testAnchors() {
+		Assert.assertEquals("://ads.example.com/",
+				UrlPatternSet.anchor("https?://ads\\.example\\.com/.*"));
+		Assert.assertEquals("/fineract-provider/api/v",
+				UrlPatternSet.anchor(".*/fineract-provider/api/v\\d+/.*"));
+		Assert.assertEquals("tracker",
+				UrlPatternSet.anchor(".*tracker.*"));
+		Assert.assertEquals("ads.example",
+				UrlPatternSet.anchor(".*ads\\.examples?\\.com.*"));
+		Assert.assertNull(UrlPatternSet.anchor(".*(ads|tracker).*"));
+		Assert.assertNull(UrlPatternSet.anchor("(?i).*ADS.*"));
+		Assert.assertNull(UrlPatternSet.anchor(".*a.*"));
+	}
+
+	/**
+	 * Test that the digits and letters of escapes aren't taken for literals.
+	 */
+	@Test
+	public void testThatEscapesAreSkippedWhole() {
+		Assert.assertEquals("/img", UrlPatternSet.anchor(".*/img\\u0041bcd.*"));
+		Assert.assertEquals("/img", UrlPatternSet.anchor(".*/img\\x41bcd.*"));
+		Assert.assertEquals("/img",
+				UrlPatternSet.anchor(".*/img\\x{41}bcd.*"));
+		Assert.assertEquals("barx", UrlPatternSet.anchor(".*fo\\0101barx.*"));
+		Assert.assertEquals("xyzw", UrlPatternSet.anchor(".*ab\\cAxyzw.*"));
+		Assert.assertEquals("/img",
+				UrlPatternSet.anchor(".*/img\\p{Lu}bcd.*"));
+		Assert.assertNull(UrlPatternSet.anchor(".*[a-z&&[^b]]xyz.*"));
+
+		UrlRules rules = new UrlRules();
+		rules.addBlacklistEntry(".*/img\\u0041bcd.*", 404);
+		rules.addBlacklistEntry(".*/pic\\x41bcd.*", 403);
+		rules.addBlacklistEntry(".*foo\\0101bar.*", 410);
+		rules.addBlacklistEntry(".*abc\\cAxyz.*", 400);
+		rules.addBlacklistEntry(".*[a-z&&[^b]]]xyz.*", 500);
+
+		Assert.assertEquals(404, rules.getMockResponseCode("http://h/imgAbcd"));
+		Assert.assertEquals(403, rules.getMockResponseCode("http://h/picAbcd"));
+		Assert.assertEquals(410, rules.getMockResponseCode("http://h/fooAbar"));
+		Assert.assertEquals(400,
+				rules.getMockResponseCode("http://h/abc\001xyz"));
+		Assert.assertEquals(500, rules.getMockResponseCode("http://h/c]xyz"));
+		Assert.assertEquals(-1, rules.getMockResponseCode("http://h/b]xyz"));
+	}
+
+	/**
+	 * Test that the first matching blacklist entry wins.
+	 */
+	@Test
+	public void testThatTheFirstMatchingBlacklistEntryWins() {
+		UrlRules rules = new UrlRules();
+		rules.addBlacklistEntry("https?://www\\.example\\.com/ads/.*", 404);
+		rules.addBlacklistEntry(".*\\.png", 204);
+		rules.addBlacklistEntry("http://www\\.example\\.com/.*", 500);
+
+		Assert.assertEquals(404,
+				rules.getMockResponseCode("http://www.example.com/ads/a.png"));
+		Assert.assertEquals(204,
+				rules.getMockResponseCode("http://other.com/img/a.png"));
+		Assert.assertEquals(500,
+				rules.getMockResponseCode("http://www.example.com/index.html"));
+		Assert.assertEquals(-1,
+				rules.getMockResponseCode("https://www.example.com/index.html"));
+	}
+
+	/**
+	 * Test that the blacklist overrides the whitelist.
+	 */
+	@Test
+	public void testThatTheBlacklistOverridesTheWhitelist() {
+		UrlRules rules = new UrlRules();
+		rules.setWhitelist(new String[] { ".*/fineract-provider/api/.*",
+				".*\\.js" }, 418);
+		rules.addBlacklistEntry(".*/api/v1/batches.*", 403);
+
+		Assert.assertEquals(-1, rules
+				.getMockResponseCode("https://h/fineract-provider/api/v1/clients"));
+		Assert.assertEquals(-1, rules.getMockResponseCode("https://h/app.js"));
+		Assert.assertEquals(418, rules.getMockResponseCode("https://h/logo.png"));
+		Assert.assertEquals(403, rules
+				.getMockResponseCode("https://h/fineract-provider/api/v1/batches"));
+	}
+
+	/**
+	 * Test that rewrites apply in order.
+	 */
+	@Test
+	public void testThatRewritesApplyInOrder() {
+		UrlRules rules = new UrlRules();
+		rules.addRewriteRule("http://staging\\.example\\.com/",
+				"http://qa.example.com/");
+		rules.addRewriteRule("http://qa\\.example\\.com/(.*)",
+				"http://qa.example.com:8080/$1");
+		rules.addRewriteRule("nothing-matches-this", "x");
+
+		Assert.assertEquals("http://qa.example.com:8080/a/b",
+				rules.rewrite("http://staging.example.com/a/b"));
+	}
+
+	/**
+	 * Test that an unchanged url is returned as is.
+	 */
+	@Test
+	public void testThatAnUnchangedUrlIsReturnedAsIs() {
+		UrlRules rules = new UrlRules();
+		rules.addRewriteRule("http://staging\\.example\\.com/",
+				"http://qa.example.com/");
+		rules.addRewriteRule("(.*)", "$1");
+
+		String url = "http://www.example.com/";
+		Assert.assertSame(url, rules.rewrite(url));
+	}
+}
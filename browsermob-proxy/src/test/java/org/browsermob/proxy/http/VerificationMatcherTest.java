@@ -0,0 +1,109 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.http;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * The Class VerificationMatcherTest.
+ */
+public class VerificationMatcherTest {
+
+	/**
+	 * Test that all texts must be found.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatAllTextsMustBeFound() throws Exception {
+		VerificationMatcher matcher = new VerificationMatcher(Arrays.asList(
+				"Welcome", "Sign out", "missing"), "UTF-8");
+		write(matcher, "<html><h1>Welcome back</h1><a>Sign out</a></html>", 7);
+		matcher.close();
+
+		Assert.assertFalse(matcher.isMatched());
+		Assert.assertEquals(Arrays.asList("missing"), matcher.getUnmatched());
+	}
+
+	/**
+	 * Test that texts split across writes are found.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatTextsSplitAcrossWritesAreFound() throws Exception {
+		VerificationMatcher matcher = new VerificationMatcher(Arrays.asList(
+				"caf\u00e9 cr\u00e8me", "abcabd"), "UTF-8");
+
+		// one byte at a time, so the two byte characters are split too
+		write(matcher, "xx abcabcabd un caf\u00e9 cr\u00e8me yy", 1);
+		matcher.close();
+
+		Assert.assertTrue(matcher.isMatched());
+	}
+
+	/**
+	 * Test that a body larger than the buffers is scanned.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatALargeBodyIsScanned() throws Exception {
+		StringBuilder body = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			body.append("lorem ipsum ");
+		}
+		body.append("the end");
+
+		VerificationMatcher matcher = new VerificationMatcher(
+				Collections.singletonList("the end"), "ISO-8859-1");
+		write(matcher, body.toString(), 1000);
+		matcher.close();
+
+		Assert.assertTrue(matcher.isMatched());
+	}
+
+	/**
+	 * Test that an unknown charset falls back to utf 8.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatAnUnknownCharsetFallsBackToUtf8() throws Exception {
+		VerificationMatcher matcher = new VerificationMatcher(
+				Collections.singletonList("\u00fcber"), "no-such-charset");
+		write(matcher, "\u00fcber alles", 100);
+		matcher.close();
+
+		Assert.assertTrue(matcher.isMatched());
+	}
+
+	/**
+	 * Writes text as UTF-8 in chunks.
+	 * 
+	 * @param matcher
+	 *            the matcher
+	 * @param text
+	 *            the text
+	 * @param chunk
+	 *            the chunk size
+	 * @throws Exception
+	 *             the exception
+	 */
+	private void write(VerificationMatcher matcher, String text, int chunk)
+			throws Exception {
+		byte[] bytes = text.getBytes("UTF-8");
+		for (int off = 0; off < bytes.length; off += chunk) {
+			matcher.write(bytes, off, Math.min(chunk, bytes.length - off));
+		}
+	}
+}
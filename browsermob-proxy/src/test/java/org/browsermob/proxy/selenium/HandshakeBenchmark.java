@@ -0,0 +1,204 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.selenium;
+
+import org.browsermob.proxy.util.ResourceExtractor;
+import org.browsermob.proxy.util.TrustEverythingSSLTrustManager;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+
+/**
+ * Compares leaf certificates with 1024 and 2048 bit RSA keys and with P-256
+ * elliptic curve keys, all signed by the Cybervillains CA: the time to issue
+ * one, key pair included, and the full TLS handshakes per second between a
+ * client and a server on this machine that use it. Sessions are never
+ * resumed, so every handshake costs both ends what a new connection from a
+ * browser to the proxy does. Run the main method.
+ */
+public class HandshakeBenchmark {
+
+	/** The certificates issued per key type and round. */
+	private static final int CERTIFICATES = 20;
+
+	/** The time spent handshaking per key type and round. */
+	private static final long HANDSHAKE_MILLIS = 3000;
+
+	/** The rounds. */
+	private static final int ROUNDS = 5;
+
+	/** The password of the keystores. */
+	private static final char[] PASSWORD = "password".toCharArray();
+
+	/** The key types, by name, algorithm and size. */
+	private static final Object[][] KEY_TYPES = { { "RSA-1024", "RSA", 1024 },
+			{ "RSA-2048", "RSA", 2048 }, { "EC P-256", "EC", 256 } };
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		KeyStoreManager ca = certificateAuthority();
+		for (int round = 0; round < ROUNDS; round++) {
+			for (Object[] keyType : KEY_TYPES) {
+				String algorithm = (String) keyType[1];
+				int keySize = (Integer) keyType[2];
+
+				KeyStore.PrivateKeyEntry entry = null;
+				long begin = System.nanoTime();
+				for (int i = 0; i < CERTIFICATES; i++) {
+					entry = issue(ca, algorithm, keySize);
+				}
+				double issueMillis = (System.nanoTime() - begin) / 1e6
+						/ CERTIFICATES;
+
+				double perSecond = handshakes(entry);
+
+				System.out.println(String.format(
+						"%-8s round %d: %6.1f ms per certificate,"
+								+ " %6.1f handshakes/s", keyType[0], round,
+						issueMillis, perSecond));
+			}
+		}
+	}
+
+	/**
+	 * Issues a certificate for localhost with a new key pair.
+	 * 
+	 * @param ca
+	 *            the ca
+	 * @param algorithm
+	 *            the key algorithm
+	 * @param keySize
+	 *            the key size
+	 * @return the private key entry
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static KeyStore.PrivateKeyEntry issue(KeyStoreManager ca,
+			String algorithm, int keySize) throws Exception {
+		KeyPairGenerator kpg = KeyPairGenerator.getInstance(algorithm);
+		kpg.initialize(keySize);
+		KeyPair kp = kpg.generateKeyPair();
+
+		X509Certificate caCert = ca.getSigningCert();
+		X509Certificate cert = CertificateCreator
+				.generateStdSSLServerCertificate(kp.getPublic(), caCert,
+						ca.getSigningPrivateKey(), "CN=localhost, O=Benchmark",
+						"localhost");
+		return new KeyStore.PrivateKeyEntry(kp.getPrivate(),
+				new Certificate[] { cert, caCert });
+	}
+
+	/**
+	 * Handshakes with a server using a certificate for a while.
+	 * 
+	 * @param entry
+	 *            the certificate and its private key
+	 * @return the handshakes per second
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static double handshakes(KeyStore.PrivateKeyEntry entry)
+			throws Exception {
+		KeyStore keyStore = KeyStore.getInstance("JKS");
+		keyStore.load(null, PASSWORD);
+		keyStore.setEntry("localhost", entry,
+				new KeyStore.PasswordProtection(PASSWORD));
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory
+				.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+		keyManagerFactory.init(keyStore, PASSWORD);
+		SSLContext context = SSLContext.getInstance("TLS");
+		context.init(keyManagerFactory.getKeyManagers(), null, null);
+
+		final SSLServerSocket server = (SSLServerSocket) context
+				.getServerSocketFactory().createServerSocket(0, 50,
+						InetAddress.getByName("127.0.0.1"));
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				while (true) {
+					try {
+						SSLSocket socket = (SSLSocket) server.accept();
+						socket.setTcpNoDelay(true);
+						try {
+							socket.startHandshake();
+							socket.getInputStream().read();
+						} catch (IOException e) {
+							// the client went away, the next one may not
+						} finally {
+							socket.close();
+						}
+					} catch (IOException e) {
+						return;
+					}
+				}
+			}
+		}, "handshake-benchmark-server");
+		acceptor.start();
+
+		SSLSocketFactory factory = TrustEverythingSSLTrustManager
+				.getTrustingSSLSocketFactory();
+		int count = 0;
+		long begin = System.nanoTime();
+		long end = begin + HANDSHAKE_MILLIS * 1000000;
+		try {
+			while (System.nanoTime() < end) {
+				SSLSocket socket = (SSLSocket) factory.createSocket(
+						"127.0.0.1", server.getLocalPort());
+				socket.setTcpNoDelay(true);
+				try {
+					socket.startHandshake();
+					// a full handshake every time
+					socket.getSession().invalidate();
+					socket.getOutputStream().write(0);
+				} finally {
+					socket.close();
+				}
+				count++;
+			}
+		} finally {
+			server.close();
+			acceptor.join();
+		}
+		return count / ((System.nanoTime() - begin) / 1e9);
+	}
+
+	/**
+	 * Loads the CA.
+	 * 
+	 * @return the key store manager
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static KeyStoreManager certificateAuthority() throws Exception {
+		File root = File.createTempFile("seleniumSslSupport", "benchmark");
+		root.delete();
+		root.mkdirs();
+		try {
+			ResourceExtractor.extractResourcePath(HandshakeBenchmark.class,
+					"/sslSupport", root);
+			KeyStoreManager mgr = new KeyStoreManager(root, 0);
+			mgr.setPersistImmediately(false);
+			return mgr;
+		} finally {
+			LauncherUtils.recursivelyDeleteDir(root);
+		}
+	}
+}
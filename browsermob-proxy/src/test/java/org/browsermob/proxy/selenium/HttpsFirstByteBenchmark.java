@@ -0,0 +1,224 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.selenium;
+
+import org.browsermob.proxy.jetty.http.HttpContext;
+import org.browsermob.proxy.jetty.http.HttpRequest;
+import org.browsermob.proxy.jetty.http.HttpResponse;
+import org.browsermob.proxy.jetty.http.HttpServer;
+import org.browsermob.proxy.jetty.http.SocketListener;
+import org.browsermob.proxy.jetty.util.InetAddrPort;
+import org.browsermob.proxy.util.ResourceExtractor;
+import org.browsermob.proxy.util.TrustEverythingSSLTrustManager;
+
+import javax.net.ssl.SSLSocket;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Arrays;
+
+/**
+ * Measures the time to first byte through the proxy for 50 HTTPS hosts it
+ * hasn't seen before, with key pairs generated on the spot for every host
+ * and with them taken from a pool filled in the background. Each round uses
+ * a new CA and SSL context cache, which is given a few seconds to fill its
+ * pool, like the time between starting the proxy and the browser's first
+ * request. The time runs from opening the connection for the CONNECT to
+ * the first byte of the response to a GET sent over the intercepted TLS, and
+ * the responses are served by the proxy itself, so the numbers are the TLS
+ * setup. Run the main method.
+ */
+public class HttpsFirstByteBenchmark {
+
+	/** The port of the proxy. */
+	private static final int PORT = 8091;
+
+	/** The hosts per round. */
+	private static final int HOSTS = 50;
+
+	/** The rounds per mode. */
+	private static final int ROUNDS = 3;
+
+	/** The time the pool gets to fill before a round. */
+	private static final long FILL_MILLIS = 5000;
+
+	/** The response body. */
+	private static final byte[] BODY = "ok".getBytes();
+
+	/** The cache the proxy currently takes its contexts from. */
+	private static volatile SslContextCache cache;
+
+	/**
+	 * The hosts used so far. The proxy keeps a relay per host, so every round
+	 * needs hosts of its own.
+	 */
+	private static int hosts;
+
+	/**
+	 * The main method.
+	 * 
+	 * @param args
+	 *            the arguments
+	 * @throws Exception
+	 *             the exception
+	 */
+	public static void main(String[] args) throws Exception {
+		HttpServer server = new HttpServer();
+		server.addListener(new SocketListener(new InetAddrPort(PORT)));
+		HttpContext context = server.addContext("/");
+		SeleniumProxyHandler handler = new SeleniumProxyHandler(true, "", "",
+				false, false) {
+			@Override
+			protected void wireUpSslWithCyberVilliansCA(String host,
+					SslRelay listener) {
+				listener.setSslContext(cache.getContext(host));
+			}
+
+			@Override
+			protected long proxyPlainTextRequest(URL url, String pathInContext,
+					String pathParams, HttpRequest request,
+					HttpResponse response) throws IOException {
+				response.setContentLength(BODY.length);
+				response.getOutputStream().write(BODY);
+				response.getOutputStream().close();
+				request.setHandled(true);
+				return BODY.length;
+			}
+		};
+		handler.setShutdownLock(new Object());
+		context.addHandler(handler);
+		server.start();
+
+		try {
+			// warms up the JIT and the TLS code on both ends
+			cache = new SslContextCache(certificateAuthority(0), HOSTS);
+			for (int i = 0; i < HOSTS; i++) {
+				firstByte(nextHost());
+			}
+
+			for (int round = 0; round < ROUNDS; round++) {
+				report("on demand", round, 0);
+				report("pooled", round,
+						KeyStoreManager.DEFAULT_KEY_PAIR_POOL_SIZE);
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+	/**
+	 * Runs a round against new hosts and prints the times to first byte.
+	 * 
+	 * @param mode
+	 *            the mode
+	 * @param round
+	 *            the round
+	 * @param poolSize
+	 *            the key pairs generated ahead of time
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static void report(String mode, int round, int poolSize)
+			throws Exception {
+		cache = new SslContextCache(certificateAuthority(poolSize), HOSTS);
+		Thread.sleep(FILL_MILLIS);
+
+		double[] millis = new double[HOSTS];
+		long begin = System.nanoTime();
+		for (int i = 0; i < HOSTS; i++) {
+			millis[i] = firstByte(nextHost()) / 1e6;
+		}
+		long nanos = System.nanoTime() - begin;
+		Arrays.sort(millis);
+
+		System.out.println(String.format(
+				"%-9s round %d: %d hosts in %,7.1f ms, first byte median"
+						+ " %6.1f ms, p90 %6.1f ms, max %6.1f ms", mode,
+				round, HOSTS, nanos / 1e6, millis[HOSTS / 2],
+				millis[HOSTS * 9 / 10], millis[HOSTS - 1]));
+	}
+
+	/**
+	 * Picks a host the proxy hasn't seen. All of 127/8 is the loopback
+	 * interface.
+	 * 
+	 * @return the host
+	 */
+	private static String nextHost() {
+		int n = hosts++;
+		return "127.0." + (n / 250 + 1) + "." + (n % 250 + 1);
+	}
+
+	/**
+	 * Fetches a page from a host through the proxy over HTTPS.
+	 * 
+	 * @param host
+	 *            the host
+	 * @return the nanos until the first byte of the response
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static long firstByte(String host) throws Exception {
+		long begin = System.nanoTime();
+		Socket socket = new Socket("127.0.0.1", PORT);
+		try {
+			OutputStream os = socket.getOutputStream();
+			os.write(("CONNECT " + host + ":443 HTTP/1.1\r\nHost: " + host
+					+ ":443\r\n\r\n").getBytes());
+			os.flush();
+
+			InputStream is = socket.getInputStream();
+			int matched = 0;
+			while (matched < 4) {
+				int b = is.read();
+				if (b == -1) {
+					throw new IOException("CONNECT to " + host + " failed");
+				}
+				matched = b == "\r\n\r\n".charAt(matched) ? matched + 1
+						: b == '\r' ? 1 : 0;
+			}
+
+			SSLSocket ssl = (SSLSocket) TrustEverythingSSLTrustManager
+					.getTrustingSSLSocketFactory().createSocket(socket, host,
+							443, true);
+			ssl.getOutputStream().write(("GET / HTTP/1.1\r\nHost: " + host
+					+ "\r\nConnection: close\r\n\r\n").getBytes());
+			ssl.getOutputStream().flush();
+			if (ssl.getInputStream().read() == -1) {
+				throw new IOException("No response from " + host);
+			}
+			return System.nanoTime() - begin;
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Loads the CA.
+	 * 
+	 * @param poolSize
+	 *            the key pairs to generate ahead of time
+	 * @return the key store manager
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static KeyStoreManager certificateAuthority(int poolSize)
+			throws Exception {
+		File root = File.createTempFile("seleniumSslSupport", "benchmark");
+		root.delete();
+		root.mkdirs();
+		try {
+			ResourceExtractor.extractResourcePath(
+					HttpsFirstByteBenchmark.class, "/sslSupport", root);
+			KeyStoreManager mgr = new KeyStoreManager(root, poolSize);
+			mgr.setPersistImmediately(false);
+			return mgr;
+		} finally {
+			LauncherUtils.recursivelyDeleteDir(root);
+		}
+	}
+}
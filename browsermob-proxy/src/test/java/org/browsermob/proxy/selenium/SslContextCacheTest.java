@@ -0,0 +1,139 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.selenium;
+
+import junit.framework.Assert;
+import org.browsermob.proxy.util.ResourceExtractor;
+import org.junit.Test;
+
+import javax.net.ssl.SSLContext;
+import java.io.File;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
+/**
+ * The Class SslContextCacheTest.
+ */
+public class SslContextCacheTest {
+
+	/**
+	 * Test that a host gets the same context every time.
+	 */
+	@Test
+	public void testThatContextsAreReusedPerHost() {
+		SslContextCache cache = SslContextCache.getInstance();
+		SSLContext context = cache.getContext("reused.example.com");
+		Assert.assertSame(context, cache.getContext("reused.example.com"));
+		Assert.assertNotSame(context, cache.getContext("other.example.com"));
+		Assert.assertNotSame(context,
+				cache.getContext("reused.example.com", KeyType.EC));
+	}
+
+	/**
+	 * Test that certificates are issued for the host by the CA.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatCertificateIsIssuedForHost() throws Exception {
+		KeyStore.PrivateKeyEntry entry = certificateAuthority()
+				.createCertificateForHostname("issued.example.com");
+		X509Certificate leaf = (X509Certificate) entry.getCertificate();
+		X509Certificate ca = (X509Certificate) entry.getCertificateChain()[1];
+
+		Assert.assertTrue(leaf.getSubjectX500Principal().getName()
+				.startsWith("CN=issued.example.com,"));
+		Assert.assertEquals(ca.getSubjectX500Principal(),
+				leaf.getIssuerX500Principal());
+		leaf.verify(ca.getPublicKey());
+		Assert.assertTrue("SHA256withRSA".equalsIgnoreCase(leaf
+				.getSigAlgName()));
+		Assert.assertEquals("[[2, issued.example.com]]", String.valueOf(leaf
+				.getSubjectAlternativeNames()));
+	}
+
+	/**
+	 * Test that certificates with elliptic curve keys are issued by the same
+	 * CA.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatEcCertificateIsIssuedForHost() throws Exception {
+		KeyStore.PrivateKeyEntry entry = certificateAuthority()
+				.createCertificateForHostname("127.0.0.1", KeyType.EC);
+		X509Certificate leaf = (X509Certificate) entry.getCertificate();
+		X509Certificate ca = (X509Certificate) entry.getCertificateChain()[1];
+
+		Assert.assertEquals("EC", leaf.getPublicKey().getAlgorithm());
+		leaf.verify(ca.getPublicKey());
+		Assert.assertEquals("[[7, 127.0.0.1]]", String.valueOf(leaf
+				.getSubjectAlternativeNames()));
+	}
+
+	/**
+	 * Test that IPv6 literals and names that only look like addresses get
+	 * the right kind of subject alternative name.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatAddressesAreToldFromNames() throws Exception {
+		KeyStoreManager ca = certificateAuthority();
+
+		X509Certificate leaf = (X509Certificate) ca
+				.createCertificateForHostname("[::1]").getCertificate();
+		Assert.assertEquals("[[7, 0:0:0:0:0:0:0:1]]", String.valueOf(leaf
+				.getSubjectAlternativeNames()));
+
+		leaf = (X509Certificate) ca.createCertificateForHostname("1.2.3")
+				.getCertificate();
+		Assert.assertEquals("[[2, 1.2.3]]", String.valueOf(leaf
+				.getSubjectAlternativeNames()));
+	}
+
+	/**
+	 * Test that the least recently used context is evicted.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatLeastRecentlyUsedContextIsEvicted() throws Exception {
+		SslContextCache cache = new SslContextCache(certificateAuthority(), 2);
+		SSLContext a = cache.getContext("a.example.com");
+		SSLContext b = cache.getContext("b.example.com");
+		Assert.assertSame(a, cache.getContext("a.example.com"));
+
+		cache.getContext("c.example.com");
+		Assert.assertEquals(2, cache.size());
+		Assert.assertSame(a, cache.getContext("a.example.com"));
+		Assert.assertNotSame(b, cache.getContext("b.example.com"));
+	}
+
+	/**
+	 * Loads the CA.
+	 * 
+	 * @return the key store manager
+	 * @throws Exception
+	 *             the exception
+	 */
+	private static KeyStoreManager certificateAuthority() throws Exception {
+		File root = File.createTempFile("seleniumSslSupport", "test");
+		root.delete();
+		root.mkdirs();
+		try {
+			ResourceExtractor.extractResourcePath(SslContextCacheTest.class,
+					"/sslSupport", root);
+			KeyStoreManager mgr = new KeyStoreManager(root);
+			mgr.setPersistImmediately(false);
+			return mgr;
+		} finally {
+			LauncherUtils.recursivelyDeleteDir(root);
+		}
+	}
+}
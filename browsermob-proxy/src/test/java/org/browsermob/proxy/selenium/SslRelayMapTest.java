@@ -0,0 +1,173 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.selenium;
+
+import junit.framework.Assert;
+import org.browsermob.proxy.jetty.http.HttpServer;
+import org.browsermob.proxy.jetty.util.InetAddrPort;
+import org.browsermob.proxy.jetty.util.URI;
+import org.browsermob.proxy.selenium.SeleniumProxyHandler.SslRelay;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Class SslRelayMapTest.
+ */
+public class SslRelayMapTest {
+
+	/**
+	 * Test that a host slow to set up holds up neither other hosts nor hosts
+	 * already set up, and is set up once however many wait for it.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatSlowHostDoesNotBlockOthers() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger created = new AtomicInteger();
+		final RelayHandler handler = new RelayHandler() {
+			@Override
+			protected SslRelay createSslRelay(URI uri, InetAddrPort addrPort,
+					HttpServer server) throws Exception {
+				created.incrementAndGet();
+				if (uri.toString().startsWith("slow")) {
+					release.await();
+				}
+				return super.createSslRelay(uri, addrPort, server);
+			}
+		};
+		SslRelay warm = handler.get("warm.example.com:443");
+
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			Callable<SslRelay> slow = new Callable<SslRelay>() {
+				public SslRelay call() throws Exception {
+					return handler.get("slow.example.com:443");
+				}
+			};
+			Future<SslRelay> first = executor.submit(slow);
+			Future<SslRelay> second = executor.submit(slow);
+
+			Future<SslRelay> other = executor.submit(new Callable<SslRelay>() {
+				public SslRelay call() throws Exception {
+					handler.get("other.example.com:443");
+					return handler.get("warm.example.com:443");
+				}
+			});
+			Assert.assertSame(warm, other.get(5, TimeUnit.SECONDS));
+			Assert.assertFalse(first.isDone());
+
+			release.countDown();
+			Assert.assertSame(first.get(5, TimeUnit.SECONDS),
+					second.get(5, TimeUnit.SECONDS));
+			Assert.assertEquals(3, created.get());
+			Assert.assertEquals(3, handler.getSslRelayCount());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Test that a host that failed to set up is tried again.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatFailedHostIsRetried() throws Exception {
+		final AtomicInteger attempts = new AtomicInteger();
+		RelayHandler handler = new RelayHandler() {
+			@Override
+			protected SslRelay createSslRelay(URI uri, InetAddrPort addrPort,
+					HttpServer server) throws Exception {
+				if (attempts.incrementAndGet() == 1) {
+					throw new IllegalStateException("first attempt");
+				}
+				return super.createSslRelay(uri, addrPort, server);
+			}
+		};
+
+		try {
+			handler.get("flaky.example.com:443");
+			Assert.fail();
+		} catch (IllegalStateException e) {
+			Assert.assertEquals(0, handler.getSslRelayCount());
+		}
+
+		Assert.assertNotNull(handler.get("flaky.example.com:443"));
+		Assert.assertEquals(2, attempts.get());
+	}
+
+	/**
+	 * Test that the relays idle the longest are dropped past the most kept.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testThatIdleRelaysAreEvicted() throws Exception {
+		RelayHandler handler = new RelayHandler();
+		handler.setMaxSslRelays(2);
+
+		SslRelay a = handler.get("a.example.com:443");
+		SslRelay b = handler.get("b.example.com:443");
+		Thread.sleep(5);
+		Assert.assertSame(a, handler.get("a.example.com:443"));
+
+		handler.get("c.example.com:443");
+		Assert.assertEquals(2, handler.getSslRelayCount());
+		Assert.assertSame(a, handler.get("a.example.com:443"));
+		Assert.assertNotSame(b, handler.get("b.example.com:443"));
+	}
+
+	/**
+	 * Hands out relays that are set up without a CA or a server.
+	 */
+	private static class RelayHandler extends SeleniumProxyHandler {
+
+		/**
+		 * Instantiates a new relay handler.
+		 */
+		RelayHandler() {
+			super(true, "", "", false, false);
+		}
+
+		/**
+		 * Gets the relay for a host and port.
+		 * 
+		 * @param hostAndPort
+		 *            the host and port
+		 * @return the ssl relay
+		 * @throws Exception
+		 *             the exception
+		 */
+		SslRelay get(String hostAndPort) throws Exception {
+			return getSslRelayOrCreateNew(new URI(hostAndPort),
+					new InetAddrPort(443), null);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * 
+		 * @see
+		 * org.browsermob.proxy.selenium.SeleniumProxyHandler#createSslRelay
+		 * (org.browsermob.proxy.jetty.util.URI,
+		 * org.browsermob.proxy.jetty.util.InetAddrPort,
+		 * org.browsermob.proxy.jetty.http.HttpServer)
+		 */
+		@Override
+		protected SslRelay createSslRelay(URI uri, InetAddrPort addrPort,
+				HttpServer server) throws Exception {
+			return new SslRelay(addrPort);
+		}
+	}
+}
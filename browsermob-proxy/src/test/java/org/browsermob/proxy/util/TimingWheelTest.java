@@ -0,0 +1,179 @@
+/*
+ * 
+ */
+package org.browsermob.proxy.util;
+
+import junit.framework.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Class TimingWheelTest.
+ */
+public class TimingWheelTest {
+
+	/**
+	 * Test that a timeout cancelled before the wheel has bucketed it never
+	 * runs. The first tick is long, so the timeout is still waiting to be put
+	 * in its bucket when it is cancelled.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testCancelBeforeBucketed() throws Exception {
+		TimingWheel wheel = new TimingWheel("test-wheel", 200,
+				TimeUnit.MILLISECONDS, 8);
+		AtomicBoolean ran = new AtomicBoolean();
+		TimingWheel.Timeout timeout = wheel.schedule(flag(ran), 10,
+				TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(timeout.cancel());
+		Assert.assertFalse(timeout.cancel());
+
+		CountDownLatch later = new CountDownLatch(1);
+		wheel.schedule(countDown(later), 300, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(later.await(5, TimeUnit.SECONDS));
+		Assert.assertFalse(ran.get());
+	}
+
+	/**
+	 * Test that a timeout cancelled once it is in its bucket never runs, and
+	 * that the others in the wheel still do.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testCancelAfterBucketed() throws Exception {
+		TimingWheel wheel = new TimingWheel("test-wheel", 10,
+				TimeUnit.MILLISECONDS, 8);
+		AtomicBoolean ran = new AtomicBoolean();
+		TimingWheel.Timeout timeout = wheel.schedule(flag(ran), 300,
+				TimeUnit.MILLISECONDS);
+		CountDownLatch later = new CountDownLatch(1);
+		wheel.schedule(countDown(later), 500, TimeUnit.MILLISECONDS);
+
+		// a few ticks go by, which bucket both timeouts
+		Thread.sleep(100);
+		Assert.assertTrue(timeout.cancel());
+
+		Assert.assertTrue(later.await(5, TimeUnit.SECONDS));
+		Assert.assertFalse(ran.get());
+	}
+
+	/**
+	 * Test that a deadline more than one rotation away doesn't fire when its
+	 * bucket first comes round.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testDeadlineBeyondOneRotation() throws Exception {
+		// a rotation is 40 ms
+		TimingWheel wheel = new TimingWheel("test-wheel", 10,
+				TimeUnit.MILLISECONDS, 4);
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicLong ranAt = new AtomicLong();
+		long begin = System.nanoTime();
+		wheel.schedule(new Runnable() {
+			public void run() {
+				ranAt.set(System.nanoTime());
+				done.countDown();
+			}
+		}, 250, TimeUnit.MILLISECONDS);
+
+		Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+		long millis = TimeUnit.NANOSECONDS.toMillis(ranAt.get() - begin);
+		Assert.assertTrue("ran after " + millis + " ms", millis >= 250);
+	}
+
+	/**
+	 * Test that timeouts expire in the order of their deadlines, whatever the
+	 * order they were scheduled in.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testExpiryOrder() throws Exception {
+		TimingWheel wheel = new TimingWheel("test-wheel", 10,
+				TimeUnit.MILLISECONDS, 8);
+		final List<Integer> order = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(3);
+		for (final int delay : new int[] { 250, 50, 150 }) {
+			wheel.schedule(new Runnable() {
+				public void run() {
+					order.add(delay);
+					done.countDown();
+				}
+			}, delay, TimeUnit.MILLISECONDS);
+		}
+
+		Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(Arrays.asList(50, 150, 250), order);
+	}
+
+	/**
+	 * Test that a wheel of a single bucket works.
+	 * 
+	 * @throws Exception
+	 *             the exception
+	 */
+	@Test
+	public void testSingleTickWheel() throws Exception {
+		TimingWheel wheel = new TimingWheel("test-wheel", 10,
+				TimeUnit.MILLISECONDS, 1);
+		CountDownLatch done = new CountDownLatch(1);
+		wheel.schedule(countDown(done), 50, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Test that a wheel without buckets is refused.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testThatNoTicksPerWheelIsRefused() {
+		new TimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 0);
+	}
+
+	/**
+	 * A task that sets a flag.
+	 * 
+	 * @param flag
+	 *            the flag
+	 * @return the task
+	 */
+	private static Runnable flag(final AtomicBoolean flag) {
+		return new Runnable() {
+			public void run() {
+				flag.set(true);
+			}
+		};
+	}
+
+	/**
+	 * A task that counts a latch down.
+	 * 
+	 * @param latch
+	 *            the latch
+	 * @return the task
+	 */
+	private static Runnable countDown(final CountDownLatch latch) {
+		return new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		};
+	}
+}